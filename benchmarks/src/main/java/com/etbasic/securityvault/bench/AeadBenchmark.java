@@ -0,0 +1,69 @@
+package com.etbasic.securityvault.bench;
+
+import com.etbasic.securityvault.core.cipher.AesGcmCipher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.AEADBadTagException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput di {@link AesGcmCipher} da 1 KB a 64 MB di plaintext.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class AeadBenchmark {
+
+    // 1 KB, 64 KB, 1 MB, 16 MB, 64 MB
+    @Param({"1024", "65536", "1048576", "16777216", "67108864"})
+    public int sizeBytes;
+
+    private final AesGcmCipher cipher = new AesGcmCipher();
+    private byte[] key;
+    private byte[] aad;
+    private byte[] plaintext;
+    private byte[] blob;
+
+    @Setup
+    public void setup() {
+        key = VaultFixtures.randomBytes(32, 1);
+        aad = VaultFixtures.randomBytes(32, 2);
+        plaintext = VaultFixtures.randomBytes(sizeBytes, 3);
+        blob = cipher.encrypt(key, plaintext, aad);
+    }
+
+    @Benchmark
+    public byte[] encrypt() {
+        return cipher.encrypt(key, plaintext, aad);
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws AEADBadTagException {
+        return cipher.decrypt(key, blob, aad);
+    }
+
+    /**
+     * Come {@link #encrypt()}, ma ogni chiamata gira su un virtual thread nuovo, come una connessione
+     * del demone: il Cipher deve arrivare dal pool condiviso, non essere ricostruito per il thread.
+     */
+    @Benchmark
+    public byte[] encryptOnVirtualThread() throws InterruptedException {
+        byte[][] out = new byte[1][];
+        Thread t = Thread.ofVirtual().start(() -> out[0] = cipher.encrypt(key, plaintext, aad));
+        t.join();
+        return out[0];
+    }
+}
@@ -0,0 +1,32 @@
+package com.etbasic.securityvault.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point del jar dei benchmark: accetta le normali opzioni JMH da riga di comando
+ * ma, se non specificato diversamente (-rf / -rff), salva i risultati in JSON
+ * in {@code jmh-result.json}, così run diversi si possono confrontare.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        ChainedOptionsBuilder opts = new OptionsBuilder().parent(cmd);
+
+        if (!cmd.getResultFormat().hasValue()) {
+            opts.resultFormat(ResultFormatType.JSON);
+        }
+        if (!cmd.getResult().hasValue()) {
+            opts.result("jmh-result.json");
+        }
+
+        new Runner(opts.build()).run();
+    }
+}
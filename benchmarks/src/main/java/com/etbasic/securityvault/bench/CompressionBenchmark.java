@@ -0,0 +1,58 @@
+package com.etbasic.securityvault.bench;
+
+import com.etbasic.securityvault.core.codec.PayloadCodecs;
+import com.etbasic.securityvault.core.compress.Compressions;
+import com.etbasic.securityvault.core.compress.Compressor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stadio di compressione sul payload binario (prima della cifratura).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+
+    @Param({"lz", "deflate-1", "deflate-6"})
+    public String compression;
+
+    @Param({"10000"})
+    public int entries;
+
+    private Compressor compressor;
+    private byte[] plain;
+    private byte[] framed;
+
+    @Setup
+    public void setup() throws IOException {
+        compressor = Compressions.forName(compression);
+        plain = PayloadCodecs.BINARY.encodePayload(VaultFixtures.payload(entries));
+        framed = Compressions.pack(compressor, plain);
+    }
+
+    @Benchmark
+    public byte[] pack() {
+        return Compressions.pack(compressor, plain);
+    }
+
+    @Benchmark
+    public byte[] unpack() throws IOException {
+        return Compressions.unpack(compressor, framed);
+    }
+}
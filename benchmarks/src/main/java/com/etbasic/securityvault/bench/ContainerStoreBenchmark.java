@@ -0,0 +1,107 @@
+package com.etbasic.securityvault.bench;
+
+import com.etbasic.securityvault.core.model.VaultHeader;
+import com.etbasic.securityvault.core.persistence.ContainerVaultStore;
+import com.etbasic.securityvault.core.persistence.FileVaultStore;
+import com.etbasic.securityvault.core.persistence.VaultStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Molti vault piccoli (uno per account di servizio): un file per vault ({@link FileVaultStore})
+ * contro un unico contenitore ({@link ContainerVaultStore}), su disco.
+ * Ogni operazione tocca un vault a caso; {@code list} misura l'elenco completo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContainerStoreBenchmark {
+
+    @Param({"file", "container"})
+    public String backend;
+
+    @Param({"1000", "10000"})
+    public int vaults;
+
+    @Param({"NONE", "DATA"})
+    public FileVaultStore.Durability durability;
+
+    private Path dir;
+    private VaultStore store;
+    private VaultHeader header;
+    private byte[] ciphertext;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Path base = Paths.get(System.getProperty("bench.diskDir", "target/bench-disk"));
+        Files.createDirectories(base);
+        dir = Files.createTempDirectory(base, "securityvault-container");
+        store = "container".equals(backend)
+                ? new ContainerVaultStore(dir.resolve("vaults.svc").toFile(), vaults, durability)
+                : new FileVaultStore(dir.toFile(), FileVaultStore.ReadMode.HEAP, durability, false);
+        header = VaultFixtures.header();
+        ciphertext = VaultFixtures.randomBytes(1024, 2);
+        for (int i = 0; i < vaults; i++) {
+            store.write(name(i), header, ciphertext);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (store instanceof Closeable) {
+            ((Closeable) store).close();
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private static String name(int i) {
+        return "svc-" + i;
+    }
+
+    private String randomVault() {
+        return name(ThreadLocalRandom.current().nextInt(vaults));
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        store.write(randomVault(), header, ciphertext);
+    }
+
+    @Benchmark
+    public FileVaultStore.VaultFile read() throws IOException {
+        return store.read(randomVault());
+    }
+
+    @Benchmark
+    public List<String> list() throws IOException {
+        return store.list();
+    }
+}
@@ -0,0 +1,157 @@
+package com.etbasic.securityvault.bench;
+
+import com.etbasic.securityvault.core.cli.CommandProcessor;
+import com.etbasic.securityvault.core.cli.VaultDaemon;
+import com.etbasic.securityvault.core.persistence.FileVaultStore;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Latenza di una richiesta al demone sul socket UNIX, con il vault già sbloccato:
+ * lettura per id e ricerca, da una e da più connessioni contemporanee (una per thread).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DaemonBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Param({"1000"})
+    public int entries;
+
+    private Path dir;
+    private CommandProcessor processor;
+    private VaultDaemon daemon;
+    private final List<String> ids = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("securityvault-daemon");
+        FileVaultStore store = new FileVaultStore(dir.toFile(), FileVaultStore.ReadMode.MAPPED,
+                FileVaultStore.Durability.NONE, false);
+        processor = new CommandProcessor(store);
+        check(processor.execute(MAPPER.createObjectNode()
+                .put("op", "create").put("vault", "v").put("master", "pw").put("iterations", 1000)));
+        for (int i = 0; i < entries; i++) {
+            JsonNode r = check(processor.execute(MAPPER.createObjectNode()
+                    .put("op", "add").put("vault", "v").put("title", "service-" + i)
+                    .put("username", "user" + i).put("password", "secret" + i)));
+            ids.add(r.get("id").asText());
+        }
+        daemon = new VaultDaemon(dir.resolve(".daemon.sock"), processor);
+        Thread acceptor = new Thread(() -> {
+            try {
+                daemon.serve();
+            } catch (IOException ignored) {
+            }
+        }, "bench-daemon");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        daemon.close();
+        processor.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    /**
+     * Una connessione per thread, come un client che riusa il socket per più richieste.
+     */
+    @State(Scope.Thread)
+    public static class Client {
+        private SocketChannel channel;
+        private BufferedReader in;
+        private BufferedWriter out;
+
+        @Setup(Level.Trial)
+        public void connect(DaemonBenchmark bench) throws IOException {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(bench.daemon.getSocket()));
+            in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+            out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+        }
+
+        @TearDown(Level.Trial)
+        public void disconnect() throws IOException {
+            channel.close();
+        }
+
+        String call(ObjectNode request) throws IOException {
+            out.write(MAPPER.writeValueAsString(request));
+            out.newLine();
+            out.flush();
+            return in.readLine();
+        }
+    }
+
+    private static JsonNode check(JsonNode response) {
+        if (!response.path("ok").asBoolean()) {
+            throw new IllegalStateException(response.toString());
+        }
+        return response;
+    }
+
+    private ObjectNode getRequest() {
+        return MAPPER.createObjectNode().put("op", "get").put("vault", "v")
+                .put("id", ids.get(ThreadLocalRandom.current().nextInt(ids.size())));
+    }
+
+    @Benchmark
+    public String get(Client client) throws IOException {
+        return client.call(getRequest());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String getConcurrent(Client client) throws IOException {
+        return client.call(getRequest());
+    }
+
+    @Benchmark
+    public String search(Client client) throws IOException {
+        return client.call(MAPPER.createObjectNode().put("op", "get").put("vault", "v")
+                .put("query", "service-" + ThreadLocalRandom.current().nextInt(entries))
+                .put("limit", 5));
+    }
+}
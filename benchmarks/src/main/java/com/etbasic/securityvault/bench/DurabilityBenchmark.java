@@ -0,0 +1,96 @@
+package com.etbasic.securityvault.bench;
+
+import com.etbasic.securityvault.core.model.VaultHeader;
+import com.etbasic.securityvault.core.persistence.FileVaultStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Scritture piccole e frequenti (automazione) con le varie {@link FileVaultStore.Durability},
+ * da 4 thread su vault diversi della stessa directory, con e senza group commit.
+ *
+ * La directory è -Dbench.diskDir (default: target/bench-disk): su tmpfs le fsync non costano nulla.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class DurabilityBenchmark {
+
+    @Param({"NONE", "DATA", "FULL"})
+    public FileVaultStore.Durability durability;
+
+    @Param({"false", "true"})
+    public boolean groupCommit;
+
+    private final AtomicInteger nextVault = new AtomicInteger();
+    private Path dir;
+    private FileVaultStore store;
+    private VaultHeader header;
+    private byte[] ciphertext;
+    private byte[] record;
+
+    @State(Scope.Thread)
+    public static class Vault {
+        String filename;
+
+        @Setup(Level.Trial)
+        public void setup(DurabilityBenchmark bench) throws IOException {
+            filename = "vault-" + bench.nextVault.incrementAndGet();
+            bench.store.write(filename, bench.header, bench.ciphertext);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Path base = Paths.get(System.getProperty("bench.diskDir", "target/bench-disk"));
+        Files.createDirectories(base);
+        dir = Files.createTempDirectory(base, "securityvault-durability");
+        store = new FileVaultStore(dir.toFile(), FileVaultStore.ReadMode.HEAP, durability, groupCommit);
+        header = VaultFixtures.header();
+        ciphertext = VaultFixtures.randomBytes(4 * 1024, 2);
+        record = VaultFixtures.randomBytes(200, 3);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public void write(Vault vault) throws IOException {
+        store.write(vault.filename, header, ciphertext);
+    }
+
+    @Benchmark
+    public void append(Vault vault) throws IOException {
+        store.append(vault.filename, record);
+    }
+}
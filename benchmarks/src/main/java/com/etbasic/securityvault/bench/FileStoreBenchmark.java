@@ -0,0 +1,97 @@
+package com.etbasic.securityvault.bench;
+
+import com.etbasic.securityvault.core.cipher.AesGcmCipher;
+import com.etbasic.securityvault.core.model.VaultHeader;
+import com.etbasic.securityvault.core.model.VaultHeaderCodec;
+import com.etbasic.securityvault.core.persistence.FileVaultStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * {@link FileVaultStore#write} / {@link FileVaultStore#read} su tmpfs e su disco,
+ * con vault da 10 a 1M entry (ciphertext reale del payload JSON).
+ *
+ * storage:
+ *  - tmpfs: /dev/shm (solo Linux), isola il costo CPU/copia dall'I/O;
+ *  - disk:  directory indicata da -Dbench.diskDir (default: target/bench-disk).
+ * readMode: lettura su heap o mappata (vedi FileVaultStore.ReadMode).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FileStoreBenchmark {
+
+    private static final String FILENAME = "bench.vault";
+
+    @Param({"tmpfs", "disk"})
+    public String storage;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int entries;
+
+    @Param({"HEAP", "MAPPED"})
+    public FileVaultStore.ReadMode readMode;
+
+    private Path dir;
+    private FileVaultStore store;
+    private VaultHeader header;
+    private byte[] ciphertext;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Path base = "tmpfs".equals(storage)
+                ? Paths.get("/dev/shm")
+                : Paths.get(System.getProperty("bench.diskDir", "target/bench-disk"));
+        if ("tmpfs".equals(storage) && !Files.isDirectory(base)) {
+            throw new IllegalStateException("tmpfs non disponibile (/dev/shm)");
+        }
+        Files.createDirectories(base);
+        dir = Files.createTempDirectory(base, "securityvault-bench");
+        store = new FileVaultStore(dir.toFile(), readMode);
+
+        header = VaultFixtures.header();
+        byte[] key = VaultFixtures.randomBytes(32, 1);
+        ciphertext = new AesGcmCipher().encrypt(key, VaultFixtures.payloadJson(entries), VaultHeaderCodec.aadOf(header));
+        store.write(FILENAME, header, ciphertext);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        store.write(FILENAME, header, ciphertext);
+    }
+
+    @Benchmark
+    public FileVaultStore.VaultFile read() throws IOException {
+        return store.read(FILENAME);
+    }
+}
@@ -0,0 +1,79 @@
+package com.etbasic.securityvault.bench;
+
+import com.etbasic.securityvault.core.model.VaultHeader;
+import com.etbasic.securityvault.core.model.VaultHeaderCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Codifica dell'header (binaria contro JSON) e calcolo dell'AAD (eseguiti a ogni read/encrypt/decrypt).
+ * I metodi "Fresh" lavorano su un header nuovo a ogni chiamata, quindi senza i valori già calcolati.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderCodecBenchmark {
+
+    private VaultHeader header;
+    private VaultHeader tlvHeader;
+    private byte[] jsonBytes;
+    private byte[] tlvBytes;
+    private long sequence;
+
+    @Setup
+    public void setup() {
+        header = VaultFixtures.header();
+        tlvHeader = header.withAadFormat(VaultHeader.AAD_FORMAT_TLV);
+        jsonBytes = VaultHeaderCodec.toJsonBytes(header);
+        tlvBytes = VaultHeaderCodec.encode(tlvHeader);
+    }
+
+    @Benchmark
+    public byte[] toJsonBytes() {
+        return VaultHeaderCodec.toJsonBytes(header);
+    }
+
+    @Benchmark
+    public VaultHeader fromJsonBytes() {
+        return VaultHeaderCodec.fromJsonBytes(jsonBytes);
+    }
+
+    @Benchmark
+    public byte[] encodeFresh() {
+        return VaultHeaderCodec.encode(tlvHeader.withSequence(++sequence));
+    }
+
+    @Benchmark
+    public VaultHeader decode() {
+        return VaultHeaderCodec.decode(ByteBuffer.wrap(tlvBytes));
+    }
+
+    @Benchmark
+    public byte[] aadOfJsonFresh() {
+        return VaultHeaderCodec.aadOf(header.withSequence(++sequence));
+    }
+
+    @Benchmark
+    public byte[] aadOfTlvFresh() {
+        return VaultHeaderCodec.aadOf(tlvHeader.withSequence(++sequence));
+    }
+
+    @Benchmark
+    public byte[] aadOfMemoized() {
+        return VaultHeaderCodec.aadOf(tlvHeader);
+    }
+}
@@ -0,0 +1,45 @@
+package com.etbasic.securityvault.bench;
+
+import com.etbasic.securityvault.core.kdf.PBKDF2;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo di {@link PBKDF2#deriveKey} al variare delle iterazioni (domina la latenza di unlock).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KdfBenchmark {
+
+    @Param({"10000", "65536", "310000", "600000"})
+    public int iterations;
+
+    private PBKDF2 kdf;
+    private byte[] salt;
+
+    @Setup
+    public void setup() {
+        kdf = new PBKDF2(iterations, 256);
+        salt = VaultFixtures.randomBytes(16, 7);
+    }
+
+    @Benchmark
+    public byte[] deriveKey() {
+        return kdf.deriveKey("correct horse battery staple", salt);
+    }
+}
@@ -0,0 +1,58 @@
+package com.etbasic.securityvault.bench;
+
+import com.etbasic.securityvault.core.codec.PayloadCodec;
+import com.etbasic.securityvault.core.codec.PayloadCodecs;
+import com.etbasic.securityvault.core.model.VaultPayload;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializzazione del payload (plaintext da cifrare) con i codec disponibili.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadCodecBenchmark {
+
+    @Param({"json", "binary"})
+    public String codecName;
+
+    @Param({"100", "10000"})
+    public int entries;
+
+    private PayloadCodec codec;
+    private VaultPayload payload;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws IOException {
+        codec = PayloadCodecs.forName(codecName);
+        payload = VaultFixtures.payload(entries);
+        encoded = codec.encodePayload(payload);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return codec.encodePayload(payload);
+    }
+
+    @Benchmark
+    public VaultPayload decode() throws IOException {
+        return codec.decodePayload(encoded, 0, encoded.length);
+    }
+}
@@ -0,0 +1,67 @@
+package com.etbasic.securityvault.bench;
+
+import com.etbasic.securityvault.core.model.VaultEntry;
+import com.etbasic.securityvault.core.model.VaultHeader;
+import com.etbasic.securityvault.core.model.VaultPayload;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Dati di prova deterministici (seed fisso) per i benchmark.
+ */
+final class VaultFixtures {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private VaultFixtures() {
+    }
+
+    static byte[] randomBytes(int size, long seed) {
+        byte[] out = new byte[size];
+        new Random(seed).nextBytes(out);
+        return out;
+    }
+
+    /**
+     * Payload con {@code entries} entry realistiche (titoli/username/URL ripetitivi, note brevi).
+     */
+    static VaultPayload payload(int entries) {
+        Random rnd = new Random(42);
+        List<VaultEntry> list = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            list.add(new VaultEntry(
+                    String.valueOf(1_700_000_000_000L + i),
+                    "service-" + (i % 500) + ".example.com",
+                    "user" + (i % 97) + "@example.com",
+                    (Long.toHexString(rnd.nextLong()) + Long.toHexString(rnd.nextLong())).toCharArray(),
+                    (i % 3 == 0) ? "rotated on 2024-0" + (1 + i % 9) + ", see ticket OPS-" + i : null
+            ));
+        }
+        return new VaultPayload(list);
+    }
+
+    static byte[] payloadJson(int entries) {
+        try {
+            return objectMapper.writeValueAsString(payload(entries)).getBytes(StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Header v2 tipico, con valori costanti.
+     */
+    static VaultHeader header() {
+        return new VaultHeader(
+                randomBytes(16, 1),
+                65536,
+                32,
+                "myRmTK/Q5L+/BZhyqAjHu6m8NMsSbwlf+MnGuSstME4=",
+                "sha256(header-json)"
+        ).withVersion(VaultHeader.VERSION_SINGLE_KDF);
+    }
+}
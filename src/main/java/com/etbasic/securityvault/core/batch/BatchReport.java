@@ -0,0 +1,36 @@
+package com.etbasic.securityvault.core.batch;
+
+import java.util.List;
+
+/**
+ * Risultati di un'esecuzione di {@link BatchRunner}, nello stesso ordine dei vault in input.
+ */
+public final class BatchReport {
+
+    private final List<VaultResult> results;
+    private final long elapsedMillis;
+
+    BatchReport(List<VaultResult> results, long elapsedMillis) {
+        this.results = List.copyOf(results);
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public List<VaultResult> getResults() {
+        return results;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public long count(VaultResult.Status status) {
+        return results.stream().filter(r -> r.getStatus() == status).count();
+    }
+
+    /**
+     * true se nessun vault è fallito.
+     */
+    public boolean isSuccess() {
+        return count(VaultResult.Status.FAILED) == 0;
+    }
+}
@@ -0,0 +1,214 @@
+package com.etbasic.securityvault.core.batch;
+
+import com.etbasic.securityvault.core.persistence.VaultStore;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+/**
+ * Esegue un {@link VaultJob} su molti vault dello stesso store, in parallelo.
+ *
+ * I job girano su un pool fisso di {@code threads} thread (di default uno per core): il lavoro è
+ * dominato dal KDF e dalla cifratura, quindi più thread dei core non servono. Al massimo
+ * {@code 2 * threads} vault sono in coda allo stesso tempo, anche con directory molto grandi.
+ *
+ * Con un file di checkpoint il batch è riprendibile: ogni vault completato viene annotato subito
+ * (una riga {@code OK\t<filename>}) e, rilanciando lo stesso job, i vault già fatti vengono
+ * riportati come SKIPPED invece di essere rieseguiti. I vault falliti vengono ritentati.
+ */
+public class BatchRunner {
+
+    private static final String CHECKPOINT_HEADER = "# job: ";
+    private static final String CHECKPOINT_OK = "OK\t";
+
+    private final VaultStore store;
+    private final int threads;
+
+    public BatchRunner(VaultStore store) {
+        this(store, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchRunner(VaultStore store, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        this.store = store;
+        this.threads = threads;
+    }
+
+    /**
+     * Esegue {@code job} su tutti i vault dello store.
+     */
+    public BatchReport run(String jobName, VaultJob job, File checkpoint, ProgressListener listener)
+            throws IOException, InterruptedException {
+        return run(jobName, job, store.list(), checkpoint, listener);
+    }
+
+    /**
+     * @param jobName    nome del job, scritto nel checkpoint: riprendere con un job diverso è un errore
+     * @param filenames  vault su cui eseguire il job
+     * @param checkpoint file di checkpoint (creato se manca), o null per un batch non riprendibile
+     * @param listener   notificato a ogni vault completato, o null
+     * @throws InterruptedException se il thread chiamante viene interrotto: i job in corso vengono
+     *                              interrotti, quelli completati restano nel checkpoint
+     */
+    public BatchReport run(String jobName, VaultJob job, List<String> filenames, File checkpoint,
+                           ProgressListener listener) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Set<String> done = (checkpoint != null) ? readCheckpoint(checkpoint, jobName) : Set.of();
+        int total = filenames.size();
+        AtomicInteger completed = new AtomicInteger();
+
+        try (BufferedWriter log = (checkpoint != null) ? openCheckpoint(checkpoint, jobName) : null) {
+            Object reportLock = new Object();
+            // serializza checkpoint e listener; restituisce il risultato per comodità
+            UnaryOperator<VaultResult> report = r -> {
+                synchronized (reportLock) {
+                    if (log != null && r.getStatus() == VaultResult.Status.OK) {
+                        try {
+                            log.write(CHECKPOINT_OK + r.getFilename());
+                            log.newLine();
+                            log.flush();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                    if (listener != null) {
+                        listener.onResult(r, completed.incrementAndGet(), total);
+                    }
+                }
+                return r;
+            };
+
+            List<Future<VaultResult>> futures = new ArrayList<>(total);
+            ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "vault-batch");
+                t.setDaemon(true);
+                return t;
+            });
+            Semaphore slots = new Semaphore(2 * threads);
+            try {
+                for (String filename : filenames) {
+                    if (done.contains(filename)) {
+                        futures.add(CompletableFuture.completedFuture(report.apply(
+                                new VaultResult(filename, VaultResult.Status.SKIPPED, "già completato", 0))));
+                        continue;
+                    }
+                    slots.acquire();
+                    futures.add(pool.submit(() -> {
+                        try {
+                            return report.apply(runOne(job, filename));
+                        } finally {
+                            slots.release();
+                        }
+                    }));
+                }
+                List<VaultResult> results = new ArrayList<>(total);
+                for (Future<VaultResult> f : futures) {
+                    try {
+                        results.add(f.get());
+                    } catch (ExecutionException e) {
+                        // solo il checkpoint può fallire qui: runOne cattura gli errori del job
+                        Throwable cause = e.getCause();
+                        if (cause instanceof UncheckedIOException) {
+                            throw ((UncheckedIOException) cause).getCause();
+                        }
+                        throw new RuntimeException("Batch failed", cause);
+                    }
+                }
+                return new BatchReport(results, (System.nanoTime() - start) / 1_000_000);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    private VaultResult runOne(VaultJob job, String filename) {
+        long t0 = System.nanoTime();
+        VaultResult.Status status;
+        String message;
+        try {
+            message = job.run(store, filename);
+            status = VaultResult.Status.OK;
+        } catch (Exception e) {
+            message = (e.getMessage() != null) ? e.getMessage() : e.getClass().getSimpleName();
+            status = VaultResult.Status.FAILED;
+        }
+        return new VaultResult(filename, status, message, (System.nanoTime() - t0) / 1_000_000);
+    }
+
+    /**
+     * Vault già completati secondo il checkpoint. Un'ultima riga senza newline (crash durante la
+     * scrittura) viene ignorata: quel vault sarà semplicemente rieseguito.
+     */
+    private static Set<String> readCheckpoint(File checkpoint, String jobName) throws IOException {
+        Set<String> done = new HashSet<>();
+        if (!checkpoint.exists()) {
+            return done;
+        }
+        String content = new String(Files.readAllBytes(checkpoint.toPath()), StandardCharsets.UTF_8);
+        int end = content.lastIndexOf('\n');
+        if (end < 0) {
+            // nemmeno l'intestazione è completa: si riparte da zero
+            return done;
+        }
+        String[] lines = content.substring(0, end).split("\r?\n");
+        if (!lines[0].startsWith(CHECKPOINT_HEADER)) {
+            throw new IllegalArgumentException("Checkpoint non valido: " + checkpoint);
+        }
+        String recorded = lines[0].substring(CHECKPOINT_HEADER.length());
+        if (!recorded.equals(jobName)) {
+            throw new IllegalArgumentException("Il checkpoint appartiene a un altro job: " + recorded);
+        }
+        for (int i = 1; i < lines.length; i++) {
+            if (lines[i].startsWith(CHECKPOINT_OK)) {
+                done.add(lines[i].substring(CHECKPOINT_OK.length()));
+            }
+        }
+        return done;
+    }
+
+    private static BufferedWriter openCheckpoint(File checkpoint, String jobName) throws IOException {
+        byte[] existing = checkpoint.exists() ? Files.readAllBytes(checkpoint.toPath()) : new byte[0];
+        int complete = 0; // byte fino all'ultimo '\n' incluso
+        for (int i = existing.length - 1; i >= 0; i--) {
+            if (existing[i] == '\n') {
+                complete = i + 1;
+                break;
+            }
+        }
+        if (complete < existing.length) {
+            // una riga incompleta in coda va tolta: chiuderla con un newline potrebbe renderla valida
+            // con un nome troncato (es. "v1" invece di "v10")
+            try (RandomAccessFile raf = new RandomAccessFile(checkpoint, "rw")) {
+                raf.setLength(complete);
+            }
+        }
+        BufferedWriter w = Files.newBufferedWriter(checkpoint.toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (complete == 0) {
+            w.write(CHECKPOINT_HEADER + jobName);
+            w.newLine();
+            w.flush();
+        }
+        return w;
+    }
+}
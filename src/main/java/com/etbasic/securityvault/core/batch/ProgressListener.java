@@ -0,0 +1,15 @@
+package com.etbasic.securityvault.core.batch;
+
+/**
+ * Notificato da {@link BatchRunner} a ogni vault completato.
+ * Le chiamate sono serializzate (mai due in contemporanea), ma arrivano dai thread del pool.
+ */
+@FunctionalInterface
+public interface ProgressListener {
+
+    /**
+     * @param done  vault completati finora, questo incluso
+     * @param total vault del batch
+     */
+    void onResult(VaultResult result, int done, int total);
+}
@@ -0,0 +1,17 @@
+package com.etbasic.securityvault.core.batch;
+
+import com.etbasic.securityvault.core.persistence.VaultStore;
+
+/**
+ * Operazione da eseguire su un singolo vault in un {@link BatchRunner}.
+ * Viene chiamata in parallelo su vault diversi, mai due volte in contemporanea sullo stesso.
+ */
+@FunctionalInterface
+public interface VaultJob {
+
+    /**
+     * @return breve descrizione dell'esito (es. "migrato a v2"), riportata nel {@link VaultResult}
+     * @throws Exception qualunque errore: il vault viene segnato come fallito, gli altri proseguono
+     */
+    String run(VaultStore store, String filename) throws Exception;
+}
@@ -0,0 +1,69 @@
+package com.etbasic.securityvault.core.batch;
+
+import com.etbasic.securityvault.core.codec.PayloadCodecs;
+import com.etbasic.securityvault.core.model.VaultHeader;
+import com.etbasic.securityvault.core.session.VaultSession;
+
+import java.util.function.Function;
+
+/**
+ * Job comuni per i batch. La password di ogni vault viene chiesta a {@code passwords}
+ * (es. la password di escrow, uguale per tutti); gli array restano del chiamante, che li azzera a fine batch.
+ */
+public final class VaultJobs {
+
+    private VaultJobs() {
+        // utility class, no instances
+    }
+
+    /**
+     * Verifica che il vault si apra con la sua password e che il payload sia integro.
+     */
+    public static VaultJob verify(Function<String, char[]> passwords) {
+        return (store, filename) -> {
+            try (VaultSession s = VaultSession.unlock(store, filename, passwords.apply(filename))) {
+                return s.getPayload().size() + " entry, header v" + s.getHeader().getVersion();
+            }
+        };
+    }
+
+    /**
+     * Riscrive il vault nel formato corrente: header v3 e payload in codec binario.
+     * I vault già aggiornati non vengono riscritti.
+     */
+    public static VaultJob migrate(Function<String, char[]> passwords) {
+        return (store, filename) -> {
+            try (VaultSession s = VaultSession.unlock(store, filename, passwords.apply(filename))) {
+                boolean legacy = s.getHeader().getVersion() < VaultHeader.VERSION_WRAPPED_KEY;
+                boolean json = PayloadCodecs.forName(s.getHeader().getPayloadCodec()) != PayloadCodecs.BINARY;
+                if (!legacy && !json) {
+                    return "già aggiornato";
+                }
+                if (json) {
+                    s.setPayloadCodec(PayloadCodecs.BINARY); // migra anche a v3
+                } else {
+                    s.save();
+                }
+                return "aggiornato a v" + s.getHeader().getVersion() + "/" + s.getHeader().getPayloadCodec();
+            }
+        };
+    }
+
+    /**
+     * Nuovo salt e {@code iterations} iterazioni PBKDF2, stessa password.
+     * I vault che hanno già almeno quelle iterazioni non vengono toccati.
+     */
+    public static VaultJob rekey(Function<String, char[]> passwords, int iterations) {
+        return (store, filename) -> {
+            char[] pw = passwords.apply(filename);
+            try (VaultSession s = VaultSession.unlock(store, filename, pw)) {
+                int current = s.getHeader().getEncIterations();
+                if (current >= iterations) {
+                    return "già a " + current + " iterazioni";
+                }
+                s.changePassword(pw, pw, iterations);
+                return current + " -> " + iterations + " iterazioni";
+            }
+        };
+    }
+}
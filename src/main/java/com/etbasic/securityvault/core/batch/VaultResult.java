@@ -0,0 +1,47 @@
+package com.etbasic.securityvault.core.batch;
+
+/**
+ * Esito di un {@link VaultJob} su un vault.
+ */
+public final class VaultResult {
+
+    public enum Status {
+        OK,
+        FAILED,
+        // già completato in un'esecuzione precedente (vedi checkpoint di BatchRunner)
+        SKIPPED
+    }
+
+    private final String filename;
+    private final Status status;
+    private final String message;
+    private final long durationMillis;
+
+    public VaultResult(String filename, Status status, String message, long durationMillis) {
+        this.filename = filename;
+        this.status = status;
+        this.message = message;
+        this.durationMillis = durationMillis;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return filename + ": " + status + (message != null ? " (" + message + ")" : "");
+    }
+}
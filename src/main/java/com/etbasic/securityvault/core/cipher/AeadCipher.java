@@ -1,6 +1,9 @@
 package com.etbasic.securityvault.core.cipher;
 
+import com.etbasic.securityvault.core.secret.SecretBuffer;
+
 import javax.crypto.AEADBadTagException;
+import java.nio.ByteBuffer;
 
 /**
  * Cifrario AEAD (Authenticated Encryption with Associated Data).
@@ -32,4 +35,46 @@ public interface AeadCipher {
      * @throws IllegalArgumentException se gli input non sono nel formato atteso (es. blob troppo corto)
      */
     byte[] decrypt(byte[] key, byte[] ciphertextWithIv, byte[] aad) throws AEADBadTagException, IllegalArgumentException;
+
+    /**
+     * Come {@link #encrypt} con il plaintext in un {@link SecretBuffer}: viene letto fuori dallo heap,
+     * senza copiarlo in un array. Il buffer resta aperto.
+     *
+     * @return byte[] contenente: IV (nonce) || CIPHERTEXT || TAG
+     */
+    byte[] encryptSecret(byte[] key, SecretBuffer plaintext, byte[] aad);
+
+    /**
+     * Come {@link #decrypt} ma il plaintext viene scritto direttamente in un {@link SecretBuffer}
+     * fuori dallo heap. Il chiamante lo chiude (try-with-resources) appena ha finito di leggerlo.
+     */
+    SecretBuffer decryptSecret(byte[] key, byte[] ciphertextWithIv, byte[] aad)
+            throws AEADBadTagException, IllegalArgumentException;
+
+    /**
+     * Byte del blob IV || CIPHERTEXT || TAG prodotto da un plaintext di {@code plaintextLength} byte.
+     */
+    int encryptedLength(int plaintextLength);
+
+    /**
+     * Cifra i byte tra posizione e limite di {@code plaintext} (heap, direct o mappato) scrivendo
+     * IV || CIPHERTEXT || TAG direttamente in {@code out} dalla sua posizione, senza array intermedi.
+     * La posizione di {@code plaintext} non cambia, quella di {@code out} avanza dei byte scritti.
+     *
+     * @return byte scritti, pari a {@link #encryptedLength}
+     * @throws IllegalArgumentException se {@code out} non ha spazio per l'intero blob
+     */
+    int encrypt(byte[] key, ByteBuffer plaintext, byte[] aad, ByteBuffer out);
+
+    /**
+     * Decifra il blob tra posizione e limite di {@code ciphertextWithIv} leggendo IV e ciphertext sul posto,
+     * e scrive il plaintext in {@code out} dalla sua posizione. La posizione di {@code ciphertextWithIv}
+     * non cambia, quella di {@code out} avanza dei byte scritti. Con un TAG non valido in {@code out}
+     * non resta nulla del plaintext.
+     *
+     * @return byte di plaintext scritti
+     * @throws IllegalArgumentException se il blob è troppo corto o {@code out} non ha spazio
+     */
+    int decrypt(byte[] key, ByteBuffer ciphertextWithIv, byte[] aad, ByteBuffer out)
+            throws AEADBadTagException, IllegalArgumentException;
 }
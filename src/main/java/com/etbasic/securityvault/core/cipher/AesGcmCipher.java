@@ -1,9 +1,18 @@
 package com.etbasic.securityvault.core.cipher;
 
+import com.etbasic.securityvault.core.metrics.CipherEvent;
+import com.etbasic.securityvault.core.metrics.Stage;
+import com.etbasic.securityvault.core.metrics.VaultMetrics;
+import com.etbasic.securityvault.core.pool.InstancePool;
+import com.etbasic.securityvault.core.secret.SecretBuffer;
+
 import javax.crypto.AEADBadTagException;
 import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
 import java.util.Arrays;
 
@@ -29,6 +38,20 @@ public class AesGcmCipher implements AeadCipher {
     private static final String TRANSFORMATION = "AES/GCM/NoPadding";
     private static final String ALGORITHM = "AES";
 
+    /**
+     * Cipher riusati tra le chiamate: evitano lookup del provider e costruzione a ogni encrypt/decrypt.
+     * Cipher non è thread-safe: un'istanza presa dal pool è usata da un solo thread fino al rilascio,
+     * e viene re-inizializzata (chiave + IV nuovi) a ogni uso. Un pool condiviso invece di un ThreadLocal:
+     * con un virtual thread per connessione (vedi VaultDaemon) l'istanza per thread non verrebbe mai riusata.
+     */
+    private static final InstancePool<Cipher> CIPHERS = new InstancePool<>(() -> {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(TRANSFORMATION + " not available", e);
+        }
+    });
+
     /**
      * Costruttore di default:
      * IV = 12 byte, TAG = 16 byte, SecureRandom di default.
@@ -53,41 +76,47 @@ public class AesGcmCipher implements AeadCipher {
     @Override
     public byte[] encrypt(byte[] key, byte[] plaintext, byte[] aad) {
         // Controllo dimensione chiave: 128 / 192 / 256 bit
-        if (key == null || !(key.length == 16 || key.length == 24 || key.length == 32)) {
-            throw new IllegalArgumentException("AES key must be 16, 24, or 32 bytes");
-        }
+        checkKey(key);
+        return encrypt(new SecretKeySpec(key, ALGORITHM), plaintext, aad);
+    }
 
+    /**
+     * Come {@link #encrypt(byte[], byte[], byte[])} ma con una chiave già costruita
+     * (es. {@link AesKey} tenuta dalla sessione), senza ricreare la SecretKeySpec a ogni chiamata.
+     */
+    public byte[] encrypt(SecretKey key, byte[] plaintext, byte[] aad) {
         if (plaintext == null) {
             plaintext = new byte[0]; // GCM supporta plaintext di lunghezza 0
         }
+        CipherEvent event = new CipherEvent();
+        event.begin();
+        long start = VaultMetrics.start();
+
+        Cipher cipher = CIPHERS.acquire();
+        // Output nel layout: IV || (ciphertext || tag), allocato una sola volta
+        byte[] out = new byte[ivSizeBytes + plaintext.length + tagSizeBytes];
 
         // Genera IV/nonce casuale (12 byte raccomandati per GCM)
         byte[] iv = new byte[ivSizeBytes];
         rng.nextBytes(iv);
 
         try {
-            // Prepara chiave e parametri GCM (tag a 128 bit = 16 byte)
-            SecretKeySpec sk = new SecretKeySpec(key, ALGORITHM);          // "AES"
+            // Prepara parametri GCM (tag a 128 bit = 16 byte)
             GCMParameterSpec gcmSpec = new GCMParameterSpec(tagSizeBytes * 8, iv);
 
-            // Inizializza il Cipher in ENCRYPT_MODE con AES/GCM/NoPadding
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION);            // "AES/GCM/NoPadding"
-            cipher.init(Cipher.ENCRYPT_MODE, sk, gcmSpec);
+            // Inizializza il Cipher (riusato dal thread corrente) in ENCRYPT_MODE con AES/GCM/NoPadding
+            cipher.init(Cipher.ENCRYPT_MODE, key, gcmSpec);
 
             // (Opzionale) Collega AAD prima dei dati: autenticata ma non cifrata
             if (aad != null) {
                 cipher.updateAAD(aad);
             }
 
-            // Cifra e calcola il TAG in un colpo solo:
-            // doFinal() ritorna: ciphertext || tag (tag in coda)
-            byte[] ctPlusTag = cipher.doFinal(plaintext);
-
-            // Componi l’output nel layout: IV || (ciphertext || tag)
-            byte[] out = new byte[iv.length + ctPlusTag.length];
-            System.arraycopy(iv, 0, out, 0, iv.length);
-            System.arraycopy(ctPlusTag, 0, out, iv.length, ctPlusTag.length);
+            // Cifra e calcola il TAG scrivendo direttamente dopo l'IV: ciphertext || tag
+            System.arraycopy(iv, 0, out, 0, ivSizeBytes);
+            cipher.doFinal(plaintext, 0, plaintext.length, out, ivSizeBytes);
 
+            measured(event, Stage.GCM_ENCRYPT, start, plaintext.length, aad);
             // Ritorna il blob completo pronto da salvare nel file vault
             return out;
         } catch (Exception e) {
@@ -97,34 +126,236 @@ public class AesGcmCipher implements AeadCipher {
         } finally {
             // Azzera IV temporaneo (buona pratica)
             zeroize(iv);
+            CIPHERS.release(cipher);
+        }
+    }
+
+    @Override
+    public byte[] encryptSecret(byte[] key, SecretBuffer plaintext, byte[] aad) {
+        checkKey(key);
+        return encryptSecret(new SecretKeySpec(key, ALGORITHM), plaintext, aad);
+    }
+
+    /**
+     * Come {@link #encrypt(SecretKey, byte[], byte[])} leggendo il plaintext dal {@link SecretBuffer}.
+     */
+    public byte[] encryptSecret(SecretKey key, SecretBuffer plaintext, byte[] aad) {
+        ByteBuffer src = plaintext.contents();
+        byte[] out = new byte[encryptedLength(src.remaining())];
+        encrypt(key, src, aad, ByteBuffer.wrap(out));
+        return out;
+    }
+
+    @Override
+    public int encryptedLength(int plaintextLength) {
+        return ivSizeBytes + plaintextLength + tagSizeBytes;
+    }
+
+    @Override
+    public int encrypt(byte[] key, ByteBuffer plaintext, byte[] aad, ByteBuffer out) {
+        checkKey(key);
+        return encrypt(new SecretKeySpec(key, ALGORITHM), plaintext, aad, out);
+    }
+
+    /**
+     * Come {@link #encrypt(byte[], ByteBuffer, byte[], ByteBuffer)} ma con una chiave già costruita.
+     * Se la cifratura fallisce la posizione di {@code out} non cambia.
+     */
+    public int encrypt(SecretKey key, ByteBuffer plaintext, byte[] aad, ByteBuffer out) {
+        int length = plaintext.remaining();
+        int total = encryptedLength(length);
+        checkOutput(out, total);
+        CipherEvent event = new CipherEvent();
+        event.begin();
+        long start = VaultMetrics.start();
+
+        Cipher cipher = CIPHERS.acquire();
+        byte[] iv = new byte[ivSizeBytes];
+        rng.nextBytes(iv);
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(tagSizeBytes * 8, iv));
+            if (aad != null) {
+                cipher.updateAAD(aad);
+            }
+            // IV e poi ciphertext || tag, in un solo passaggio nel buffer del chiamante
+            ByteBuffer dst = out.duplicate();
+            dst.put(iv);
+            cipher.doFinal(plaintext.duplicate(), dst);
+            out.position(out.position() + total);
+            measured(event, Stage.GCM_ENCRYPT, start, length, aad);
+            return total;
+        } catch (Exception e) {
+            throw new RuntimeException("Encryption failed", e);
+        } finally {
+            zeroize(iv);
+            CIPHERS.release(cipher);
         }
     }
 
     @Override
     public byte[] decrypt(byte[] key, byte[] ciphertextWithIv, byte[] aad)
             throws AEADBadTagException, IllegalArgumentException {
+        checkKey(key);
+        return decrypt(new SecretKeySpec(key, ALGORITHM), ciphertextWithIv, aad);
+    }
 
-        if (key == null || !(key.length == 16 || key.length == 24 || key.length == 32)) {
-            throw new IllegalArgumentException("AES key must be 16, 24, or 32 bytes");
-        }
+    /**
+     * Come {@link #decrypt(byte[], byte[], byte[])} ma con una chiave già costruita.
+     */
+    public byte[] decrypt(SecretKey key, byte[] ciphertextWithIv, byte[] aad)
+            throws AEADBadTagException, IllegalArgumentException {
 
         if (ciphertextWithIv == null ||
                 ciphertextWithIv.length < ivSizeBytes + tagSizeBytes) {
             throw new IllegalArgumentException("Ciphertext too short");
         }
 
-        // Parsing del blob: estrai IV e il blocco 'ciphertext||tag'
-        byte[] iv = Arrays.copyOfRange(ciphertextWithIv, 0, ivSizeBytes);
-        byte[] ctPlusTag = Arrays.copyOfRange(ciphertextWithIv, ivSizeBytes, ciphertextWithIv.length);
+        CipherEvent event = new CipherEvent();
+        event.begin();
+        long start = VaultMetrics.start();
+        // IV letto direttamente dal blob, senza copie: IV || CIPHERTEXT || TAG
+        byte[] plain = decrypt(key, ciphertextWithIv, 0, ciphertextWithIv.length, aad);
+        measured(event, Stage.GCM_DECRYPT, start, ciphertextWithIv.length, aad);
+        return plain;
+    }
+
+    /**
+     * Decifra un blob IV || CIPHERTEXT || TAG letto da un buffer (heap, direct o mappato),
+     * senza copiarlo: IV e ciphertext vengono letti in posizione. La posizione del buffer non cambia.
+     *
+     * @return il plaintext, unico array allocato per l'output
+     */
+    public byte[] decrypt(SecretKey key, ByteBuffer ciphertextWithIv, byte[] aad)
+            throws AEADBadTagException, IllegalArgumentException {
+
+        if (ciphertextWithIv == null ||
+                ciphertextWithIv.remaining() < ivSizeBytes + tagSizeBytes) {
+            throw new IllegalArgumentException("Ciphertext too short");
+        }
+        if (ciphertextWithIv.hasArray()) {
+            CipherEvent event = new CipherEvent();
+            event.begin();
+            long start = VaultMetrics.start();
+            // blob su heap (anche slice): niente copie, si usano offset sull'array
+            byte[] arr = ciphertextWithIv.array();
+            int off = ciphertextWithIv.arrayOffset() + ciphertextWithIv.position();
+            byte[] plain = decrypt(key, arr, off, ciphertextWithIv.remaining(), aad);
+            measured(event, Stage.GCM_DECRYPT, start, ciphertextWithIv.remaining(), aad);
+            return plain;
+        }
+
+        // blob fuori dallo heap: il plaintext va nell'unico array allocato
+        byte[] out = new byte[ciphertextWithIv.remaining() - ivSizeBytes - tagSizeBytes];
+        decrypt(key, ciphertextWithIv, aad, ByteBuffer.wrap(out));
+        return out;
+    }
+
+    @Override
+    public int decrypt(byte[] key, ByteBuffer ciphertextWithIv, byte[] aad, ByteBuffer out)
+            throws AEADBadTagException, IllegalArgumentException {
+        checkKey(key);
+        return decrypt(new SecretKeySpec(key, ALGORITHM), ciphertextWithIv, aad, out);
+    }
+
+    /**
+     * Come {@link #decrypt(byte[], ByteBuffer, byte[], ByteBuffer)} ma con una chiave già costruita.
+     * Se la verifica fallisce la zona di {@code out} destinata al plaintext viene azzerata e la sua
+     * posizione non cambia.
+     */
+    public int decrypt(SecretKey key, ByteBuffer ciphertextWithIv, byte[] aad, ByteBuffer out)
+            throws AEADBadTagException, IllegalArgumentException {
+
+        if (ciphertextWithIv == null ||
+                ciphertextWithIv.remaining() < ivSizeBytes + tagSizeBytes) {
+            throw new IllegalArgumentException("Ciphertext too short");
+        }
+        int length = ciphertextWithIv.remaining() - ivSizeBytes - tagSizeBytes;
+        checkOutput(out, length);
+        CipherEvent event = new CipherEvent();
+        event.begin();
+        long start = VaultMetrics.start();
+
+        ByteBuffer src = ciphertextWithIv.duplicate();
+        GCMParameterSpec spec;
+        byte[] iv = null;
+        if (src.hasArray()) {
+            // IV letto sul posto dall'array del buffer
+            spec = new GCMParameterSpec(tagSizeBytes * 8, src.array(), src.arrayOffset() + src.position(), ivSizeBytes);
+            src.position(src.position() + ivSizeBytes);
+        } else {
+            iv = new byte[ivSizeBytes];
+            src.get(iv);
+            spec = new GCMParameterSpec(tagSizeBytes * 8, iv);
+        }
 
+        Cipher cipher = CIPHERS.acquire();
+        boolean ok = false;
         try {
-            // Prepara chiave e parametri GCM con lo stesso IV
-            SecretKeySpec sk = new SecretKeySpec(key, ALGORITHM);          // "AES"
-            GCMParameterSpec gcm = new GCMParameterSpec(tagSizeBytes * 8, iv); // tag 128 bit
+            cipher.init(Cipher.DECRYPT_MODE, key, spec);
+            if (aad != null) {
+                cipher.updateAAD(aad);
+            }
+            int n = cipher.doFinal(src, out.duplicate());
+            ok = true;
+            out.position(out.position() + n);
+            measured(event, Stage.GCM_DECRYPT, start, ciphertextWithIv.remaining(), aad);
+            return n;
+        } catch (AEADBadTagException e) {
+            throw e;
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Decryption failed", e);
+        } finally {
+            zeroize(iv);
+            CIPHERS.release(cipher);
+            if (!ok) {
+                // nessun residuo di plaintext non autenticato nel buffer del chiamante
+                zeroize(out, out.position(), out.position() + length);
+            }
+        }
+    }
 
-            // Inizializza cipher in DECRYPT_MODE e ri-applica l'AAD identica alla cifratura
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION);            // "AES/GCM/NoPadding"
-            cipher.init(Cipher.DECRYPT_MODE, sk, gcm);
+    @Override
+    public SecretBuffer decryptSecret(byte[] key, byte[] ciphertextWithIv, byte[] aad)
+            throws AEADBadTagException, IllegalArgumentException {
+        checkKey(key);
+        if (ciphertextWithIv == null) {
+            throw new IllegalArgumentException("Ciphertext too short");
+        }
+        return decryptSecret(new SecretKeySpec(key, ALGORITHM), ByteBuffer.wrap(ciphertextWithIv), aad);
+    }
+
+    /**
+     * Come {@link #decrypt(SecretKey, ByteBuffer, byte[])} ma il plaintext va in un {@link SecretBuffer}
+     * invece che in un array su heap. Se il TAG non è valido il buffer viene chiuso prima dell'eccezione.
+     */
+    public SecretBuffer decryptSecret(SecretKey key, ByteBuffer ciphertextWithIv, byte[] aad)
+            throws AEADBadTagException, IllegalArgumentException {
+
+        if (ciphertextWithIv == null ||
+                ciphertextWithIv.remaining() < ivSizeBytes + tagSizeBytes) {
+            throw new IllegalArgumentException("Ciphertext too short");
+        }
+        SecretBuffer out = SecretBuffer.allocate(ciphertextWithIv.remaining() - ivSizeBytes - tagSizeBytes);
+        boolean ok = false;
+        try {
+            out.setLength(decrypt(key, ciphertextWithIv, aad, out.writable()));
+            ok = true;
+            return out;
+        } finally {
+            if (!ok) {
+                out.close();
+            }
+        }
+    }
+
+    private byte[] decrypt(SecretKey key, byte[] blob, int offset, int length, byte[] aad)
+            throws AEADBadTagException {
+        Cipher cipher = CIPHERS.acquire();
+        try {
+            // Inizializza cipher in DECRYPT_MODE con l'IV in testa al blob e ri-applica l'AAD identica alla cifratura
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(tagSizeBytes * 8, blob, offset, ivSizeBytes));
 
             if (aad != null) {
                 cipher.updateAAD(aad);
@@ -132,7 +363,7 @@ public class AesGcmCipher implements AeadCipher {
 
             // Verifica il TAG e, se valido, restituisce il plaintext
             // Se key/IV/AAD o i dati sono errati/manomessi → AEADBadTagException
-            return cipher.doFinal(ctPlusTag);
+            return cipher.doFinal(blob, offset + ivSizeBytes, length - ivSizeBytes);
         } catch (AEADBadTagException e) {
             // La rilanciamo così come dichiarato in firma
             throw e;
@@ -143,9 +374,42 @@ public class AesGcmCipher implements AeadCipher {
             // Qualsiasi altra eccezione crittografica → RuntimeException (o tua eccezione personalizzata)
             throw new RuntimeException("Decryption failed", e);
         } finally {
-            // Azzera temporanei
-            zeroize(iv);
-            zeroize(ctPlusTag);
+            CIPHERS.release(cipher);
+        }
+    }
+
+    /**
+     * Solo le operazioni riuscite: un tag non valido non conta come latenza.
+     */
+    private static void measured(CipherEvent event, Stage stage, long start, long bytes, byte[] aad) {
+        VaultMetrics.stop(stage, start);
+        if (event.shouldCommit()) {
+            event.operation = stage.name();
+            event.bytes = bytes;
+            event.aadBytes = (aad != null) ? aad.length : 0;
+            event.commit();
+        }
+    }
+
+    private static void checkKey(byte[] key) {
+        if (key == null || !(key.length == 16 || key.length == 24 || key.length == 32)) {
+            throw new IllegalArgumentException("AES key must be 16, 24, or 32 bytes");
+        }
+    }
+
+    private static void checkOutput(ByteBuffer out, int needed) {
+        if (out == null || out.isReadOnly() || out.remaining() < needed) {
+            throw new IllegalArgumentException("Output buffer too small or read-only: " + needed + " bytes needed");
+        }
+    }
+
+    private static void zeroize(ByteBuffer b, int from, int to) {
+        if (b.hasArray()) {
+            Arrays.fill(b.array(), b.arrayOffset() + from, b.arrayOffset() + to, (byte) 0);
+            return;
+        }
+        for (int i = from; i < to; i++) {
+            b.put(i, (byte) 0);
         }
     }
 
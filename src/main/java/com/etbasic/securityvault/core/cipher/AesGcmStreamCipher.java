@@ -0,0 +1,332 @@
+package com.etbasic.securityvault.core.cipher;
+
+import com.etbasic.securityvault.core.kdf.HKDF;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Implementazione di StreamingAeadCipher: costruzione STREAM su AES-GCM.
+ *
+ * Formato:
+ *   HEADER = versione (1 byte) || salt (16 byte) || noncePrefix (7 byte)
+ *   poi i segmenti, ognuno CIPHERTEXT || TAG (16 byte)
+ *
+ * Chiave dei segmenti = HKDF(key, salt): ogni flusso ha la sua chiave anche se {@code key} si ripete.
+ * Nonce del segmento i = noncePrefix (7) || i (4 byte BE) || flagUltimo (1 byte: 0x00 / 0x01)
+ *
+ * Tutti i segmenti tranne l'ultimo contengono esattamente {@code segmentSize} byte di plaintext;
+ * l'ultimo (marcato dal flag) ne contiene da 0 a {@code segmentSize}.
+ */
+public class AesGcmStreamCipher implements StreamingAeadCipher {
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final int SALT_SIZE_BYTES = 16;
+    private static final int NONCE_PREFIX_BYTES = 7;
+    private static final int HEADER_SIZE_BYTES = 1 + SALT_SIZE_BYTES + NONCE_PREFIX_BYTES;
+    private static final int TAG_SIZE_BYTES = 16;
+    private static final String SEGMENT_KEY_INFO = "securityvault/stream/segment-key";
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final String ALGORITHM = "AES";
+
+    private final int segmentSize;
+    private final SecureRandom rng;
+
+    /**
+     * Costruttore di default: segmenti da 64 KiB, SecureRandom di default.
+     */
+    public AesGcmStreamCipher() {
+        this(64 * 1024, new SecureRandom());
+    }
+
+    /**
+     * @param segmentSize byte di plaintext per segmento (memoria usata da ogni stream)
+     * @param rng         sorgente di random per salt e nonce
+     */
+    public AesGcmStreamCipher(int segmentSize, SecureRandom rng) {
+        if (segmentSize < 1024) {
+            throw new IllegalArgumentException("segmentSize must be at least 1024 bytes");
+        }
+        this.segmentSize = segmentSize;
+        this.rng = (rng != null) ? rng : new SecureRandom();
+    }
+
+    @Override
+    public OutputStream newEncryptingStream(byte[] key, OutputStream out, byte[] aad) throws IOException {
+        checkKey(key);
+        Objects.requireNonNull(out, "out");
+
+        byte[] header = new byte[HEADER_SIZE_BYTES];
+        header[0] = FORMAT_VERSION;
+        byte[] salt = new byte[SALT_SIZE_BYTES];
+        rng.nextBytes(salt);
+        System.arraycopy(salt, 0, header, 1, SALT_SIZE_BYTES);
+        byte[] prefix = new byte[NONCE_PREFIX_BYTES];
+        rng.nextBytes(prefix);
+        System.arraycopy(prefix, 0, header, 1 + SALT_SIZE_BYTES, NONCE_PREFIX_BYTES);
+
+        out.write(header);
+        return new EncryptingStream(out, new Segments(key, salt, prefix, aad));
+    }
+
+    @Override
+    public InputStream newDecryptingStream(byte[] key, InputStream in, byte[] aad) throws IOException {
+        checkKey(key);
+        Objects.requireNonNull(in, "in");
+
+        byte[] header = in.readNBytes(HEADER_SIZE_BYTES);
+        if (header.length < HEADER_SIZE_BYTES) {
+            throw new EOFException("Stream too short for header");
+        }
+        if (header[0] != FORMAT_VERSION) {
+            throw new IOException("Unsupported stream format version: " + header[0]);
+        }
+        byte[] salt = Arrays.copyOfRange(header, 1, 1 + SALT_SIZE_BYTES);
+        byte[] prefix = Arrays.copyOfRange(header, 1 + SALT_SIZE_BYTES, HEADER_SIZE_BYTES);
+        return new DecryptingStream(in, new Segments(key, salt, prefix, aad));
+    }
+
+    /**
+     * Dimensione del ciphertext prodotto per un plaintext di {@code plaintextSize} byte.
+     */
+    public long ciphertextSize(long plaintextSize) {
+        // c'è sempre almeno un segmento (il finale, anche vuoto)
+        long segments = Math.max(1, (plaintextSize + segmentSize - 1) / segmentSize);
+        return HEADER_SIZE_BYTES + plaintextSize + segments * TAG_SIZE_BYTES;
+    }
+
+    private static void checkKey(byte[] key) {
+        if (key == null || !(key.length == 16 || key.length == 24 || key.length == 32)) {
+            throw new IllegalArgumentException("AES key must be 16, 24, or 32 bytes");
+        }
+    }
+
+    /**
+     * Stato crittografico di un singolo flusso: chiave dei segmenti, nonce e contatore.
+     * Un Cipher per flusso, re-inizializzato a ogni segmento.
+     */
+    private static final class Segments {
+        private final Cipher cipher;
+        private final SecretKeySpec segmentKey;
+        private final byte[] nonce = new byte[12];
+        private final byte[] aad;
+        private long counter;
+
+        Segments(byte[] key, byte[] salt, byte[] prefix, byte[] aad) throws IOException {
+            byte[] prk = HKDF.extract(salt, key);
+            byte[] k = HKDF.expand(prk, SEGMENT_KEY_INFO, key.length);
+            try {
+                this.segmentKey = new SecretKeySpec(k, ALGORITHM);
+                this.cipher = Cipher.getInstance(TRANSFORMATION);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Cannot initialise " + TRANSFORMATION, e);
+            } finally {
+                Arrays.fill(prk, (byte) 0);
+                Arrays.fill(k, (byte) 0);
+            }
+            System.arraycopy(prefix, 0, nonce, 0, NONCE_PREFIX_BYTES);
+            this.aad = (aad == null) ? null : aad.clone();
+        }
+
+        private void init(int mode, boolean last) throws GeneralSecurityException {
+            if (counter > 0xFFFFFFFFL) {
+                throw new GeneralSecurityException("Too many segments in stream");
+            }
+            int i = (int) counter++;
+            nonce[7] = (byte) (i >>> 24);
+            nonce[8] = (byte) (i >>> 16);
+            nonce[9] = (byte) (i >>> 8);
+            nonce[10] = (byte) i;
+            nonce[11] = (byte) (last ? 1 : 0);
+            cipher.init(mode, segmentKey, new GCMParameterSpec(TAG_SIZE_BYTES * 8, nonce));
+            if (aad != null) {
+                cipher.updateAAD(aad);
+            }
+        }
+
+        int seal(byte[] in, int len, byte[] out, boolean last) throws GeneralSecurityException {
+            init(Cipher.ENCRYPT_MODE, last);
+            return cipher.doFinal(in, 0, len, out, 0);
+        }
+
+        int open(byte[] in, int len, byte[] out, boolean last) throws GeneralSecurityException {
+            init(Cipher.DECRYPT_MODE, last);
+            return cipher.doFinal(in, 0, len, out, 0);
+        }
+    }
+
+    private final class EncryptingStream extends FilterOutputStream {
+        private final Segments segments;
+        private final byte[] plain = new byte[segmentSize];
+        private final byte[] sealed = new byte[segmentSize + TAG_SIZE_BYTES];
+        private int buffered;
+        private boolean closed;
+
+        EncryptingStream(OutputStream out, Segments segments) {
+            super(out);
+            this.segments = segments;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            while (len > 0) {
+                // un segmento pieno si emette solo quando arrivano altri dati:
+                // finché non sappiamo se è l'ultimo non possiamo scegliere il flag
+                if (buffered == segmentSize) {
+                    flushSegment(false);
+                }
+                int n = Math.min(len, segmentSize - buffered);
+                System.arraycopy(b, off, plain, buffered, n);
+                buffered += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void flushSegment(boolean last) throws IOException {
+            try {
+                int n = segments.seal(plain, buffered, sealed, last);
+                out.write(sealed, 0, n);
+                buffered = 0;
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Segment encryption failed", e);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // non emette segmenti parziali: solo close() scrive il segmento finale
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                flushSegment(true);
+            } finally {
+                Arrays.fill(plain, (byte) 0);
+                out.close();
+            }
+        }
+    }
+
+    private final class DecryptingStream extends FilterInputStream {
+        private final Segments segments;
+        private final int sealedSize = segmentSize + TAG_SIZE_BYTES;
+        // +1: un byte letto in anticipo dice se il segmento corrente è l'ultimo
+        private final byte[] sealed = new byte[sealedSize + 1];
+        private final byte[] plain = new byte[segmentSize];
+        private int sealedLen;
+        private int plainPos;
+        private int plainLen;
+        private boolean lastDone;
+
+        DecryptingStream(InputStream in, Segments segments) {
+            super(in);
+            this.segments = segments;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return (n == -1) ? -1 : (one[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (len == 0) return 0;
+            while (plainPos == plainLen) {
+                if (lastDone) return -1;
+                nextSegment();
+            }
+            int n = Math.min(len, plainLen - plainPos);
+            System.arraycopy(plain, plainPos, b, off, n);
+            plainPos += n;
+            return n;
+        }
+
+        private void nextSegment() throws IOException {
+            // riempi fino a sealedSize + 1 byte (il byte in più è quello letto in anticipo)
+            while (sealedLen < sealed.length) {
+                int n = in.read(sealed, sealedLen, sealed.length - sealedLen);
+                if (n == -1) break;
+                sealedLen += n;
+            }
+            boolean last = sealedLen <= sealedSize;
+            int segLen = last ? sealedLen : sealedSize;
+            if (segLen < TAG_SIZE_BYTES) {
+                throw new IOException("Truncated stream", new AEADBadTagException("Segment too short"));
+            }
+            try {
+                plainLen = segments.open(sealed, segLen, plain, last);
+                plainPos = 0;
+            } catch (AEADBadTagException e) {
+                throw new IOException("Segment authentication failed", e);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Segment decryption failed", e);
+            }
+            if (last) {
+                lastDone = true;
+                sealedLen = 0;
+            } else {
+                sealed[0] = sealed[sealedSize];
+                sealedLen = 1;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            byte[] tmp = new byte[(int) Math.min(n, 8192)];
+            while (skipped < n) {
+                int r = read(tmp, 0, (int) Math.min(tmp.length, n - skipped));
+                if (r == -1) break;
+                skipped += r;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return plainLen - plainPos;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            Arrays.fill(plain, (byte) 0);
+            plainPos = plainLen = 0;
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.etbasic.securityvault.core.cipher;
+
+import javax.crypto.SecretKey;
+import java.util.Arrays;
+
+/**
+ * Chiave AES riutilizzabile tra più chiamate a {@link AesGcmCipher}, da creare una volta
+ * per sessione invece di costruire una {@code SecretKeySpec} a ogni encrypt/decrypt.
+ *
+ * A differenza di {@code SecretKeySpec}, {@link #destroy()} azzera davvero la copia interna.
+ */
+public final class AesKey implements SecretKey {
+
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] key;
+    private volatile boolean destroyed;
+
+    /**
+     * @param key 16, 24 o 32 byte; viene copiata, l'array del chiamante resta sotto la sua responsabilità
+     */
+    public AesKey(byte[] key) {
+        if (key == null || !(key.length == 16 || key.length == 24 || key.length == 32)) {
+            throw new IllegalArgumentException("AES key must be 16, 24, or 32 bytes");
+        }
+        this.key = key.clone();
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return "AES";
+    }
+
+    @Override
+    public String getFormat() {
+        return "RAW";
+    }
+
+    /**
+     * Ritorna una copia: il provider JCE la azzera dopo l'init del Cipher.
+     */
+    @Override
+    public byte[] getEncoded() {
+        if (destroyed) {
+            throw new IllegalStateException("Key has been destroyed");
+        }
+        return key.clone();
+    }
+
+    @Override
+    public void destroy() {
+        destroyed = true;
+        Arrays.fill(key, (byte) 0);
+    }
+
+    @Override
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+}
@@ -0,0 +1,35 @@
+package com.etbasic.securityvault.core.cipher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Cifrario AEAD a flusso (streaming), per dati troppo grandi per stare in un unico byte[].
+ *
+ * Il plaintext viene diviso in segmenti di dimensione fissa, ognuno cifrato e autenticato
+ * separatamente: la memoria usata è costante (un segmento) qualunque sia la dimensione totale.
+ * L'ordine dei segmenti e la fine del flusso sono autenticati, quindi riordino, duplicazione
+ * o troncamento vengono rilevati in decifratura.
+ */
+public interface StreamingAeadCipher {
+
+    /**
+     * @param key chiave (16, 24 o 32 byte)
+     * @param out destinazione del ciphertext; viene chiusa insieme allo stream ritornato
+     * @param aad dati associati autenticati in ogni segmento (es. id dell'allegato). Può essere {@code null}.
+     * @return stream in cui scrivere il plaintext; {@code close()} scrive il segmento finale
+     *         ed è obbligatorio, altrimenti il ciphertext risulta troncato
+     */
+    OutputStream newEncryptingStream(byte[] key, OutputStream out, byte[] aad) throws IOException;
+
+    /**
+     * @param key la stessa chiave usata in cifratura
+     * @param in  sorgente del ciphertext; viene chiusa insieme allo stream ritornato
+     * @param aad gli stessi dati associati usati in cifratura
+     * @return stream da cui leggere il plaintext. Restituisce solo dati di segmenti già verificati;
+     *         se un segmento non è autentico o il flusso è troncato, {@code read} lancia
+     *         {@link java.io.IOException} con causa {@link javax.crypto.AEADBadTagException}
+     */
+    InputStream newDecryptingStream(byte[] key, InputStream in, byte[] aad) throws IOException;
+}
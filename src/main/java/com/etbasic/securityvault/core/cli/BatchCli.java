@@ -0,0 +1,272 @@
+package com.etbasic.securityvault.core.cli;
+
+import com.etbasic.securityvault.core.persistence.ContainerVaultStore;
+import com.etbasic.securityvault.core.persistence.FileVaultStore;
+import com.etbasic.securityvault.core.persistence.VaultStore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Console;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Modalità non interattiva: sottocomandi da riga di comando e protocollo batch su stdin.
+ *
+ * Un sottocomando esegue una sola richiesta e stampa la risposta JSON:
+ * <pre>
+ *   securityvault [--dir D] get vault=personale query=posta limit=5
+ *   securityvault [--dir D] add vault=personale title=Banca username=mario password=...
+ *   securityvault --container C.svc list
+ * </pre>
+ * Con {@code --dir} (default {@code vaults}) ogni vault è un file della directory ({@link FileVaultStore});
+ * con {@code --container} tutti i vault stanno in un solo file ({@link ContainerVaultStore}), adatto a
+ * migliaia di vault piccoli. Il contenitore è di un processo alla volta: finché un daemon lo tiene aperto
+ * i sottocomandi sullo stesso file falliscono, e vanno mandati al daemon.
+ * La master password arriva da {@code SECURITYVAULT_MASTER} o, in mancanza, dalla console; per i
+ * comandi che lavorano su un vault il processo esegue prima {@code open}.
+ *
+ * Con {@code batch} il processo legge da stdin una richiesta JSON per riga (vedi {@link CommandProcessor})
+ * e scrive una risposta per riga, nello stesso ordine: avvio della JVM e KDF si pagano una volta sola
+ * per migliaia di operazioni. L'output viene svuotato solo quando non ci sono altre righe già in attesa.
+ *
+ * Con {@code daemon} lo stesso protocollo è servito su un socket UNIX (vedi {@link VaultDaemon}).
+ *
+ * Codici di uscita: 0 tutte le richieste riuscite, 1 almeno una fallita, 2 uso errato.
+ */
+public final class BatchCli {
+
+    public static final String MASTER_ENV = "SECURITYVAULT_MASTER";
+
+    // nella directory dei vault, ignorato da list()
+    private static final String DEFAULT_SOCKET = ".daemon.sock";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private BatchCli() {
+        // utility class, no instances
+    }
+
+    /**
+     * @param args argomenti del processo (non vuoti)
+     * @return codice di uscita
+     */
+    public static int run(String[] args) {
+        File dir = new File("vaults");
+        File container = null;
+        int i = 0;
+        if (args.length >= 2 && args[0].equals("--dir")) {
+            dir = new File(args[1]);
+            i = 2;
+        } else if (args.length >= 2 && args[0].equals("--container")) {
+            container = new File(args[1]);
+            dir = container.getAbsoluteFile().getParentFile();
+            i = 2;
+        }
+        if (i >= args.length || args[i].equals("help") || args[i].equals("--help")) {
+            usage();
+            return 2;
+        }
+        String command = args[i];
+
+        VaultStore store;
+        try {
+            store = openStore(dir, container);
+        } catch (IOException e) {
+            System.err.println("Errore di I/O: " + e.getMessage());
+            return 1;
+        }
+
+        try (CommandProcessor processor = new CommandProcessor(store)) {
+            if (command.equals("batch")) {
+                return batch(processor, new InputStreamReader(System.in, StandardCharsets.UTF_8),
+                        new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            }
+            ObjectNode request;
+            try {
+                request = request(command, args, i + 1);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                usage();
+                return 2;
+            }
+            if (command.equals("daemon")) {
+                Path socket = request.has("socket")
+                        ? Path.of(request.get("socket").asText())
+                        : dir.toPath().resolve(DEFAULT_SOCKET);
+                return daemon(processor, socket);
+            }
+            return single(processor, store, request) ? 0 : 1;
+        } catch (IOException e) {
+            System.err.println("Errore di I/O: " + e.getMessage());
+            return 1;
+        } finally {
+            if (store instanceof Closeable) {
+                try {
+                    ((Closeable) store).close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Una directory di file vault o, se {@code container} non è null, un contenitore unico.
+     * In entrambi i casi ogni scrittura è durevole (FULL) quando la risposta arriva: per il contenitore
+     * serve anche perché l'ordine immagine/voce dell'indice regga a un crash del sistema.
+     */
+    private static VaultStore openStore(File dir, File container) throws IOException {
+        if (container != null) {
+            return new ContainerVaultStore(container, ContainerVaultStore.DEFAULT_SLOTS,
+                    FileVaultStore.Durability.FULL);
+        }
+        FileVaultStore store = new FileVaultStore(dir, FileVaultStore.ReadMode.MAPPED,
+                FileVaultStore.Durability.FULL, true);
+        if (!store.getRecoveryReport().isEmpty()) {
+            // stdout è riservato alle risposte JSON
+            System.err.println("Ripristino dopo un'interruzione: " + store.getRecoveryReport());
+        }
+        return store;
+    }
+
+    /**
+     * Esegue le richieste di {@code in}, una per riga, scrivendo le risposte su {@code out}.
+     * Le righe vuote vengono ignorate; una riga non JSON produce una risposta di errore.
+     *
+     * @return 0 se tutte le richieste sono riuscite, altrimenti 1
+     */
+    public static int batch(CommandProcessor processor, Reader in, Writer out) throws IOException {
+        BufferedReader reader = new BufferedReader(in, 64 * 1024);
+        BufferedWriter writer = new BufferedWriter(out, 64 * 1024);
+        boolean allOk = true;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            ObjectNode response;
+            try {
+                response = processor.execute(mapper.readTree(line));
+            } catch (JsonProcessingException e) {
+                response = mapper.createObjectNode()
+                        .put("ok", false)
+                        .put("code", "bad_request")
+                        .put("error", "JSON non valido: " + e.getOriginalMessage());
+            }
+            allOk &= response.path("ok").asBoolean();
+            writer.write(mapper.writeValueAsString(response));
+            writer.newLine();
+            // chi scrive una richiesta alla volta (pipe interattiva) riceve subito la risposta,
+            // un file di richieste viene invece scritto a blocchi
+            if (!reader.ready()) {
+                writer.flush();
+            }
+        }
+        writer.flush();
+        return allOk ? 0 : 1;
+    }
+
+    /**
+     * Serve richieste sul socket finché il processo non viene terminato (SIGTERM/Ctrl-C chiudono
+     * il socket e azzerano le chiavi dei vault aperti).
+     */
+    private static int daemon(CommandProcessor processor, Path socket) throws IOException {
+        VaultDaemon daemon = new VaultDaemon(socket, processor);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                daemon.close();
+            } catch (IOException ignored) {
+            }
+            processor.close();
+        }, "vault-daemon-shutdown"));
+        System.err.println("In ascolto su " + daemon.getSocket());
+        daemon.serve();
+        return 0;
+    }
+
+    private static boolean single(CommandProcessor processor, VaultStore store, ObjectNode request)
+            throws IOException {
+        String op = request.path("op").asText();
+        boolean needsMaster = !op.equals("list") && !op.equals("close");
+        if (needsMaster && !request.has("master")) {
+            String master = masterPassword();
+            if (master == null) {
+                System.err.println("Master password mancante: imposta " + MASTER_ENV);
+                return false;
+            }
+            request.put("master", master);
+        }
+
+        ObjectNode response;
+        if (needsMaster && !op.equals("open") && !op.equals("create")) {
+            ObjectNode open = mapper.createObjectNode()
+                    .put("op", "open")
+                    .put("vault", request.path("vault").asText(null))
+                    .put("master", request.get("master").asText());
+            response = processor.execute(open);
+            if (response.path("ok").asBoolean()) {
+                response = processor.execute(request);
+            }
+        } else {
+            response = processor.execute(request);
+        }
+        System.out.println(mapper.writerWithDefaultPrettyPrinter().writeValueAsString(response));
+        return response.path("ok").asBoolean();
+    }
+
+    /**
+     * {@code op key=value ...} come richiesta JSON; i valori numerici restano stringhe
+     * ({@link CommandProcessor} li converte dove servono).
+     */
+    private static ObjectNode request(String op, String[] args, int from) {
+        ObjectNode request = mapper.createObjectNode().put("op", op);
+        for (int k = from; k < args.length; k++) {
+            int eq = args[k].indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Argomento non valido (atteso chiave=valore): " + args[k]);
+            }
+            request.put(args[k].substring(0, eq), args[k].substring(eq + 1));
+        }
+        return request;
+    }
+
+    private static String masterPassword() {
+        String env = System.getenv(MASTER_ENV);
+        if (env != null && !env.isEmpty()) {
+            return env;
+        }
+        Console cons = System.console();
+        if (cons == null) {
+            return null;
+        }
+        char[] pw = cons.readPassword("Master password: ");
+        return (pw == null) ? null : new String(pw);
+    }
+
+    private static void usage() {
+        System.err.println("Uso: securityvault [--dir DIR | --container FILE] <comando> [chiave=valore ...]");
+        System.err.println("  create vault=V [iterations=N]");
+        System.err.println("  open   vault=V");
+        System.err.println("  get    vault=V [id=ID | query=Q [limit=N]]");
+        System.err.println("  add    vault=V title=T [username=U] [password=P] [notes=N]");
+        System.err.println("  rm     vault=V id=ID");
+        System.err.println("  export vault=V [file=F.csv|F.json]");
+        System.err.println("  list");
+        System.err.println("  batch  richieste JSON da stdin, una per riga, es.");
+        System.err.println("         {\"op\":\"open\",\"vault\":\"V\",\"master\":\"...\"}");
+        System.err.println("  daemon [socket=PATH]  stesso protocollo su un socket UNIX (default DIR/" + DEFAULT_SOCKET
+                + ", con --container nella directory del contenitore)");
+        System.err.println("Master password da " + MASTER_ENV + " o dalla console.");
+    }
+}
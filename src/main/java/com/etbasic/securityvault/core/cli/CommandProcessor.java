@@ -0,0 +1,305 @@
+package com.etbasic.securityvault.core.cli;
+
+import com.etbasic.securityvault.core.kdf.KdfPolicy;
+import com.etbasic.securityvault.core.model.EntryIds;
+import com.etbasic.securityvault.core.model.VaultEntry;
+import com.etbasic.securityvault.core.model.VaultLayout;
+import com.etbasic.securityvault.core.persistence.VaultConflictException;
+import com.etbasic.securityvault.core.persistence.VaultStore;
+import com.etbasic.securityvault.core.search.SearchHit;
+import com.etbasic.securityvault.core.session.InvalidPasswordException;
+import com.etbasic.securityvault.core.session.VaultSession;
+import com.etbasic.securityvault.core.session.VaultSessionCache;
+import com.etbasic.securityvault.core.transfer.EntryFormat;
+import com.etbasic.securityvault.core.transfer.EntrySink;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import javax.crypto.AEADBadTagException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Protocollo a comandi JSON: una richiesta (oggetto JSON) produce una risposta (oggetto JSON).
+ * Usato dalla modalità non interattiva ({@link BatchCli}), una richiesta per riga.
+ *
+ * Richieste ({@code op} obbligatorio; {@code tag}, se presente, viene ripetuto nella risposta):
+ *  - create  {vault, master, iterations?}        crea il vault (layout LOG) e lo lascia aperto;
+ *                                                senza iterations si usano quelle calibrate dalla KdfPolicy
+ *  - open    {vault, master}                     sblocca il vault; le richieste successive non rifanno la KDF.
+ *                                                Un vault sotto il minimo della KdfPolicy viene aggiornato;
+ *                                                discardedTailBytes > 0 se la coda del log è stata scartata;
+ *                                                kdfUpgradeFailed (motivo) se l'aggiornamento non è riuscito
+ *  - get     {vault, id} | {vault, query, limit?} | {vault}    una entry, una ricerca o tutte le entry
+ *  - add     {vault, title, username?, password?, notes?}       risponde con l'id della nuova entry
+ *  - rm      {vault, id}
+ *  - export  {vault, file?}                      su file (.csv/.json) oppure nella risposta
+ *  - close   {vault}                             azzera la chiave in memoria
+ *  - list    {}                                  nomi dei vault dello store
+ *
+ * Risposte: {"ok":true, ...} oppure {"ok":false, "error":"...", "code":"..."} con code tra
+ * bad_request, not_open, not_found, wrong_password, conflict, io. Un errore non interrompe il flusso.
+ *
+ * Thread-safe: le sessioni aperte sono condivise tra tutti i chiamanti (vedi {@link VaultDaemon}),
+ * le letture procedono in parallelo e le modifiche di uno stesso vault si serializzano nella sessione.
+ */
+public class CommandProcessor implements AutoCloseable {
+
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final VaultStore store;
+    private final VaultSessionCache sessions;
+    private final KdfPolicy kdfPolicy;
+
+    public CommandProcessor(VaultStore store) {
+        this(store, Duration.ofMinutes(30));
+    }
+
+    /**
+     * @param idleTimeout inattività dopo la quale un vault aperto viene richiuso (chiave azzerata)
+     */
+    public CommandProcessor(VaultStore store, Duration idleTimeout) {
+        this(store, idleTimeout, KdfPolicy.DEFAULT);
+    }
+
+    /**
+     * @param kdfPolicy iterazioni dei nuovi vault e minimo sotto il quale {@code open} aggiorna il vault
+     */
+    public CommandProcessor(VaultStore store, Duration idleTimeout, KdfPolicy kdfPolicy) {
+        this.store = store;
+        this.kdfPolicy = kdfPolicy;
+        // pochi vault, migliaia di richieste ciascuno
+        this.sessions = new VaultSessionCache(64, idleTimeout);
+    }
+
+    /**
+     * Esegue una richiesta. Non lancia eccezioni: ogni errore diventa una risposta con ok=false.
+     */
+    public ObjectNode execute(JsonNode request) {
+        ObjectNode response = mapper.createObjectNode();
+        if (request != null && request.hasNonNull("tag")) {
+            response.set("tag", request.get("tag"));
+        }
+        try {
+            if (request == null || !request.isObject()) {
+                throw new CommandException("bad_request", "La richiesta deve essere un oggetto JSON");
+            }
+            String op = text(request, "op", true);
+            response.put("ok", true);
+            response.put("op", op);
+            switch (op) {
+                case "create":
+                    create(request, response);
+                    break;
+                case "open":
+                    open(request, response);
+                    break;
+                case "get":
+                    get(request, response);
+                    break;
+                case "add":
+                    add(request, response);
+                    break;
+                case "rm":
+                    rm(request, response);
+                    break;
+                case "export":
+                    export(request, response);
+                    break;
+                case "close":
+                    sessions.invalidate(text(request, "vault", true));
+                    break;
+                case "list":
+                    ArrayNode names = response.putArray("vaults");
+                    store.list().forEach(names::add);
+                    break;
+                default:
+                    throw new CommandException("bad_request", "Operazione sconosciuta: " + op);
+            }
+        } catch (CommandException e) {
+            fail(response, e.code, e.getMessage());
+        } catch (InvalidPasswordException | AEADBadTagException e) {
+            fail(response, "wrong_password", "Password errata o vault corrotto");
+        } catch (VaultConflictException e) {
+            fail(response, "conflict", e.getMessage());
+        } catch (NoSuchFileException e) {
+            fail(response, "not_found", "File non trovato: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            fail(response, "bad_request", e.getMessage());
+        } catch (IllegalStateException e) {
+            // sessione chiusa da un altro client (close, nuova open) o per inattività
+            fail(response, "not_open", e.getMessage());
+        } catch (Exception e) {
+            fail(response, "io", String.valueOf(e.getMessage()));
+        }
+        return response;
+    }
+
+    private void create(JsonNode request, ObjectNode response) throws Exception {
+        String vault = text(request, "vault", true);
+        if (store.exists(vault)) {
+            throw new CommandException("bad_request", "Il vault esiste già: " + vault);
+        }
+        int iterations = request.hasNonNull("iterations")
+                ? request.get("iterations").asInt()
+                : kdfPolicy.iterations();
+        char[] master = chars(request, "master", true);
+        VaultSession session;
+        try {
+            session = VaultSession.create(store, vault, master, iterations, VaultLayout.LOG);
+        } finally {
+            Arrays.fill(master, '\u0000');
+        }
+        sessions.put(session);
+        response.put("vault", vault);
+    }
+
+    private void open(JsonNode request, ObjectNode response) throws Exception {
+        String vault = text(request, "vault", true);
+        if (!store.exists(vault)) {
+            throw new CommandException("not_found", "Vault non trovato: " + vault);
+        }
+        char[] master = chars(request, "master", true);
+        VaultSession session;
+        try {
+            session = VaultSession.unlockAndUpgrade(store, vault, master, kdfPolicy);
+        } finally {
+            Arrays.fill(master, '\u0000');
+        }
+        sessions.put(session);
+        response.put("vault", vault);
+        response.put("entries", session.getEntries().size());
+        if (session.getDiscardedTailBytes() > 0) {
+            // ultimo record del log incompleto o non autentico: crash durante un append o file alterato
+            response.put("discardedTailBytes", session.getDiscardedTailBytes());
+        }
+        if (session.getKdfUpgradeFailure() != null) {
+            // il vault resta sotto il minimo della KdfPolicy: si ritenta al prossimo open
+            response.put("kdfUpgradeFailed", session.getKdfUpgradeFailure());
+        }
+    }
+
+    private void get(JsonNode request, ObjectNode response) throws Exception {
+        VaultSession session = session(request);
+        String id = text(request, "id", false);
+        String query = text(request, "query", false);
+        if (id != null) {
+            VaultEntry entry = session.getEntry(id);
+            if (entry == null) {
+                throw new CommandException("not_found", "Entry non trovata: " + id);
+            }
+            response.set("entry", mapper.valueToTree(entry));
+        } else if (query != null) {
+            ArrayNode hits = response.putArray("entries");
+            for (SearchHit hit : session.search(query, request.path("limit").asInt(DEFAULT_SEARCH_LIMIT))) {
+                hits.add(mapper.valueToTree(hit.getEntry()));
+            }
+        } else {
+            ArrayNode all = response.putArray("entries");
+            for (VaultEntry entry : session.getEntries()) {
+                all.add(mapper.valueToTree(entry));
+            }
+        }
+    }
+
+    private void add(JsonNode request, ObjectNode response) throws Exception {
+        VaultSession session = session(request);
+        VaultEntry entry = new VaultEntry(EntryIds.next(), text(request, "title", true),
+                text(request, "username", false), chars(request, "password", false), text(request, "notes", false));
+        session.addEntry(entry);
+        response.put("id", entry.getId());
+    }
+
+    private void rm(JsonNode request, ObjectNode response) throws Exception {
+        VaultSession session = session(request);
+        String id = text(request, "id", true);
+        if (session.getEntry(id) == null) {
+            throw new CommandException("not_found", "Entry non trovata: " + id);
+        }
+        session.removeEntry(id);
+        response.put("id", id);
+    }
+
+    private void export(JsonNode request, ObjectNode response) throws Exception {
+        VaultSession session = session(request);
+        String file = text(request, "file", false);
+        if (file == null) {
+            ArrayNode all = response.putArray("entries");
+            for (VaultEntry entry : session.getEntries()) {
+                all.add(mapper.valueToTree(entry));
+            }
+            return;
+        }
+        Path target = Path.of(file);
+        try (EntrySink out = EntryFormat.fromFileName(file).create(Files.newOutputStream(target))) {
+            response.put("exported", session.exportEntries(out));
+            response.put("file", file);
+        }
+    }
+
+    /**
+     * Sessione aperta del vault della richiesta, ricaricata se il file è cambiato nel frattempo.
+     */
+    private VaultSession session(JsonNode request) throws IOException {
+        String vault = text(request, "vault", true);
+        VaultSession session = sessions.get(vault);
+        if (session == null) {
+            throw new CommandException("not_open", "Vault non aperto (usa open): " + vault);
+        }
+        session.refresh();
+        return session;
+    }
+
+    private static String text(JsonNode request, String field, boolean required) {
+        JsonNode node = request.get(field);
+        if (node == null || node.isNull()) {
+            if (required) {
+                throw new CommandException("bad_request", "Campo obbligatorio mancante: " + field);
+            }
+            return null;
+        }
+        if (!node.isValueNode()) {
+            throw new CommandException("bad_request", "Il campo deve essere un valore semplice: " + field);
+        }
+        return node.asText();
+    }
+
+    // la richiesta JSON contiene già una String, ma da qui in poi la password gira solo come char[]
+    private static char[] chars(JsonNode request, String field, boolean required) {
+        String s = text(request, field, required);
+        return (s != null) ? s.toCharArray() : null;
+    }
+
+    private static void fail(ObjectNode response, String code, String message) {
+        response.put("ok", false);
+        response.put("code", code);
+        response.put("error", message);
+    }
+
+    /**
+     * Azzera le chiavi di tutti i vault aperti.
+     */
+    @Override
+    public void close() {
+        sessions.close();
+    }
+
+    private static final class CommandException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final String code;
+
+        CommandException(String code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+}
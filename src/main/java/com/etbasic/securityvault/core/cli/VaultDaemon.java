@@ -0,0 +1,160 @@
+package com.etbasic.securityvault.core.cli;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.ConnectException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Demone locale: tiene i vault sbloccati in memoria e risponde su un socket UNIX con lo stesso
+ * protocollo a righe JSON della modalità batch (vedi {@link CommandProcessor}).
+ *
+ * Un vault aperto da un client (op open) resta disponibile a tutte le connessioni successive finché
+ * non viene chiuso (op close) o resta inattivo oltre il timeout: una lettura costa un giro sul socket,
+ * senza avvio della JVM né KDF.
+ *
+ * Ogni connessione ha il suo thread virtuale; le letture sullo stesso vault procedono in parallelo,
+ * le scritture si serializzano nella sessione e vanno su disco tramite lo store.
+ *
+ * Il socket è accessibile solo al proprietario (rw-------): chi può connettersi può leggere i vault aperti.
+ * Per non lasciare nemmeno un istante in cui il socket ha i permessi dell'umask, viene creato in una
+ * directory privata (rwx------), ristretto e solo dopo spostato con un rename atomico al suo percorso.
+ * Esempio di client: {@code echo '{"op":"get","vault":"v","id":"..."}' | nc -U vaults/.daemon.sock}
+ */
+public class VaultDaemon implements Closeable {
+
+    private final Path socket;
+    private final CommandProcessor processor;
+    private final ServerSocketChannel server;
+    private final Set<SocketChannel> clients = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    /**
+     * Crea il socket e inizia ad accettare connessioni solo con {@link #serve()}.
+     * Un file di socket rimasto da un demone terminato male viene sostituito.
+     *
+     * @throws IOException se un altro demone è già in ascolto su {@code socket}
+     */
+    public VaultDaemon(Path socket, CommandProcessor processor) throws IOException {
+        this.socket = socket;
+        this.processor = processor;
+        removeStaleSocket(socket);
+        this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            bindPrivately(server, socket);
+        } catch (IOException | RuntimeException e) {
+            server.close();
+            throw e;
+        }
+    }
+
+    /**
+     * bind crea il file del socket con i permessi dell'umask, e un client connesso prima del chmod
+     * resterebbe connesso anche dopo: il bind avviene in una directory accessibile solo al proprietario
+     * (nella stessa directory del socket, quindi sullo stesso file system), poi il socket già ristretto
+     * viene spostato al suo percorso.
+     */
+    private static void bindPrivately(ServerSocketChannel server, Path socket) throws IOException {
+        Path parent = socket.toAbsolutePath().getParent();
+        Path privateDir = Files.createTempDirectory(parent, ".daemon",
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        Path staged = privateDir.resolve("sock");
+        try {
+            server.bind(UnixDomainSocketAddress.of(staged));
+            Files.setPosixFilePermissions(staged, PosixFilePermissions.fromString("rw-------"));
+            Files.move(staged, socket, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(staged);
+            Files.delete(privateDir);
+        }
+    }
+
+    public Path getSocket() {
+        return socket;
+    }
+
+    /**
+     * Accetta connessioni finché il demone non viene chiuso, avviando un thread virtuale per ognuna.
+     */
+    public void serve() throws IOException {
+        while (!closed) {
+            SocketChannel client;
+            try {
+                client = server.accept();
+            } catch (AsynchronousCloseException e) {
+                break; // close() da un altro thread
+            }
+            clients.add(client);
+            Thread.ofVirtual().name("vault-daemon-client").start(() -> handle(client));
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        try (client) {
+            BatchCli.batch(processor,
+                    new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8),
+                    new OutputStreamWriter(Channels.newOutputStream(client), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // client disconnesso a metà: non riguarda gli altri
+        } finally {
+            clients.remove(client);
+        }
+    }
+
+    /**
+     * Smette di accettare connessioni, chiude quelle aperte e rimuove il file del socket.
+     * Le sessioni restano al {@link CommandProcessor}, che il chiamante chiude a parte.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        for (SocketChannel c : clients) {
+            try {
+                c.close();
+            } catch (IOException ignored) {
+            }
+        }
+        Files.deleteIfExists(socket);
+    }
+
+    /**
+     * Un percorso già esistente si rimuove solo se è un socket (né file, né directory, né link) su cui
+     * nessuno risponde: anche la connessione a un file regolare fallisce con ConnectException, e il
+     * rename del bind lo sostituirebbe comunque.
+     */
+    private static void removeStaleSocket(Path socket) throws IOException {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(socket, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        if (!attrs.isOther()) {
+            throw new IOException("Il percorso esiste e non è un socket: " + socket);
+        }
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(socket)).close();
+            throw new IOException("Demone già in ascolto su " + socket);
+        } catch (ConnectException e) {
+            Files.delete(socket); // nessuno in ascolto: resto di un demone terminato male
+        }
+    }
+}
@@ -0,0 +1,566 @@
+package com.etbasic.securityvault.core.codec;
+
+import com.etbasic.securityvault.core.model.VaultAttachment;
+import com.etbasic.securityvault.core.model.VaultEntry;
+import com.etbasic.securityvault.core.model.VaultPayload;
+import com.etbasic.securityvault.core.secret.SecretBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Codec binario compatto, scritto a mano (niente reflection né nomi dei campi nel plaintext).
+ *
+ * Formato (tutti gli interi sono varint LEB128 senza segno):
+ *   PAYLOAD     = versione (1 byte) || nEntry || ENTRY*
+ *   ENTRY       = id || title || username || password || notes || nAllegati || ALLEGATO*
+ *   ALLEGATO    = id || name || size || key
+ *   stringa     = 0 se null, altrimenti (lunghezza UTF-8 + 1) || byte UTF-8
+ *   byte[]      = 0 se null, altrimenti (lunghezza + 1) || byte
+ * Un record del layout LOG contiene versione || ENTRY.
+ *
+ * La dimensione viene calcolata prima di scrivere: l'array di output è allocato una sola volta
+ * della misura esatta e non restano copie intermedie del plaintext (es. password) da azzerare.
+ * Il payload si può scrivere e leggere anche direttamente in un {@link SecretBuffer} fuori dallo heap;
+ * le password passano da e verso char[] senza diventare String.
+ */
+final class BinaryPayloadCodec implements PayloadCodec {
+
+    private static final byte FORMAT_VERSION = 1;
+
+    @Override
+    public String name() {
+        return "binary";
+    }
+
+    @Override
+    public byte[] encodePayload(VaultPayload payload) {
+        byte[] out = new byte[payloadSize(payload)];
+        writePayload(new Writer(out), payload);
+        return out;
+    }
+
+    @Override
+    public SecretBuffer encodePayloadSecret(VaultPayload payload) {
+        SecretBuffer out = SecretBuffer.allocate(payloadSize(payload));
+        try {
+            writePayload(new Writer(out.writable()), payload);
+            return out;
+        } catch (RuntimeException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public VaultPayload decodePayload(byte[] data, int off, int len) throws IOException {
+        return readPayload(new Reader(data, off, len));
+    }
+
+    @Override
+    public VaultPayload decodePayload(ByteBuffer data) throws IOException {
+        if (data.hasArray()) {
+            return decodePayload(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        }
+        return readPayload(new Reader(data));
+    }
+
+    @Override
+    public byte[] encodeEntry(VaultEntry entry) {
+        byte[] out = new byte[1 + entrySize(entry)];
+        Writer w = new Writer(out);
+        w.version();
+        writeEntry(w, entry);
+        w.finish();
+        return out;
+    }
+
+    @Override
+    public VaultEntry decodeEntry(byte[] data, int off, int len) throws IOException {
+        Reader r = new Reader(data, off, len);
+        r.version();
+        VaultEntry e = readEntry(r);
+        r.end();
+        return e;
+    }
+
+    // --- payload ---
+
+    private static int payloadSize(VaultPayload payload) {
+        Collection<VaultEntry> entries = payload.getEntries();
+        int size = 1 + varIntSize(entries.size());
+        for (VaultEntry e : entries) {
+            size += entrySize(e);
+        }
+        return size;
+    }
+
+    private static void writePayload(Writer w, VaultPayload payload) {
+        Collection<VaultEntry> entries = payload.getEntries();
+        w.version();
+        w.varLong(entries.size());
+        for (VaultEntry e : entries) {
+            writeEntry(w, e);
+        }
+        w.finish();
+    }
+
+    private static VaultPayload readPayload(Reader r) throws IOException {
+        r.version();
+        int n = r.count();
+        List<VaultEntry> entries = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            entries.add(readEntry(r));
+        }
+        r.end();
+        return new VaultPayload(entries);
+    }
+
+    // --- entry ---
+
+    private static int entrySize(VaultEntry e) {
+        int size = stringSize(e.getId())
+                + stringSize(e.getTitle())
+                + stringSize(e.getUsername())
+                + stringSize(e.getPassword())
+                + stringSize(e.getNotes());
+        List<VaultAttachment> atts = e.getAttachments();
+        int n = (atts == null) ? 0 : atts.size();
+        size += varIntSize(n);
+        for (int i = 0; i < n; i++) {
+            VaultAttachment a = atts.get(i);
+            size += stringSize(a.getId())
+                    + stringSize(a.getName())
+                    + varIntSize(a.getSize())
+                    + bytesSize(a.getKey());
+        }
+        return size;
+    }
+
+    private static void writeEntry(Writer w, VaultEntry e) {
+        w.string(e.getId());
+        w.string(e.getTitle());
+        w.string(e.getUsername());
+        w.string(e.getPassword());
+        w.string(e.getNotes());
+        List<VaultAttachment> atts = e.getAttachments();
+        int n = (atts == null) ? 0 : atts.size();
+        w.varLong(n);
+        for (int i = 0; i < n; i++) {
+            VaultAttachment a = atts.get(i);
+            w.string(a.getId());
+            w.string(a.getName());
+            w.varLong(a.getSize());
+            w.bytes(a.getKey());
+        }
+    }
+
+    private static VaultEntry readEntry(Reader r) throws IOException {
+        VaultEntry e = new VaultEntry(r.string(), r.string(), r.string(), r.chars(), r.string());
+        int n = r.count();
+        if (n > 0) {
+            // come nel JSON (NON_EMPTY): una lista vuota equivale a nessun allegato
+            List<VaultAttachment> atts = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                atts.add(new VaultAttachment(r.string(), r.string(), r.varLong(), r.bytes()));
+            }
+            e.setAttachments(atts);
+        }
+        return e;
+    }
+
+    // --- dimensioni ---
+
+    private static int varIntSize(long v) {
+        if (v < 0) {
+            throw new IllegalArgumentException("Valore negativo non codificabile: " + v);
+        }
+        int n = 1;
+        while ((v >>>= 7) != 0) {
+            n++;
+        }
+        return n;
+    }
+
+    private static int stringSize(String s) {
+        if (s == null) {
+            return 1;
+        }
+        int len = utf8Length(s);
+        return varIntSize(len + 1L) + len;
+    }
+
+    private static int stringSize(char[] s) {
+        if (s == null) {
+            return 1;
+        }
+        int len = utf8Length(s);
+        return varIntSize(len + 1L) + len;
+    }
+
+    private static int bytesSize(byte[] b) {
+        return (b == null) ? 1 : varIntSize(b.length + 1L) + b.length;
+    }
+
+    private static int utf8Length(String s) {
+        int len = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                len += 1;
+            } else if (isPair(c, (i + 1 < s.length()) ? s.charAt(i + 1) : 0)) {
+                len += 4;
+                i++;
+            } else {
+                len += utf8Size(c);
+            }
+        }
+        return len;
+    }
+
+    // come utf8Length(String): le password non diventano String nemmeno per misurarle
+    private static int utf8Length(char[] s) {
+        int len = 0;
+        for (int i = 0; i < s.length; i++) {
+            char c = s[i];
+            if (c < 0x80) {
+                len += 1;
+            } else if (isPair(c, (i + 1 < s.length) ? s[i + 1] : 0)) {
+                len += 4;
+                i++;
+            } else {
+                len += utf8Size(c);
+            }
+        }
+        return len;
+    }
+
+    private static boolean isPair(char c, char next) {
+        return Character.isHighSurrogate(c) && Character.isLowSurrogate(next);
+    }
+
+    // byte UTF-8 di un carattere che non fa parte di una coppia di surrogati
+    private static int utf8Size(char c) {
+        if (c < 0x80) {
+            return 1;
+        }
+        if (c < 0x800) {
+            return 2;
+        }
+        // surrogato isolato: come String.getBytes diventa '?' (1 byte)
+        return Character.isSurrogate(c) ? 1 : 3;
+    }
+
+    /**
+     * Scrittura in un array già della dimensione esatta oppure, per un {@link SecretBuffer},
+     * a blocchi: il blocco su heap viene copiato fuori e azzerato quando è pieno.
+     */
+    private static final class Writer {
+        private static final int CHUNK = 8192;
+        // byte che un singolo passo di scrittura può richiedere: varint a 64 bit (10) o carattere UTF-8 (4)
+        private static final int MAX_STEP = 10;
+
+        private final byte[] buf;
+        // null: buf è già l'output
+        private final ByteBuffer sink;
+        private final int size;
+        private int pos;
+        private int flushed;
+
+        Writer(byte[] out) {
+            this.buf = out;
+            this.sink = null;
+            this.size = out.length;
+        }
+
+        Writer(ByteBuffer sink) {
+            this.sink = sink;
+            this.size = sink.remaining();
+            this.buf = new byte[Math.min(CHUNK, Math.max(size, MAX_STEP))];
+        }
+
+        void version() {
+            room(1);
+            buf[pos++] = FORMAT_VERSION;
+        }
+
+        void varLong(long v) {
+            room(MAX_STEP);
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        void string(String s) {
+            if (s == null) {
+                room(1);
+                buf[pos++] = 0;
+                return;
+            }
+            varLong(utf8Length(s) + 1L);
+            // UTF-8 scritto direttamente nel buffer, senza passare da getBytes()
+            int n = s.length();
+            for (int i = 0; i < n; i++) {
+                char c = s.charAt(i);
+                room(4);
+                if (c < 0x80) {
+                    buf[pos++] = (byte) c;
+                } else if (put(c, (i + 1 < n) ? s.charAt(i + 1) : 0)) {
+                    i++;
+                }
+            }
+        }
+
+        void string(char[] s) {
+            if (s == null) {
+                room(1);
+                buf[pos++] = 0;
+                return;
+            }
+            varLong(utf8Length(s) + 1L);
+            for (int i = 0; i < s.length; i++) {
+                char c = s[i];
+                room(4);
+                if (c < 0x80) {
+                    buf[pos++] = (byte) c;
+                } else if (put(c, (i + 1 < s.length) ? s[i + 1] : 0)) {
+                    i++;
+                }
+            }
+        }
+
+        /**
+         * Scrive {@code c} (non ASCII) in UTF-8; ritorna true se con {@code next} formava una coppia
+         * di surrogati (scritta come un unico code point da 4 byte).
+         */
+        private boolean put(char c, char next) {
+            if (c < 0x800) {
+                buf[pos++] = (byte) (0xC0 | (c >> 6));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (isPair(c, next)) {
+                int cp = Character.toCodePoint(c, next);
+                buf[pos++] = (byte) (0xF0 | (cp >> 18));
+                buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+                return true;
+            } else if (Character.isSurrogate(c)) {
+                buf[pos++] = (byte) '?';
+            } else {
+                buf[pos++] = (byte) (0xE0 | (c >> 12));
+                buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+            return false;
+        }
+
+        void bytes(byte[] b) {
+            if (b == null) {
+                room(1);
+                buf[pos++] = 0;
+                return;
+            }
+            varLong(b.length + 1L);
+            if (sink != null) {
+                flush();
+                sink.put(b);
+                flushed += b.length;
+                return;
+            }
+            System.arraycopy(b, 0, buf, pos, b.length);
+            pos += b.length;
+        }
+
+        void finish() {
+            flush();
+            if (flushed + pos != size) {
+                // le dimensioni calcolate e quelle scritte devono coincidere
+                throw new IllegalStateException("Binary codec size mismatch: " + (flushed + pos) + " != " + size);
+            }
+        }
+
+        private void room(int n) {
+            if (sink != null && pos + n > buf.length) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (sink == null || pos == 0) {
+                return;
+            }
+            sink.put(buf, 0, pos);
+            Arrays.fill(buf, 0, pos, (byte) 0);
+            flushed += pos;
+            pos = 0;
+        }
+    }
+
+    /**
+     * Lettura con controllo dei limiti: un input malformato dà IOException, mai eccezioni di indice.
+     */
+    private static final class Reader {
+        // uno solo dei due: l'array (accesso diretto, il caso comune) o un buffer fuori dallo heap
+        private final byte[] arr;
+        private final ByteBuffer buf;
+        private final int end;
+        private int pos;
+
+        Reader(byte[] arr, int off, int len) {
+            this.arr = arr;
+            this.buf = null;
+            this.pos = off;
+            this.end = off + len;
+        }
+
+        // indici assoluti nel buffer: la sua posizione non cambia
+        Reader(ByteBuffer buf) {
+            this.arr = null;
+            this.buf = buf;
+            this.pos = buf.position();
+            this.end = buf.limit();
+        }
+
+        private byte at(int i) {
+            return (arr != null) ? arr[i] : buf.get(i);
+        }
+
+        void version() throws IOException {
+            need(1);
+            byte v = at(pos++);
+            if (v != FORMAT_VERSION) {
+                throw new IOException("Versione del payload binario non supportata: " + v);
+            }
+        }
+
+        long varLong() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                need(1);
+                byte b = at(pos++);
+                v |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return v;
+                }
+            }
+            throw new IOException("Varint troppo lungo");
+        }
+
+        // un conteggio non può superare i byte rimasti (ogni elemento occupa almeno un byte)
+        int count() throws IOException {
+            long n = varLong();
+            if (n > end - pos) {
+                throw new IOException("Conteggio non valido: " + n);
+            }
+            return (int) n;
+        }
+
+        private int length() throws IOException {
+            long n = varLong();
+            if (n == 0) {
+                return -1;
+            }
+            if (n - 1 > end - pos) {
+                throw new IOException("Payload binario troncato");
+            }
+            return (int) (n - 1);
+        }
+
+        String string() throws IOException {
+            int len = length();
+            if (len < 0) {
+                return null;
+            }
+            String s = (arr != null)
+                    ? new String(arr, pos, len, StandardCharsets.UTF_8)
+                    : StandardCharsets.UTF_8.decode(buf.slice(pos, len)).toString();
+            pos += len;
+            return s;
+        }
+
+        /**
+         * Come {@link #string()} ma in un char[] della misura esatta, decodificato a mano dal buffer
+         * (niente String né CharBuffer intermedi). L'array provvisorio, se serve, viene azzerato.
+         */
+        char[] chars() throws IOException {
+            int len = length();
+            if (len < 0) {
+                return null;
+            }
+            int to = pos + len;
+            // ogni carattere occupa almeno un byte: len basta sempre
+            char[] c = new char[len];
+            int n = 0;
+            if (arr != null) {
+                // tratto iniziale ASCII (quasi sempre tutta la password) senza passare dal decoder
+                while (pos < to && arr[pos] >= 0) {
+                    c[n++] = (char) arr[pos++];
+                }
+            }
+            while (pos < to) {
+                int b = at(pos++) & 0xFF;
+                if (b < 0x80) {
+                    c[n++] = (char) b;
+                } else if (b >= 0xC2 && b < 0xE0 && to - pos >= 1) {
+                    c[n++] = (char) (((b & 0x1F) << 6) | continuation());
+                } else if (b >= 0xE0 && b < 0xF0 && to - pos >= 2) {
+                    c[n++] = (char) (((b & 0x0F) << 12) | (continuation() << 6) | continuation());
+                } else if (b >= 0xF0 && b < 0xF5 && to - pos >= 3) {
+                    int cp = ((b & 0x07) << 18) | (continuation() << 12) | (continuation() << 6) | continuation();
+                    c[n++] = Character.highSurrogate(cp);
+                    c[n++] = Character.lowSurrogate(cp);
+                } else {
+                    throw new IOException("UTF-8 non valido nel payload binario");
+                }
+            }
+            if (n == len) {
+                return c;
+            }
+            char[] exact = Arrays.copyOf(c, n);
+            Arrays.fill(c, '\u0000');
+            return exact;
+        }
+
+        private int continuation() throws IOException {
+            int b = at(pos++);
+            if ((b & 0xC0) != 0x80) {
+                throw new IOException("UTF-8 non valido nel payload binario");
+            }
+            return b & 0x3F;
+        }
+
+        byte[] bytes() throws IOException {
+            int len = length();
+            if (len < 0) {
+                return null;
+            }
+            byte[] b = new byte[len];
+            if (arr != null) {
+                System.arraycopy(arr, pos, b, 0, len);
+            } else {
+                buf.get(pos, b);
+            }
+            pos += len;
+            return b;
+        }
+
+        void end() throws IOException {
+            if (pos != end) {
+                throw new IOException("Byte in eccesso dopo il payload binario: " + (end - pos));
+            }
+        }
+
+        private void need(int n) throws IOException {
+            if (end - pos < n) {
+                throw new IOException("Payload binario troncato");
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.etbasic.securityvault.core.codec;
+
+import com.etbasic.securityvault.core.model.VaultEntry;
+import com.etbasic.securityvault.core.model.VaultPayload;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+
+/**
+ * Codec JSON (Jackson databind), compatibile con i vault esistenti.
+ *
+ * Scrive JSON compatto: i vault salvati in precedenza erano indentati, ma in lettura
+ * gli spazi sono indifferenti, quindi il formato resta lo stesso.
+ */
+final class JsonPayloadCodec implements PayloadCodec {
+
+    // inizializzati al primo uso del codec: un vault binario non carica Jackson.
+    // Reader/writer immutabili: si costruiscono una volta e sono thread-safe
+    private static final class Json {
+        static final ObjectMapper mapper = new ObjectMapper();
+        static final ObjectWriter PAYLOAD_WRITER = mapper.writerFor(VaultPayload.class);
+        static final ObjectReader PAYLOAD_READER = mapper.readerFor(VaultPayload.class);
+        static final ObjectWriter ENTRY_WRITER = mapper.writerFor(VaultEntry.class);
+        static final ObjectReader ENTRY_READER = mapper.readerFor(VaultEntry.class);
+    }
+
+    @Override
+    public String name() {
+        return "json";
+    }
+
+    @Override
+    public byte[] encodePayload(VaultPayload payload) throws IOException {
+        return Json.PAYLOAD_WRITER.writeValueAsBytes(payload);
+    }
+
+    @Override
+    public VaultPayload decodePayload(byte[] data, int off, int len) throws IOException {
+        return Json.PAYLOAD_READER.readValue(data, off, len);
+    }
+
+    @Override
+    public byte[] encodeEntry(VaultEntry entry) throws IOException {
+        return Json.ENTRY_WRITER.writeValueAsBytes(entry);
+    }
+
+    @Override
+    public VaultEntry decodeEntry(byte[] data, int off, int len) throws IOException {
+        return Json.ENTRY_READER.readValue(data, off, len);
+    }
+}
@@ -0,0 +1,70 @@
+package com.etbasic.securityvault.core.codec;
+
+import com.etbasic.securityvault.core.model.VaultEntry;
+import com.etbasic.securityvault.core.model.VaultPayload;
+import com.etbasic.securityvault.core.secret.SecretBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Formato del plaintext cifrato nel vault: come payload ed entry diventano byte e viceversa.
+ *
+ * Il codec di un vault è scritto nell'header (campo payloadCodec, vedi {@link PayloadCodecs#forName}),
+ * quindi entra nell'AAD: non si può far decodificare un payload con un codec diverso da quello scelto.
+ *
+ * Nel layout SNAPSHOT si usa {@link #encodePayload}; nel layout LOG ogni record contiene una sola
+ * entry ({@link #encodeEntry}). Le implementazioni devono essere thread-safe.
+ *
+ * Codec aggiuntivi si registrano come servizi ({@code META-INF/services/...PayloadCodec}).
+ */
+public interface PayloadCodec {
+
+    /**
+     * Nome scritto nell'header; deve restare stabile finché esistono vault in questo formato.
+     */
+    String name();
+
+    byte[] encodePayload(VaultPayload payload) throws IOException;
+
+    /**
+     * @throws IOException se i byte non sono nel formato atteso
+     */
+    VaultPayload decodePayload(byte[] data, int off, int len) throws IOException;
+
+    /**
+     * Come {@link #encodePayload} ma in un {@link SecretBuffer} (fuori dallo heap) che il chiamante chiude.
+     * L'implementazione di default passa da un array su heap, azzerato subito dopo la copia.
+     */
+    default SecretBuffer encodePayloadSecret(VaultPayload payload) throws IOException {
+        byte[] plain = encodePayload(payload);
+        try {
+            return SecretBuffer.copyOf(plain);
+        } finally {
+            Arrays.fill(plain, (byte) 0);
+        }
+    }
+
+    /**
+     * Come {@link #decodePayload(byte[], int, int)} sui byte tra posizione e limite di {@code data}
+     * (su heap o diretto, es. {@link SecretBuffer#contents()}); posizione e limite non cambiano.
+     * L'implementazione di default copia un buffer diretto su heap e azzera la copia dopo la decodifica.
+     */
+    default VaultPayload decodePayload(ByteBuffer data) throws IOException {
+        if (data.hasArray()) {
+            return decodePayload(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        }
+        byte[] plain = new byte[data.remaining()];
+        data.get(data.position(), plain);
+        try {
+            return decodePayload(plain, 0, plain.length);
+        } finally {
+            Arrays.fill(plain, (byte) 0);
+        }
+    }
+
+    byte[] encodeEntry(VaultEntry entry) throws IOException;
+
+    VaultEntry decodeEntry(byte[] data, int off, int len) throws IOException;
+}
@@ -0,0 +1,65 @@
+package com.etbasic.securityvault.core.codec;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro dei {@link PayloadCodec}: quelli inclusi più quelli trovati con {@link ServiceLoader}.
+ */
+public final class PayloadCodecs {
+
+    /**
+     * JSON: il formato di tutti i vault scritti prima del campo payloadCodec.
+     */
+    public static final PayloadCodec JSON = new JsonPayloadCodec();
+
+    /**
+     * Binario compatto, usato per i nuovi vault.
+     */
+    public static final PayloadCodec BINARY = new BinaryPayloadCodec();
+
+    private static final Map<String, PayloadCodec> CODECS = new ConcurrentHashMap<>();
+
+    static {
+        register(JSON);
+        register(BINARY);
+        for (PayloadCodec codec : ServiceLoader.load(PayloadCodec.class)) {
+            register(codec);
+        }
+    }
+
+    private PayloadCodecs() {
+        // utility class, no instances
+    }
+
+    /**
+     * Registra un codec a runtime (in alternativa a META-INF/services).
+     *
+     * @throws IllegalArgumentException se il nome è già usato da un altro codec
+     */
+    public static void register(PayloadCodec codec) {
+        String key = codec.name().toLowerCase(Locale.ROOT);
+        PayloadCodec previous = CODECS.putIfAbsent(key, codec);
+        if (previous != null && previous != codec) {
+            throw new IllegalArgumentException("Payload codec già registrato: " + codec.name());
+        }
+    }
+
+    /**
+     * Valore dell'header -> codec. {@code null} (header scritti prima del campo) = JSON.
+     *
+     * @throws IllegalArgumentException se il codec non è registrato
+     */
+    public static PayloadCodec forName(String name) {
+        if (name == null) {
+            return JSON;
+        }
+        PayloadCodec codec = CODECS.get(name.toLowerCase(Locale.ROOT));
+        if (codec == null) {
+            throw new IllegalArgumentException("Payload codec sconosciuto: " + name);
+        }
+        return codec;
+    }
+}
@@ -0,0 +1,145 @@
+package com.etbasic.securityvault.core.compress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Stadio di compressione tra codec e cifratura: risolve il campo compression dell'header
+ * e incornicia il plaintext in un frame che dice se è stato compresso davvero.
+ *
+ * Frame = metodo (1 byte: 0 = non compresso, 1 = compresso) || lunghezza originale (4 byte BE) || dati
+ *
+ * Il frame sta dentro il ciphertext, quindi è autenticato dal tag GCM; il nome del compressore
+ * sta nell'header, quindi entra nell'AAD (VaultHeaderCodec.aadOf).
+ */
+public final class Compressions {
+
+    /**
+     * Sotto questa dimensione il payload non viene compresso (il guadagno non ripaga il costo).
+     */
+    public static final int MIN_COMPRESS_SIZE = 1024;
+
+    static final String LZ_NAME = "lz";
+    static final String DEFLATE_PREFIX = "deflate-";
+
+    /**
+     * LZ veloce implementato qui (vedi LzCompressor).
+     */
+    public static final Compressor LZ = new LzCompressor();
+
+    private static final Compressor[] DEFLATE = new Compressor[10];
+
+    private static final byte METHOD_STORED = 0;
+    private static final byte METHOD_COMPRESSED = 1;
+    private static final int FRAME_HEADER_BYTES = 5;
+
+    static {
+        for (int level = 1; level <= 9; level++) {
+            DEFLATE[level] = new DeflateCompressor(level);
+        }
+    }
+
+    private Compressions() {
+        // utility class, no instances
+    }
+
+    /**
+     * @param level da 1 (più veloce) a 9 (più compatto)
+     */
+    public static Compressor deflate(int level) {
+        if (level < 1 || level > 9) {
+            throw new IllegalArgumentException("Deflate level must be between 1 and 9");
+        }
+        return DEFLATE[level];
+    }
+
+    /**
+     * Valore dell'header -> compressore. {@code null} = nessuna compressione (e nessun frame).
+     *
+     * @throws IllegalArgumentException se il nome non è riconosciuto
+     */
+    public static Compressor forName(String name) {
+        if (name == null) {
+            return null;
+        }
+        String n = name.toLowerCase(Locale.ROOT);
+        if (n.equals(LZ_NAME)) {
+            return LZ;
+        }
+        if (n.startsWith(DEFLATE_PREFIX)) {
+            try {
+                return deflate(Integer.parseInt(n.substring(DEFLATE_PREFIX.length())));
+            } catch (IllegalArgumentException e) {
+                // cade nell'errore sotto
+            }
+        }
+        throw new IllegalArgumentException("Compressione sconosciuta: " + name);
+    }
+
+    /**
+     * Comprime {@code plain} in un frame. Se il payload è sotto {@link #MIN_COMPRESS_SIZE}
+     * o la compressione non lo riduce, il frame contiene i dati così come sono.
+     * Il chiamante resta responsabile di azzerare {@code plain}.
+     */
+    public static byte[] pack(Compressor compressor, byte[] plain) {
+        byte[] compressed = null;
+        if (plain.length >= MIN_COMPRESS_SIZE) {
+            compressed = compressor.compress(plain, 0, plain.length);
+            if (compressed.length >= plain.length) {
+                Arrays.fill(compressed, (byte) 0);
+                compressed = null;
+            }
+        }
+        byte[] data = (compressed != null) ? compressed : plain;
+        byte[] frame = ByteBuffer.allocate(FRAME_HEADER_BYTES + data.length)
+                .order(ByteOrder.BIG_ENDIAN)
+                .put(compressed != null ? METHOD_COMPRESSED : METHOD_STORED)
+                .putInt(plain.length)
+                .put(data)
+                .array();
+        if (compressed != null) {
+            Arrays.fill(compressed, (byte) 0);
+        }
+        return frame;
+    }
+
+    /**
+     * Inverso di {@link #pack}. Il chiamante resta responsabile di azzerare {@code frame}.
+     *
+     * @throws IOException se il frame è malformato
+     */
+    public static byte[] unpack(Compressor compressor, byte[] frame) throws IOException {
+        if (frame.length < FRAME_HEADER_BYTES) {
+            throw new IOException("Frame di compressione troppo corto");
+        }
+        ByteBuffer bb = ByteBuffer.wrap(frame).order(ByteOrder.BIG_ENDIAN);
+        byte method = bb.get();
+        int originalLen = bb.getInt();
+        int dataLen = frame.length - FRAME_HEADER_BYTES;
+        if (originalLen < 0) {
+            throw new IOException("Lunghezza originale non valida: " + originalLen);
+        }
+        switch (method) {
+            case METHOD_STORED:
+                if (originalLen != dataLen) {
+                    throw new IOException("Frame non compresso con lunghezza incoerente");
+                }
+                return Arrays.copyOfRange(frame, FRAME_HEADER_BYTES, frame.length);
+            case METHOD_COMPRESSED: {
+                byte[] out = new byte[originalLen];
+                try {
+                    compressor.decompress(frame, FRAME_HEADER_BYTES, dataLen, out, 0, originalLen);
+                } catch (IOException | RuntimeException e) {
+                    Arrays.fill(out, (byte) 0);
+                    throw e;
+                }
+                return out;
+            }
+            default:
+                throw new IOException("Metodo di compressione sconosciuto: " + method);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.etbasic.securityvault.core.compress;
+
+import java.io.IOException;
+
+/**
+ * Compressione a blocchi del plaintext, applicata prima della cifratura (vedi {@link Compressions}).
+ * Le implementazioni devono essere thread-safe.
+ */
+public interface Compressor {
+
+    /**
+     * Nome scritto nell'header del vault (campo compression).
+     */
+    String name();
+
+    /**
+     * @return i dati compressi, in un array nuovo della dimensione esatta
+     */
+    byte[] compress(byte[] in, int off, int len);
+
+    /**
+     * Decomprime esattamente {@code outLen} byte in {@code out[outOff..]}.
+     *
+     * @throws IOException se i dati compressi sono malformati o non producono esattamente {@code outLen} byte
+     */
+    void decompress(byte[] in, int off, int len, byte[] out, int outOff, int outLen) throws IOException;
+}
@@ -0,0 +1,95 @@
+package com.etbasic.securityvault.core.compress;
+
+import com.etbasic.securityvault.core.pool.InstancePool;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate (java.util.zip) senza wrapper zlib: lunghezza e integrità sono già garantite
+ * dal frame di {@link Compressions} e dal tag GCM.
+ *
+ * Deflater/Inflater sono riusati tramite un {@link InstancePool} (come i Cipher in AesGcmCipher):
+ * allocarli a ogni chiamata costa più della compressione di un payload piccolo. Quelli in eccesso
+ * rispetto al pool vengono chiusi subito con end(), senza attendere il GC per la memoria nativa.
+ */
+final class DeflateCompressor implements Compressor {
+
+    private static final InstancePool<Inflater> INFLATERS = new InstancePool<>(
+            2 * Runtime.getRuntime().availableProcessors(), () -> new Inflater(true), Inflater::end);
+
+    private final int level;
+    private final InstancePool<Deflater> deflaters;
+
+    DeflateCompressor(int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Deflate level must be between 1 and 9");
+        }
+        this.level = level;
+        this.deflaters = new InstancePool<>(
+                2 * Runtime.getRuntime().availableProcessors(), () -> new Deflater(level, true), Deflater::end);
+    }
+
+    @Override
+    public String name() {
+        return Compressions.DEFLATE_PREFIX + level;
+    }
+
+    @Override
+    public byte[] compress(byte[] in, int off, int len) {
+        Deflater deflater = deflaters.acquire();
+        try {
+            deflater.reset();
+            deflater.setInput(in, off, len);
+            deflater.finish();
+
+            // limite superiore di zlib per deflate raw; se non basta si raddoppia
+            byte[] buf = new byte[len + (len >> 12) + (len >> 14) + (len >> 25) + 16];
+            int n = 0;
+            while (!deflater.finished()) {
+                if (n == buf.length) {
+                    byte[] bigger = Arrays.copyOf(buf, buf.length * 2);
+                    Arrays.fill(buf, (byte) 0);
+                    buf = bigger;
+                }
+                n += deflater.deflate(buf, n, buf.length - n);
+            }
+
+            byte[] out = Arrays.copyOf(buf, n);
+            Arrays.fill(buf, (byte) 0);
+            return out;
+        } finally {
+            deflater.reset();
+            deflaters.release(deflater);
+        }
+    }
+
+    @Override
+    public void decompress(byte[] in, int off, int len, byte[] out, int outOff, int outLen) throws IOException {
+        Inflater inflater = INFLATERS.acquire();
+        inflater.reset();
+        try {
+            inflater.setInput(in, off, len);
+            int n = 0;
+            while (!inflater.finished()) {
+                int r = inflater.inflate(out, outOff + n, outLen - n);
+                n += r;
+                // nessun progresso: output pieno prima della fine dello stream, o input esaurito
+                if (r == 0 && (n == outLen || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+            }
+            if (n != outLen || !inflater.finished() || inflater.getRemaining() != 0) {
+                throw new IOException("Dati deflate non validi: lunghezza inattesa");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Dati deflate non validi", e);
+        } finally {
+            inflater.reset();
+            INFLATERS.release(inflater);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.etbasic.securityvault.core.kdf;
+
+import com.etbasic.securityvault.core.pool.InstancePool;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+/**
+ * HKDF-SHA256 (RFC 5869).
+ *
+ * Non sostituisce PBKDF2: serve a ricavare più chiavi indipendenti da un unico
+ * segreto già "forte" (es. l'output di PBKDF2), cambiando solo il parametro {@code info}.
+ *
+ * extract: PRK = HMAC(salt, IKM)
+ * expand:  T(i) = HMAC(PRK, T(i-1) || info || i), output = T(1) || T(2) || ...
+ */
+public final class HKDF {
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int HASH_LEN = 32;
+
+    // Mac riusati (non thread-safe: uno per chiamata fino al rilascio), re-inizializzati con la chiave a ogni uso
+    private static final InstancePool<Mac> MACS = new InstancePool<>(() -> {
+        try {
+            return Mac.getInstance(MAC_ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(MAC_ALGORITHM + " not available", e);
+        }
+    });
+
+    private HKDF() {
+        // utility class, no instances
+    }
+
+    /**
+     * Fase extract: concentra l'entropia di {@code ikm} in una PRK di 32 byte.
+     *
+     * @param salt salt opzionale ({@code null} = 32 byte a zero, come da RFC)
+     * @param ikm  materiale di partenza
+     */
+    public static byte[] extract(byte[] salt, byte[] ikm) {
+        if (ikm == null) {
+            throw new IllegalArgumentException("IKM must not be null");
+        }
+        byte[] s = (salt == null || salt.length == 0) ? new byte[HASH_LEN] : salt;
+        Mac mac = MACS.acquire();
+        try {
+            mac.init(new SecretKeySpec(s, MAC_ALGORITHM));
+            return mac.doFinal(ikm);
+        } catch (Exception e) {
+            throw new RuntimeException("HKDF extract failed", e);
+        } finally {
+            MACS.release(mac);
+        }
+    }
+
+    /**
+     * Fase expand: ricava {@code length} byte legati all'etichetta {@code info}.
+     * Se {@code prk} è già uniformemente casuale (es. output di PBKDF2) la fase extract può essere saltata.
+     *
+     * @param prk    chiave pseudo-casuale (almeno 16 byte)
+     * @param info   etichetta di contesto, rende indipendenti le chiavi derivate
+     * @param length byte richiesti (max 255 * 32)
+     */
+    public static byte[] expand(byte[] prk, String info, int length) {
+        if (prk == null || prk.length < 16) {
+            throw new IllegalArgumentException("PRK must be at least 16 bytes");
+        }
+        if (length <= 0 || length > 255 * HASH_LEN) {
+            throw new IllegalArgumentException("Invalid HKDF output length: " + length);
+        }
+        byte[] infoBytes = (info == null) ? new byte[0] : info.getBytes(StandardCharsets.UTF_8);
+
+        byte[] out = new byte[length];
+        byte[] t = new byte[0];
+        Mac mac = MACS.acquire();
+        try {
+            mac.init(new SecretKeySpec(prk, MAC_ALGORITHM));
+            int pos = 0;
+            for (int i = 1; pos < length; i++) {
+                mac.update(t);
+                mac.update(infoBytes);
+                mac.update((byte) i);
+                Arrays.fill(t, (byte) 0);
+                t = mac.doFinal();
+                int n = Math.min(t.length, length - pos);
+                System.arraycopy(t, 0, out, pos, n);
+                pos += n;
+            }
+            return out;
+        } catch (Exception e) {
+            Arrays.fill(out, (byte) 0);
+            throw new RuntimeException("HKDF expand failed", e);
+        } finally {
+            Arrays.fill(t, (byte) 0);
+            MACS.release(mac);
+        }
+    }
+}
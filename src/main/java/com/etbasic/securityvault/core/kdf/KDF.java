@@ -1,7 +1,12 @@
 package com.etbasic.securityvault.core.kdf;
 
+import java.util.Arrays;
+
 /**
  * Interfaccia per funzioni di derivazione di chiave (KDF).
+ *
+ * Le password arrivano come char[], che il chiamante può azzerare dopo l'uso; le varianti con String
+ * restano per comodità, ma una String non si può cancellare e resta nello heap finché il GC non la raccoglie.
  */
 public interface KDF {
 
@@ -12,7 +17,7 @@ public interface KDF {
      * @param password la password in chiaro da derivare
      * @return una stringa contenente il salt e l'hash, per la memorizzazione nel DB
      */
-    String hashPassword(String password);
+    String hashPassword(char[] password);
 
     /**
      * Verifica se la password fornita corrisponde all'hash memorizzato.
@@ -21,7 +26,7 @@ public interface KDF {
      * @param inputPassword la password fornita dall'utente per il login
      * @return true se la password è corretta
      */
-    boolean validatePassword(String storedHash, String inputPassword);
+    boolean validatePassword(String storedHash, char[] inputPassword);
 
     /**
      * Crea la chiave derivata da utilizzare per cifrare i dati con AES.
@@ -30,5 +35,42 @@ public interface KDF {
      * @param salt     il salt utilizzato per quella password
      * @return la chiave derivata (byte[])
      */
-    byte[] deriveKey(String password, byte[] salt);
+    byte[] deriveKey(char[] password, byte[] salt);
+
+    default String hashPassword(String password) {
+        char[] chars = toChars(password);
+        try {
+            return hashPassword(chars);
+        } finally {
+            wipe(chars);
+        }
+    }
+
+    default boolean validatePassword(String storedHash, String inputPassword) {
+        char[] chars = toChars(inputPassword);
+        try {
+            return validatePassword(storedHash, chars);
+        } finally {
+            wipe(chars);
+        }
+    }
+
+    default byte[] deriveKey(String password, byte[] salt) {
+        char[] chars = toChars(password);
+        try {
+            return deriveKey(chars, salt);
+        } finally {
+            wipe(chars);
+        }
+    }
+
+    private static char[] toChars(String s) {
+        return (s != null) ? s.toCharArray() : null;
+    }
+
+    private static void wipe(char[] chars) {
+        if (chars != null) {
+            Arrays.fill(chars, '\u0000');
+        }
+    }
 }
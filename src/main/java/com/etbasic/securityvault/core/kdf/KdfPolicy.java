@@ -0,0 +1,106 @@
+package com.etbasic.securityvault.core.kdf;
+
+/**
+ * Costo della KDF adattato alla macchina: le iterazioni PBKDF2 dei nuovi header sono calibrate perché
+ * uno sblocco richieda circa {@code targetMillis}, entro un minimo e un massimo di policy.
+ *
+ * Le iterazioni scelte finiscono nell'header del vault (encIterations), quindi lo sblocco su un'altra
+ * macchina usa sempre quelle del vault. Un vault sotto il minimo viene aggiornato al primo sblocco riuscito
+ * (vedi {@code VaultSession.unlockAndUpgrade}).
+ *
+ * La calibrazione costa qualche centinaio di millisecondi (prove raddoppiate fino ad almeno 50 ms,
+ * poi altre tre ripetizioni dell'ultima) e si esegue una volta per istanza, al primo {@link #iterations()}:
+ * il risultato resta in memoria, quindi con {@link #DEFAULT} una volta per processo. La policy è thread-safe.
+ */
+public final class KdfPolicy {
+
+    public static final int DEFAULT_TARGET_MILLIS = 500;
+
+    // sotto questo valore un vault viene aggiornato anche su una macchina lenta
+    public static final int DEFAULT_MIN_ITERATIONS = 100_000;
+
+    // limite alle misure anomale (es. timer grossolano): uno sblocco resta sotto qualche secondo
+    public static final int DEFAULT_MAX_ITERATIONS = 10_000_000;
+
+    public static final KdfPolicy DEFAULT =
+            new KdfPolicy(DEFAULT_TARGET_MILLIS, DEFAULT_MIN_ITERATIONS, DEFAULT_MAX_ITERATIONS);
+
+    // una misura più breve è dominata da JIT e risoluzione del timer
+    private static final long PROBE_MIN_NANOS = 50_000_000L;
+    private static final int PROBE_START_ITERATIONS = 1 << 12;
+    private static final int PROBE_MAX_ITERATIONS = 1 << 24;
+    private static final int PROBE_REPEATS = 3;
+    private static final int ROUNDING = 1000;
+
+    private final int targetMillis;
+    private final int minIterations;
+    private final int maxIterations;
+
+    // 0 = non ancora calibrata (corsa innocua: due thread misurano entrambi e scrivono un valore valido)
+    private volatile int calibrated;
+
+    /**
+     * @param targetMillis  durata desiderata di una derivazione (uno sblocco) su questa macchina
+     * @param minIterations minimo di policy, usato anche se la macchina è più lenta del previsto
+     * @param maxIterations massimo, usato anche se la macchina è più veloce
+     */
+    public KdfPolicy(int targetMillis, int minIterations, int maxIterations) {
+        if (targetMillis < 1) {
+            throw new IllegalArgumentException("targetMillis must be positive");
+        }
+        if (minIterations < 1 || maxIterations < minIterations) {
+            throw new IllegalArgumentException("iterations range not valid: " + minIterations + ".." + maxIterations);
+        }
+        this.targetMillis = targetMillis;
+        this.minIterations = minIterations;
+        this.maxIterations = maxIterations;
+    }
+
+    public int getTargetMillis() { return targetMillis; }
+
+    public int getMinIterations() { return minIterations; }
+
+    public int getMaxIterations() { return maxIterations; }
+
+    /**
+     * Iterazioni per i nuovi header: {@code targetMillis} di PBKDF2 su questa macchina, arrotondate
+     * al migliaio e limitate a [minIterations, maxIterations]. Misurate alla prima chiamata.
+     */
+    public int iterations() {
+        int n = calibrated;
+        if (n == 0) {
+            n = clamp(Math.round(iterationsPerMilli() * targetMillis / ROUNDING) * ROUNDING);
+            calibrated = n;
+        }
+        return n;
+    }
+
+    /**
+     * True se un header con {@code encIterations} iterazioni è sotto il minimo di policy.
+     */
+    public boolean needsUpgrade(int encIterations) {
+        return encIterations < minIterations;
+    }
+
+    private int clamp(long iterations) {
+        return (int) Math.max(minIterations, Math.min(maxIterations, iterations));
+    }
+
+    /**
+     * Raddoppia le iterazioni finché una derivazione dura almeno {@link #PROBE_MIN_NANOS} (le prove
+     * più corte scaldano anche il JIT), poi ripete l'ultima e tiene la più veloce: a JVM appena avviata
+     * le prime misure sottostimano la velocità a regime.
+     */
+    private static double iterationsPerMilli() {
+        int probe = PROBE_START_ITERATIONS;
+        long nanos = PBKDF2.timeNanos(probe);
+        while (nanos < PROBE_MIN_NANOS && probe < PROBE_MAX_ITERATIONS) {
+            probe <<= 1;
+            nanos = PBKDF2.timeNanos(probe);
+        }
+        for (int i = 0; i < PROBE_REPEATS; i++) {
+            nanos = Math.min(nanos, PBKDF2.timeNanos(probe));
+        }
+        return probe * 1_000_000.0 / Math.max(nanos, 1);
+    }
+}
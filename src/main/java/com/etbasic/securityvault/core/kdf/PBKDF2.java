@@ -1,7 +1,13 @@
 package com.etbasic.securityvault.core.kdf;
 
+import com.etbasic.securityvault.core.metrics.KdfEvent;
+import com.etbasic.securityvault.core.metrics.Stage;
+import com.etbasic.securityvault.core.metrics.VaultMetrics;
+import com.etbasic.securityvault.core.pool.InstancePool;
+
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
 import java.util.Arrays;
 import java.util.Base64;
@@ -22,6 +28,19 @@ public class PBKDF2 implements KDF {
     private static final int SALT_LENGTH_BYTES = 16;
     private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
 
+    /**
+     * SecretKeyFactory riusate: evitano il lookup del provider a ogni hash/validate/derive.
+     * SecretKeyFactory non garantisce la thread-safety, quindi un'istanza presa dal pool resta a un
+     * solo thread fino al rilascio (pool condiviso e non ThreadLocal, vedi {@link InstancePool}).
+     */
+    private static final InstancePool<SecretKeyFactory> FACTORIES = new InstancePool<>(() -> {
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " not available", e);
+        }
+    });
+
     private final int iterationCount;
     private final int keyLength; // in bit
     private final SecureRandom secureRandom;
@@ -30,6 +49,9 @@ public class PBKDF2 implements KDF {
      * Costruttore di default:
      * iterationCount = 65536
      * keyLength      = 256
+     *
+     * Resta fisso perché verifica gli auth hash degli header v1; per i nuovi vault le iterazioni
+     * vengono da {@link KdfPolicy}.
      */
     public PBKDF2() {
         this(65536, 256);
@@ -48,7 +70,7 @@ public class PBKDF2 implements KDF {
     }
 
     @Override
-    public String hashPassword(String password) {
+    public String hashPassword(char[] password) {
         if (password == null) {
             throw new IllegalArgumentException("Password must not be null");
         }
@@ -58,14 +80,8 @@ public class PBKDF2 implements KDF {
         secureRandom.nextBytes(salt);
 
         try {
-            // Costruisce la specifica per PBKDF2
-            PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterationCount, keyLength);
-
-            // Sceglie l'algoritmo PBKDF2 con HMAC-SHA256
-            SecretKeyFactory factory = SecretKeyFactory.getInstance(ALGORITHM);
-
-            // encoded restituisce l’array di byte della chiave derivata
-            byte[] hash = factory.generateSecret(spec).getEncoded();
+            // PBKDF2 con HMAC-SHA256: encoded restituisce l’array di byte della chiave derivata
+            byte[] hash = pbkdf2(password, salt, Stage.KDF_HASH);
 
             // Concatena salt + hash in un unico array
             byte[] saltPlusHash = new byte[salt.length + hash.length];
@@ -80,7 +96,7 @@ public class PBKDF2 implements KDF {
     }
 
     @Override
-    public boolean validatePassword(String storedHash, String inputPassword) {
+    public boolean validatePassword(String storedHash, char[] inputPassword) {
         if (storedHash == null || inputPassword == null) {
             return false;
         }
@@ -99,9 +115,7 @@ public class PBKDF2 implements KDF {
             byte[] originalHash = Arrays.copyOfRange(decoded, SALT_LENGTH_BYTES, decoded.length);
 
             // Ricalcola PBKDF2 con la password fornita
-            PBEKeySpec spec = new PBEKeySpec(inputPassword.toCharArray(), salt, iterationCount, keyLength);
-            SecretKeyFactory factory = SecretKeyFactory.getInstance(ALGORITHM);
-            byte[] newHash = factory.generateSecret(spec).getEncoded();
+            byte[] newHash = pbkdf2(inputPassword, salt, Stage.KDF_VALIDATE);
 
             // Confronta gli hash
             return Arrays.equals(originalHash, newHash);
@@ -112,17 +126,63 @@ public class PBKDF2 implements KDF {
     }
 
     @Override
-    public byte[] deriveKey(String password, byte[] salt) {
+    public byte[] deriveKey(char[] password, byte[] salt) {
         if (password == null || salt == null) {
             throw new IllegalArgumentException("Password and salt must not be null");
         }
 
         try {
-            PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterationCount, keyLength);
-            SecretKeyFactory factory = SecretKeyFactory.getInstance(ALGORITHM);
-            return factory.generateSecret(spec).getEncoded();
+            return pbkdf2(password, salt, Stage.KDF_DERIVE);
         } catch (Exception e) {
             throw new RuntimeException("Error while deriving key", e);
         }
     }
+
+    /**
+     * Durata di una derivazione a 256 bit con {@code iterationCount} iterazioni, per la calibrazione
+     * di {@link KdfPolicy}. Non passa da {@link VaultMetrics}: le prove non sono sblocchi.
+     */
+    static long timeNanos(int iterationCount) {
+        char[] password = {'c', 'a', 'l', 'i', 'b', 'r', 'a', 't', 'e'};
+        PBEKeySpec spec = new PBEKeySpec(password, new byte[SALT_LENGTH_BYTES], iterationCount, 256);
+        SecretKeyFactory factory = FACTORIES.acquire();
+        try {
+            long start = System.nanoTime();
+            factory.generateSecret(spec);
+            return System.nanoTime() - start;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " calibration failed", e);
+        } finally {
+            FACTORIES.release(factory);
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * PBKDF2(password, salt) con una factory del pool.
+     * La copia interna di PBEKeySpec viene azzerata subito dopo l'uso; l'array del chiamante no.
+     * Tempo e parametri finiscono in {@link VaultMetrics} e nell'evento JFR {@link KdfEvent}.
+     */
+    private byte[] pbkdf2(char[] password, byte[] salt, Stage stage) throws GeneralSecurityException {
+        KdfEvent event = new KdfEvent();
+        event.begin();
+        long start = VaultMetrics.start();
+        PBEKeySpec spec = new PBEKeySpec(password, salt, iterationCount, keyLength);
+        SecretKeyFactory factory = FACTORIES.acquire();
+        try {
+            byte[] key = factory.generateSecret(spec).getEncoded();
+            VaultMetrics.stop(stage, start);
+            if (event.shouldCommit()) {
+                event.operation = stage.name();
+                event.algorithm = ALGORITHM;
+                event.iterations = iterationCount;
+                event.keyBits = keyLength;
+                event.commit();
+            }
+            return key;
+        } finally {
+            FACTORIES.release(factory);
+            spec.clearPassword();
+        }
+    }
 }
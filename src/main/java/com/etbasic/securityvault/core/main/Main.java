@@ -1,46 +1,75 @@
 package com.etbasic.securityvault.core.main;
 
-import com.etbasic.securityvault.core.cipher.AesGcmCipher;
-import com.etbasic.securityvault.core.kdf.PBKDF2;
+import com.etbasic.securityvault.core.batch.BatchReport;
+import com.etbasic.securityvault.core.batch.BatchRunner;
+import com.etbasic.securityvault.core.batch.VaultJob;
+import com.etbasic.securityvault.core.batch.VaultJobs;
+import com.etbasic.securityvault.core.batch.VaultResult;
+import com.etbasic.securityvault.core.cli.BatchCli;
+import com.etbasic.securityvault.core.kdf.KdfPolicy;
+import com.etbasic.securityvault.core.metrics.VaultMetrics;
+import com.etbasic.securityvault.core.model.EntryIds;
+import com.etbasic.securityvault.core.model.VaultAttachment;
 import com.etbasic.securityvault.core.model.VaultEntry;
-import com.etbasic.securityvault.core.model.VaultHeader;
-import com.etbasic.securityvault.core.model.VaultHeaderCodec;
+import com.etbasic.securityvault.core.model.VaultLayout;
 import com.etbasic.securityvault.core.model.VaultPayload;
 import com.etbasic.securityvault.core.persistence.FileVaultStore;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import com.etbasic.securityvault.core.search.SearchHit;
+import com.etbasic.securityvault.core.session.InvalidPasswordException;
+import com.etbasic.securityvault.core.session.VaultSession;
+import com.etbasic.securityvault.core.session.VaultSessionCache;
+import com.etbasic.securityvault.core.transfer.EntryFormat;
+import com.etbasic.securityvault.core.transfer.EntrySink;
+import com.etbasic.securityvault.core.transfer.EntrySource;
+import com.etbasic.securityvault.core.transfer.ImportResult;
 
 import javax.crypto.AEADBadTagException;
 import java.io.BufferedReader;
 import java.io.Console;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
-import java.security.SecureRandom;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 public class Main {
 
-    // Json pretty-print con Jackson (equivalente a Json { prettyPrint = true; encodeDefaults = true })
-    private static final ObjectMapper objectMapper = new ObjectMapper()
-            .enable(SerializationFeature.INDENT_OUTPUT);
+    // Vault sbloccati: evitano di rieseguire la KDF a ogni operazione sullo stesso vault
+    private static final VaultSessionCache SESSIONS =
+            new VaultSessionCache(8, Duration.ofMinutes(5));
 
     // Per la lettura da stdin (equivalente a readLine())
     private static final BufferedReader STDIN_READER =
             new BufferedReader(new InputStreamReader(System.in));
 
     public static void main(String[] args) {
+        if (args.length > 0) {
+            // sottocomandi e modalità batch: nessun menu, solo risposte JSON su stdout
+            System.exit(BatchCli.run(args));
+        }
         // directory locale dove salvare i vault (per semplicità)
         File vaultDir = new File("vaults");
-        FileVaultStore store = new FileVaultStore(vaultDir);
+        // i vault grandi vengono mappati in memoria invece di essere copiati su heap;
+        // ogni salvataggio è durevole (file e rename) quando l'operazione ritorna
+        FileVaultStore store = new FileVaultStore(vaultDir, FileVaultStore.ReadMode.MAPPED,
+                FileVaultStore.Durability.FULL, true);
+        if (!store.getRecoveryReport().isEmpty()) {
+            System.out.println("Ripristino dopo un'interruzione: " + store.getRecoveryReport());
+        }
 
         System.out.println("Simple SecurityVault — demo CLI");
 
         boolean running = true;
         while (running) {
             System.out.println();
-            System.out.println("Scegli: (1) crea  (2) apri  (3) aggiungi  (4) cambia-pw  (5) cancella  (q) esci");
+            System.out.println("Scegli: (1) crea  (2) apri  (3) aggiungi  (4) cambia-pw  (5) cancella"
+                    + "  (6) allega  (7) estrai-allegato  (8) rimuovi  (9) cerca  (i) importa  (e) esporta  (b) batch  (m) metriche  (q) esci");
             String choice = readLineTrim();
             switch (choice) {
                 case "1":
@@ -58,6 +87,30 @@ public class Main {
                 case "5":
                     deleteFlow(store);
                     break;
+                case "6":
+                    attachFlow(store);
+                    break;
+                case "7":
+                    extractAttachmentFlow(store);
+                    break;
+                case "8":
+                    removeEntryFlow(store);
+                    break;
+                case "9":
+                    searchFlow(store);
+                    break;
+                case "i":
+                    importFlow(store);
+                    break;
+                case "e":
+                    exportFlow(store);
+                    break;
+                case "b":
+                    batchFlow(store, vaultDir);
+                    break;
+                case "m":
+                    metricsFlow();
+                    break;
                 case "q":
                 case "Q":
                     running = false;
@@ -66,9 +119,22 @@ public class Main {
                     System.out.println("scelta non valida");
             }
         }
+        SESSIONS.close(); // azzera le chiavi dei vault ancora aperti
         System.out.println("bye");
     }
 
+    // ---------- Metriche: latenze per fase (KDF, GCM, header, disco) ----------
+
+    private static void metricsFlow() {
+        if (!VaultMetrics.isEnabled()) {
+            // accese da qui in poi (oppure da subito con -Dsecurityvault.metrics=true)
+            VaultMetrics.setEnabled(true);
+            System.out.println("Metriche attivate: ripeti (m) dopo qualche operazione.");
+            return;
+        }
+        System.out.print(VaultMetrics.report());
+    }
+
     // ---------- utility per input password (Console se disponibile, altrimenti stdin) ----------
 
     private static char[] readPassword(String prompt) {
@@ -84,6 +150,15 @@ public class Main {
         }
     }
 
+    // stampa i caratteri così come sono, senza costruire una String con la password
+    private static void printPassword(char[] password) {
+        if (password == null) {
+            System.out.print("null");
+        } else {
+            System.out.print(password);
+        }
+    }
+
     private static String readLineTrim() {
         String line = readLine();
         return line == null ? "" : line.trim();
@@ -97,6 +172,55 @@ public class Main {
         }
     }
 
+    // ---------- Sessioni: sblocco con cache della chiave derivata ----------
+
+    /**
+     * Ritorna la sessione già sbloccata per il vault oppure chiede la master password e lo sblocca.
+     * Ritorna {@code null} (dopo aver stampato il motivo) se lo sblocco fallisce.
+     */
+    private static VaultSession unlockSession(FileVaultStore store, String filename, String prompt) {
+        VaultSession session = SESSIONS.get(filename);
+        if (session != null) {
+            try {
+                // un altro processo può aver modificato il vault: si ricarica senza rieseguire la KDF
+                if (session.refresh()) {
+                    System.out.println("(vault modificato altrove, ricaricato)");
+                }
+                System.out.println("(vault già sbloccato)");
+                return session;
+            } catch (Exception e) {
+                // password cambiata o vault cancellato altrove: serve un nuovo sblocco
+                SESSIONS.invalidate(filename);
+            }
+        }
+
+        char[] pwChars = readPassword(prompt);
+        try {
+            // un vault con poche iterazioni viene aggiornato al costo calibrato su questa macchina
+            session = VaultSession.unlockAndUpgrade(store, filename, pwChars, KdfPolicy.DEFAULT);
+            SESSIONS.put(session);
+            if (session.getDiscardedTailBytes() > 0) {
+                System.out.println("Attenzione: scartati " + session.getDiscardedTailBytes()
+                        + " byte non validi in coda al vault (interruzione durante un salvataggio, o file"
+                        + " troncato/alterato: l'ultima modifica potrebbe mancare)");
+            }
+            if (session.getKdfUpgradeFailure() != null) {
+                System.out.println("Attenzione: impossibile aggiornare le iterazioni della password ("
+                        + session.getKdfUpgradeFailure() + "); si riproverà al prossimo sblocco");
+            }
+            return session;
+        } catch (InvalidPasswordException e) {
+            System.out.println("Password errata");
+        } catch (AEADBadTagException e) {
+            System.out.println("Decrittazione fallita (chiave/AAD errata o dati corrotti).");
+        } catch (Exception e) {
+            System.out.println("Errore aprendo il vault: " + e.getMessage());
+        } finally {
+            Arrays.fill(pwChars, '\u0000');
+        }
+        return null;
+    }
+
     // ---------- Flusso: creare un nuovo vault ----------
 
     private static void createVaultFlow(FileVaultStore store) {
@@ -108,60 +232,20 @@ public class Main {
         }
 
         char[] pwChars = readPassword("Scegli una master password: ");
-        String pw = new String(pwChars);
-        Arrays.fill(pwChars, '\u0000'); // zeroizza il char[] originale per buona pratica
-
-        // parametri (didattici) — puoi adattarli alla policy della tua app
-        int encIterations = 65536;
-        int keyLenBytes = 32; // AES-256
-
-        // 1) stored auth hash (usato per verificare la password senza decifrare)
-        PBKDF2 authKdf = new PBKDF2(); // usa default (stesso usato in validatePassword)
-        String storedAuthHash = authKdf.hashPassword(pw);
-
-        // 2) enc salt e derivazione chiave
-        byte[] encSalt = new byte[16];
-        new SecureRandom().nextBytes(encSalt);
-        PBKDF2 encKdf = new PBKDF2(encIterations, keyLenBytes * 8);
-        byte[] encKey = encKdf.deriveKey(pw, encSalt);
-
-        // 3) crea header
-        VaultHeader header = new VaultHeader(
-                encSalt,
-                encIterations,
-                keyLenBytes,
-                storedAuthHash,
-                "sha256(header-json)"
-        );
-
-        // 4) plaintext iniziale (vuoto)
-        VaultPayload initialData = new VaultPayload();
-        byte[] plaintext;
-        try {
-            plaintext = objectMapper
-                    .writeValueAsString(initialData)
-                    .getBytes(StandardCharsets.UTF_8);
-        } catch (Exception e) {
-            System.out.println("Errore serializzazione iniziale: " + e.getMessage());
-            Arrays.fill(encKey, (byte) 0);
-            return;
-        }
 
-        // 5) AAD = sha256(header-json)
-        byte[] aad = VaultHeaderCodec.aadOf(header);
+        // iterazioni calibrate perché lo sblocco su questa macchina duri circa KdfPolicy.DEFAULT_TARGET_MILLIS
+        int encIterations = KdfPolicy.DEFAULT.iterations();
 
-        // 6) cifra e salva (atomicamente)
-        AesGcmCipher cipher = new AesGcmCipher();
-        byte[] blob = cipher.encrypt(encKey, plaintext, aad);
         try {
-            store.write(filename, header, blob);
-            System.out.println("Vault creato: " + store.exists(filename) + " (" + filename + ")");
+            // layout LOG: ogni aggiunta è un record in coda, senza riscrivere il vault
+            VaultSession session = VaultSession.create(store, filename, pwChars, encIterations, VaultLayout.LOG);
+            SESSIONS.put(session);
+            System.out.println("Vault creato: " + store.exists(filename) + " (" + filename + ", "
+                    + encIterations + " iterazioni PBKDF2)");
         } catch (Exception e) {
             System.out.println("Errore scrittura vault: " + e.getMessage());
         } finally {
-            // azzera key e plaintext in memoria
-            Arrays.fill(encKey, (byte) 0);
-            Arrays.fill(plaintext, (byte) 0);
+            Arrays.fill(pwChars, '\u0000'); // zeroizza il char[] originale per buona pratica
         }
     }
 
@@ -175,52 +259,183 @@ public class Main {
             return;
         }
 
-        char[] pwChars = readPassword("Inserisci la master password: ");
-        String pw = new String(pwChars);
-        Arrays.fill(pwChars, '\u0000');
-
-        try {
-            var vf = store.read(filename);
-            VaultHeader header = vf.getHeader();
+        VaultSession session = unlockSession(store, filename, "Inserisci la master password: ");
+        if (session == null) {
+            return;
+        }
 
-            // verifica password (auth)
-            PBKDF2 authKdf = new PBKDF2();
-            if (!authKdf.validatePassword(header.getStoredAuthHash(), pw)) {
-                System.out.println("Password errata");
-                return;
+        VaultPayload vaultData = session.getPayload();
+        System.out.println("=== Entries (" + vaultData.size() + ") ===");
+        int i = 0;
+        for (VaultEntry e : vaultData.getEntries()) {
+            i++;
+            String notes = (e.getNotes() != null) ? e.getNotes() : "-";
+            System.out.print(i + ") " + e.getTitle() + "  [" + e.getUsername() + "] -> ");
+            printPassword(e.getPassword());
+            System.out.println("  notes:" + notes);
+            if (e.getAttachments() != null) {
+                for (VaultAttachment a : e.getAttachments()) {
+                    System.out.println("     allegato: " + a.getName() + " (" + a.getSize() + " byte)");
+                }
             }
+        }
+    }
+
+    // ---------- Flusso: cercare tra le entry (indice in sessione) ----------
+
+    private static void searchFlow(FileVaultStore store) {
+        System.out.print("Vault filename: ");
+        String filename = readLineTrim();
+        if (!store.exists(filename)) {
+            System.out.println("File non trovato");
+            return;
+        }
+
+        VaultSession session = unlockSession(store, filename, "Inserisci master password: ");
+        if (session == null) {
+            return;
+        }
+
+        System.out.print("Cerca: ");
+        String query = readLineTrim();
+        List<SearchHit> hits = session.search(query, 20);
+        System.out.println("=== Risultati (" + hits.size() + ") ===");
+        for (int i = 0; i < hits.size(); i++) {
+            VaultEntry e = hits.get(i).getEntry();
+            System.out.print((i + 1) + ") " + e.getTitle() + "  [" + e.getUsername() + "] -> ");
+            printPassword(e.getPassword());
+            System.out.println(String.format("  (%.2f)", hits.get(i).getScore()));
+        }
+    }
+
+    // ---------- Flusso: import/export di massa (CSV o JSON) ----------
+
+    private static void importFlow(FileVaultStore store) {
+        System.out.print("Vault filename: ");
+        String filename = readLineTrim();
+        if (!store.exists(filename)) {
+            System.out.println("File non trovato");
+            return;
+        }
+
+        VaultSession session = unlockSession(store, filename, "Inserisci master password: ");
+        if (session == null) {
+            return;
+        }
+
+        System.out.print("File da importare (.csv o .json): ");
+        Path source = Path.of(readLineTrim());
+        if (!Files.isRegularFile(source)) {
+            System.out.println("File non trovato");
+            return;
+        }
+
+        try (EntrySource in = EntryFormat.fromFileName(source.toString()).open(Files.newInputStream(source))) {
+            // una sola cifratura e scrittura del vault per tutto il file
+            ImportResult r = session.importEntries(in);
+            System.out.println("Importate " + r.getImported() + " entry (" + r.getDuplicates() + " duplicati ignorati).");
+        } catch (Exception e) {
+            System.out.println("Errore import: " + e.getMessage());
+        }
+    }
+
+    private static void exportFlow(FileVaultStore store) {
+        System.out.print("Vault filename: ");
+        String filename = readLineTrim();
+        if (!store.exists(filename)) {
+            System.out.println("File non trovato");
+            return;
+        }
 
-            PBKDF2 encKdf = new PBKDF2(header.getEncIterations(), header.getKeyLenBytes() * 8);
-            byte[] encKey = encKdf.deriveKey(pw, header.getEncSalt());
-            byte[] aad = VaultHeaderCodec.aadOf(header);
+        VaultSession session = unlockSession(store, filename, "Inserisci master password: ");
+        if (session == null) {
+            return;
+        }
+
+        System.out.print("File di destinazione (.csv o .json): ");
+        Path target = Path.of(readLineTrim());
+        System.out.print("Il file conterrà le password in chiaro. Continuare? (y/N): ");
+        if (!"y".equalsIgnoreCase(readLineTrim())) {
+            System.out.println("annullato");
+            return;
+        }
 
-            byte[] plain = new AesGcmCipher().decrypt(encKey, vf.getCiphertext(), aad);
+        try (EntrySink out = EntryFormat.fromFileName(target.toString()).create(Files.newOutputStream(target))) {
+            int n = session.exportEntries(out);
+            System.out.println("Esportate " + n + " entry in " + target);
+        } catch (Exception e) {
+            System.out.println("Errore export: " + e.getMessage());
+        }
+    }
 
-            VaultPayload vaultData = objectMapper.readValue(
-                    plain,
-                    VaultPayload.class
-            );
+    // ---------- Flusso: operazioni batch su tutti i vault della directory ----------
 
-            System.out.println("=== Entries (" + vaultData.getEntries().size() + ") ===");
-            for (int i = 0; i < vaultData.getEntries().size(); i++) {
-                VaultEntry e = vaultData.getEntries().get(i);
-                String notes = (e.getNotes() != null) ? e.getNotes() : "-";
-                System.out.println((i + 1) + ") " + e.getTitle()
-                        + "  [" + e.getUsername() + "] -> " + e.getPassword()
-                        + "  notes:" + notes);
+    private static void batchFlow(FileVaultStore store, File vaultDir) {
+        System.out.print("Operazione: (v) verifica  (m) migra al formato corrente  (r) rekey: ");
+        String op = readLineTrim();
+        if (!op.equals("v") && !op.equals("m") && !op.equals("r")) {
+            System.out.println("scelta non valida");
+            return;
+        }
+        int iterations = 0;
+        if (op.equals("r")) {
+            System.out.print("Nuove iterazioni PBKDF2: ");
+            try {
+                iterations = Integer.parseInt(readLineTrim());
+            } catch (NumberFormatException e) {
+                System.out.println("numero non valido");
+                return;
             }
+        }
 
-            // pulizia memoria
-            Arrays.fill(encKey, (byte) 0);
-            Arrays.fill(plain, (byte) 0);
-        } catch (AEADBadTagException e) {
-            System.out.println("Decrittazione fallita (chiave/AAD errata o dati corrotti).");
+        // una sola password (es. di escrow) per tutti i vault: quelli con una password diversa falliscono
+        char[] pw = readPassword("Master password comune: ");
+
+        String jobName;
+        VaultJob job;
+        switch (op) {
+            case "v":
+                jobName = "verify";
+                job = VaultJobs.verify(f -> pw);
+                break;
+            case "m":
+                jobName = "migrate";
+                job = VaultJobs.migrate(f -> pw);
+                break;
+            default:
+                jobName = "rekey-" + iterations;
+                job = VaultJobs.rekey(f -> pw, iterations);
+        }
+
+        // file nascosto: FileVaultStore.list() non lo considera un vault
+        File checkpoint = new File(vaultDir, ".batch-" + jobName);
+        try {
+            // le sessioni in cache diventerebbero obsolete dopo una riscrittura
+            for (String name : store.list()) {
+                SESSIONS.invalidate(name);
+            }
+            BatchReport report = new BatchRunner(store).run(jobName, job, checkpoint,
+                    (r, done, total) -> System.out.println("[" + done + "/" + total + "] " + r));
+            System.out.println("OK: " + report.count(VaultResult.Status.OK)
+                    + ", falliti: " + report.count(VaultResult.Status.FAILED)
+                    + ", già fatti: " + report.count(VaultResult.Status.SKIPPED)
+                    + " (" + report.getElapsedMillis() + " ms)");
+            if (report.isSuccess()) {
+                Files.deleteIfExists(checkpoint.toPath());
+            } else {
+                System.out.println("Rilanciando la stessa operazione verranno ritentati solo i vault falliti.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Batch interrotto");
         } catch (Exception e) {
-            System.out.println("Errore aprendo il vault: " + e.getMessage());
+            System.out.println("Errore batch: " + e.getMessage());
+        } finally {
+            Arrays.fill(pw, '\u0000');
         }
     }
 
-    // ---------- Flusso: aggiungere una entry (legge -> modifica -> riscrive) ----------
+    // ---------- Flusso: aggiungere una entry (sessione -> modifica -> riscrive) ----------
 
     private static void addEntryFlow(FileVaultStore store) {
         System.out.print("Vault filename: ");
@@ -230,60 +445,29 @@ public class Main {
             return;
         }
 
-        char[] pwChars = readPassword("Inserisci master password: ");
-        String pw = new String(pwChars);
-        Arrays.fill(pwChars, '\u0000');
+        VaultSession session = unlockSession(store, filename, "Inserisci master password: ");
+        if (session == null) {
+            return;
+        }
 
-        try {
-            var vf = store.read(filename);
-            VaultHeader header = vf.getHeader();
+        // input nuova entry
+        System.out.print("Titolo: ");
+        String title = readLineTrim();
+        System.out.print("Username: ");
+        String username = readLineTrim();
+        // l'array passa all'entry senza copie: lo azzera la sessione alla chiusura
+        char[] entryPw = readPassword("Password entry: ");
+        System.out.print("Notes (opzionale): ");
+        String notes = readLine();
 
-            // auth
-            PBKDF2 authKdf = new PBKDF2();
-            if (!authKdf.validatePassword(header.getStoredAuthHash(), pw)) {
-                System.out.println("Password errata");
-                return;
-            }
+        // UUIDv7: ordinato nel tempo e senza collisioni anche per entry create nello stesso millisecondo
+        String id = EntryIds.next();
+        VaultEntry entry = new VaultEntry(id, title, username, entryPw, notes);
 
-            PBKDF2 encKdf = new PBKDF2(header.getEncIterations(), header.getKeyLenBytes() * 8);
-            byte[] encKey = encKdf.deriveKey(pw, header.getEncSalt());
-            byte[] aad = VaultHeaderCodec.aadOf(header);
-
-            byte[] plain = new AesGcmCipher().decrypt(encKey, vf.getCiphertext(), aad);
-
-            VaultPayload vaultData = objectMapper.readValue(
-                    plain,
-                    VaultPayload.class
-            );
-
-            // input nuova entry
-            System.out.print("Titolo: ");
-            String title = readLineTrim();
-            System.out.print("Username: ");
-            String username = readLineTrim();
-            char[] passwordChars = readPassword("Password entry: ");
-            String entryPw = new String(passwordChars);
-            Arrays.fill(passwordChars, '\u0000');
-            System.out.print("Notes (opzionale): ");
-            String notes = readLine();
-
-            String id = String.valueOf(System.currentTimeMillis());
-            VaultEntry entry = new VaultEntry(id, title, username, entryPw, notes);
-            vaultData.getEntries().add(entry);
-
-            // serializza, cifra e riscrivi con stesso header
-            byte[] newPlain = objectMapper
-                    .writeValueAsString(vaultData)
-                    .getBytes(StandardCharsets.UTF_8);
-
-            byte[] newBlob = new AesGcmCipher().encrypt(encKey, newPlain, aad);
-            store.write(filename, header, newBlob);
+        try {
+            // cifra e riscrive con la chiave già in sessione (nessuna KDF)
+            session.addEntry(entry);
             System.out.println("Entry aggiunta.");
-
-            // pulizie
-            Arrays.fill(encKey, (byte) 0);
-            Arrays.fill(plain, (byte) 0);
-            Arrays.fill(newPlain, (byte) 0);
         } catch (Exception e) {
             System.out.println("Errore: " + e.getMessage());
         }
@@ -299,71 +483,164 @@ public class Main {
             return;
         }
 
-        char[] oldPwChars = readPassword("Vecchia master password: ");
-        String oldPw = new String(oldPwChars);
-        Arrays.fill(oldPwChars, '\u0000');
+        char[] oldPw = readPassword("Vecchia master password: ");
+        char[] newPw = readPassword("Nuova master password: ");
+
+        try {
+            // la vecchia password va sempre verificata, anche con una sessione già aperta
+            VaultSession session = SESSIONS.get(filename);
+            if (session == null) {
+                session = VaultSession.unlock(store, filename, oldPw);
+                SESSIONS.put(session);
+            }
+            // il nuovo header porta anche le iterazioni al minimo della policy, con una sola riscrittura
+            int iterations = session.getHeader().getEncIterations();
+            if (KdfPolicy.DEFAULT.needsUpgrade(iterations)) {
+                iterations = KdfPolicy.DEFAULT.iterations();
+            }
+            session.changePassword(oldPw, newPw, iterations);
+            System.out.println("Master password aggiornata.");
+        } catch (InvalidPasswordException e) {
+            System.out.println("Vecchia password errata");
+        } catch (Exception e) {
+            System.out.println("Errore cambio password: " + e.getMessage());
+        } finally {
+            Arrays.fill(oldPw, '\u0000');
+            Arrays.fill(newPw, '\u0000');
+        }
+    }
+
+    // ---------- Flusso: rimuovere una entry ----------
 
-        char[] newPwChars = readPassword("Nuova master password: ");
-        String newPw = new String(newPwChars);
-        Arrays.fill(newPwChars, '\u0000');
+    private static void removeEntryFlow(FileVaultStore store) {
+        System.out.print("Vault filename: ");
+        String filename = readLineTrim();
+        if (!store.exists(filename)) {
+            System.out.println("File non trovato");
+            return;
+        }
 
+        VaultSession session = unlockSession(store, filename, "Inserisci master password: ");
+        if (session == null) {
+            return;
+        }
+        VaultEntry entry = chooseEntry(session);
+        if (entry == null) {
+            return;
+        }
         try {
-            var vf = store.read(filename);
-            VaultHeader header = vf.getHeader();
+            session.removeEntry(entry.getId());
+            System.out.println("Entry rimossa.");
+        } catch (Exception e) {
+            System.out.println("Errore: " + e.getMessage());
+        }
+    }
 
-            // auth vecchia
-            PBKDF2 authKdf = new PBKDF2();
-            if (!authKdf.validatePassword(header.getStoredAuthHash(), oldPw)) {
-                System.out.println("Vecchia password errata");
-                return;
-            }
+    // ---------- Flusso: allegare un file a una entry (cifratura a flusso) ----------
 
-            // decifra con chiave derivata dalla vecchia pw
-            PBKDF2 encKdfOld = new PBKDF2(header.getEncIterations(), header.getKeyLenBytes() * 8);
-            byte[] oldKey = encKdfOld.deriveKey(oldPw, header.getEncSalt());
-            byte[] aadOld = VaultHeaderCodec.aadOf(header);
-            byte[] plaintext = new AesGcmCipher().decrypt(oldKey, vf.getCiphertext(), aadOld);
-
-            VaultPayload vaultData = objectMapper.readValue(
-                    plaintext,
-                    VaultPayload.class
-            );
-
-            // ora rigenera header + key con la nuova password
-            byte[] newEncSalt = new byte[16];
-            new SecureRandom().nextBytes(newEncSalt);
-            int newEncIterations = header.getEncIterations(); // puoi cambiarlo se vuoi
-            int newKeyLen = header.getKeyLenBytes();
-            PBKDF2 encKdfNew = new PBKDF2(newEncIterations, newKeyLen * 8);
-            byte[] newKey = encKdfNew.deriveKey(newPw, newEncSalt);
-            String newStoredAuth = new PBKDF2().hashPassword(newPw);
-
-            // equivalente di header.copy(encSalt=..., encIterations=..., storedAuthHash=...)
-            VaultHeader newHeader = new VaultHeader(
-                    newEncSalt,
-                    newEncIterations,
-                    newKeyLen,
-                    newStoredAuth,
-                    header.getAadFormat()
-            );
-
-            byte[] newAad = VaultHeaderCodec.aadOf(newHeader);
-            byte[] newPlain = objectMapper
-                    .writeValueAsString(vaultData)
-                    .getBytes(StandardCharsets.UTF_8);
-            byte[] newBlob = new AesGcmCipher().encrypt(newKey, newPlain, newAad);
-
-            store.write(filename, newHeader, newBlob);
-            System.out.println("Master password aggiornata.");
+    private static void attachFlow(FileVaultStore store) {
+        System.out.print("Vault filename: ");
+        String filename = readLineTrim();
+        if (!store.exists(filename)) {
+            System.out.println("File non trovato");
+            return;
+        }
+
+        VaultSession session = unlockSession(store, filename, "Inserisci master password: ");
+        if (session == null) {
+            return;
+        }
+        VaultEntry entry = chooseEntry(session);
+        if (entry == null) {
+            return;
+        }
 
-            // pulizie
-            Arrays.fill(oldKey, (byte) 0);
-            Arrays.fill(newKey, (byte) 0);
-            Arrays.fill(plaintext, (byte) 0);
-            Arrays.fill(newPlain, (byte) 0);
+        System.out.print("Percorso del file da allegare: ");
+        Path source = Path.of(readLineTrim());
+        if (!Files.isRegularFile(source)) {
+            System.out.println("File non trovato");
+            return;
+        }
 
+        try (InputStream in = Files.newInputStream(source)) {
+            VaultAttachment a = session.addAttachment(entry.getId(), source.getFileName().toString(), in);
+            System.out.println("Allegato aggiunto: " + a.getName() + " (" + a.getSize() + " byte)");
         } catch (Exception e) {
-            System.out.println("Errore cambio password: " + e.getMessage());
+            System.out.println("Errore: " + e.getMessage());
+        }
+    }
+
+    // ---------- Flusso: estrarre un allegato su file ----------
+
+    private static void extractAttachmentFlow(FileVaultStore store) {
+        System.out.print("Vault filename: ");
+        String filename = readLineTrim();
+        if (!store.exists(filename)) {
+            System.out.println("File non trovato");
+            return;
+        }
+
+        VaultSession session = unlockSession(store, filename, "Inserisci master password: ");
+        if (session == null) {
+            return;
+        }
+        VaultEntry entry = chooseEntry(session);
+        if (entry == null) {
+            return;
+        }
+        List<VaultAttachment> attachments = entry.getAttachments();
+        if (attachments == null || attachments.isEmpty()) {
+            System.out.println("Nessun allegato");
+            return;
+        }
+        for (int i = 0; i < attachments.size(); i++) {
+            System.out.println((i + 1) + ") " + attachments.get(i).getName());
+        }
+        System.out.print("Numero allegato: ");
+        int idx = parseIndex(readLineTrim(), attachments.size());
+        if (idx < 0) {
+            System.out.println("scelta non valida");
+            return;
+        }
+        VaultAttachment attachment = attachments.get(idx);
+
+        System.out.print("Salva come: ");
+        Path target = Path.of(readLineTrim());
+        try (InputStream in = session.openAttachment(entry.getId(), attachment.getId());
+             OutputStream out = Files.newOutputStream(target)) {
+            long n = in.transferTo(out);
+            System.out.println("Estratti " + n + " byte in " + target);
+        } catch (Exception e) {
+            System.out.println("Errore: " + e.getMessage());
+        }
+    }
+
+    private static VaultEntry chooseEntry(VaultSession session) {
+        // copia per poter scegliere per posizione
+        List<VaultEntry> entries = new ArrayList<>(session.getPayload().getEntries());
+        if (entries.isEmpty()) {
+            System.out.println("Il vault non ha entry");
+            return null;
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            System.out.println((i + 1) + ") " + entries.get(i).getTitle());
+        }
+        System.out.print("Numero entry: ");
+        int idx = parseIndex(readLineTrim(), entries.size());
+        if (idx < 0) {
+            System.out.println("scelta non valida");
+            return null;
+        }
+        return entries.get(idx);
+    }
+
+    // "1".."size" -> 0..size-1, altrimenti -1
+    private static int parseIndex(String s, int size) {
+        try {
+            int n = Integer.parseInt(s);
+            return (n >= 1 && n <= size) ? n - 1 : -1;
+        } catch (NumberFormatException e) {
+            return -1;
         }
     }
 
@@ -382,6 +659,7 @@ public class Main {
             return;
         }
         try {
+            SESSIONS.invalidate(filename);
             boolean ok = store.delete(filename);
             System.out.println("Cancellato: " + ok);
         } catch (Exception e) {
@@ -0,0 +1,31 @@
+package com.etbasic.securityvault.core.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Una cifratura o decifratura AES-GCM, con le sole dimensioni dei dati.
+ */
+@Name("com.etbasic.securityvault.Cipher")
+@Label("Vault Cipher")
+@Category({"SecurityVault", "Crypto"})
+@Description("AES-GCM encrypt or decrypt")
+@StackTrace(false)
+public final class CipherEvent extends Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("AAD Bytes")
+    @DataAmount
+    public long aadBytes;
+}
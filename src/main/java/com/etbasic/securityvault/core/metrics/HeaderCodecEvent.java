@@ -0,0 +1,27 @@
+package com.etbasic.securityvault.core.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Codifica, decodifica o calcolo dell'AAD dell'header (JSON).
+ */
+@Name("com.etbasic.securityvault.HeaderCodec")
+@Label("Vault Header Codec")
+@Category({"SecurityVault", "Codec"})
+@Description("Vault header JSON encode, decode or AAD computation")
+@StackTrace(false)
+public final class HeaderCodecEvent extends Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+}
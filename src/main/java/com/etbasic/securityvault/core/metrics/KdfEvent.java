@@ -0,0 +1,31 @@
+package com.etbasic.securityvault.core.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Una derivazione PBKDF2. Solo parametri pubblici: mai password, salt o chiavi.
+ */
+@Name("com.etbasic.securityvault.Kdf")
+@Label("Vault KDF")
+@Category({"SecurityVault", "Crypto"})
+@Description("PBKDF2 key derivation (hash, validate or derive)")
+@StackTrace(false)
+public final class KdfEvent extends Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Algorithm")
+    public String algorithm;
+
+    @Label("Iterations")
+    public int iterations;
+
+    @Label("Key Bits")
+    public int keyBits;
+}
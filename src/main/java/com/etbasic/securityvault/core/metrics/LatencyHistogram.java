@@ -0,0 +1,118 @@
+package com.etbasic.securityvault.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Istogramma di latenze in nanosecondi, senza lock e a memoria fissa.
+ *
+ * I bucket sono log-lineari: ogni potenza di 2 è divisa in {@link #SUB_BUCKETS} parti uguali, quindi
+ * un percentile è approssimato per eccesso con un errore relativo al più del 12,5%. Il massimo è esatto.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // valori fino a Long.MAX_VALUE: esponenti da SUB_BITS a 62, più i primi SUB_BUCKETS valori esatti
+    private static final int BUCKETS = (63 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Percentili e massimo letti in un certo istante; con registrazioni concorrenti sono coerenti
+     * a meno delle ultime in corso.
+     */
+    public static final class Snapshot {
+        private final long count;
+        private final long p50;
+        private final long p99;
+        private final long max;
+
+        Snapshot(long count, long p50, long p99, long max) {
+            this.count = count;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getP50Nanos() {
+            return p50;
+        }
+
+        public long getP99Nanos() {
+            return p99;
+        }
+
+        public long getMaxNanos() {
+            return max;
+        }
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // riprova: un altro thread ha appena alzato il massimo
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        long maxNanos = max.get();
+        return new Snapshot(total, percentile(copy, total, 0.50, maxNanos),
+                percentile(copy, total, 0.99, maxNanos), maxNanos);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        max.set(0);
+    }
+
+    private static long percentile(long[] counts, long total, double p, long max) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // valore più alto che finisce nel bucket
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exp = index / SUB_BUCKETS - 1 + SUB_BITS;
+        long width = 1L << (exp - SUB_BITS);
+        long lower = (1L << exp) | ((index % SUB_BUCKETS) * width);
+        return lower + (width - 1);
+    }
+}
@@ -0,0 +1,19 @@
+package com.etbasic.securityvault.core.metrics;
+
+/**
+ * Fasi di un'operazione sul vault misurate da {@link VaultMetrics}.
+ */
+public enum Stage {
+    KDF_HASH,
+    KDF_VALIDATE,
+    KDF_DERIVE,
+    GCM_ENCRYPT,
+    GCM_DECRYPT,
+    HEADER_ENCODE,
+    HEADER_DECODE,
+    HEADER_AAD,
+    STORE_READ,
+    STORE_WRITE,
+    STORE_WRITE_HEADER,
+    STORE_APPEND
+}
@@ -0,0 +1,33 @@
+package com.etbasic.securityvault.core.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Un'operazione di un VaultStore su un vault (il nome del vault non è un segreto).
+ */
+@Name("com.etbasic.securityvault.Store")
+@Label("Vault Store")
+@Category({"SecurityVault", "Storage"})
+@Description("Vault store read, write, header rewrite or append")
+@StackTrace(false)
+public final class StoreEvent extends Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Store")
+    public String store;
+
+    @Label("Vault")
+    public String vault;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,94 @@
+package com.etbasic.securityvault.core.metrics;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Registro in processo delle latenze per {@link Stage}: p50, p99 e massimo di ogni fase.
+ *
+ * Spento di default (si accende con {@code -Dsecurityvault.metrics=true} o {@link #setEnabled}):
+ * da spento {@link #start()} legge solo un campo volatile e {@link #stop} non fa nulla.
+ * Gli eventi JFR dello stesso package sono indipendenti e seguono le impostazioni della registrazione.
+ *
+ * Uso nei punti misurati:
+ * <pre>
+ *   long start = VaultMetrics.start();
+ *   ... lavoro ...
+ *   VaultMetrics.stop(Stage.GCM_ENCRYPT, start);
+ * </pre>
+ */
+public final class VaultMetrics {
+
+    private static volatile boolean enabled = Boolean.getBoolean("securityvault.metrics");
+
+    private static final Map<Stage, LatencyHistogram> HISTOGRAMS = new EnumMap<>(Stage.class);
+
+    static {
+        for (Stage stage : Stage.values()) {
+            HISTOGRAMS.put(stage, new LatencyHistogram());
+        }
+    }
+
+    private VaultMetrics() {
+        // utility class, no instances
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * Istante di inizio da passare a {@link #stop}; 0 se le metriche sono spente.
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    public static void stop(Stage stage, long start) {
+        if (start != 0L) {
+            HISTOGRAMS.get(stage).record(System.nanoTime() - start);
+        }
+    }
+
+    public static LatencyHistogram histogram(Stage stage) {
+        return HISTOGRAMS.get(stage);
+    }
+
+    public static void reset() {
+        for (LatencyHistogram histogram : HISTOGRAMS.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Tabella testuale delle fasi con almeno una misura.
+     */
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%-20s %10s %10s %10s %10s%n", "stage", "count", "p50", "p99", "max"));
+        for (Map.Entry<Stage, LatencyHistogram> e : HISTOGRAMS.entrySet()) {
+            LatencyHistogram.Snapshot s = e.getValue().snapshot();
+            if (s.getCount() == 0) {
+                continue;
+            }
+            sb.append(String.format(Locale.ROOT, "%-20s %10d %10s %10s %10s%n", e.getKey(), s.getCount(),
+                    format(s.getP50Nanos()), format(s.getP99Nanos()), format(s.getMaxNanos())));
+        }
+        return sb.toString();
+    }
+
+    private static String format(long nanos) {
+        if (nanos < 10_000L) {
+            return nanos + " ns";
+        }
+        if (nanos < 10_000_000L) {
+            return String.format(Locale.ROOT, "%.1f us", nanos / 1e3);
+        }
+        return String.format(Locale.ROOT, "%.1f ms", nanos / 1e6);
+    }
+}
@@ -0,0 +1,54 @@
+package com.etbasic.securityvault.core.model;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+
+/**
+ * Generatore di id per le entry: UUID versione 7 (RFC 9562), ordinati nel tempo.
+ *
+ *   48 bit  millisecondi Unix
+ *    4 bit  versione (7)
+ *   12 bit  contatore nello stesso millisecondo
+ *    2 bit  variante
+ *   62 bit  casuali
+ *
+ * Nello stesso processo gli id sono strettamente crescenti, quindi mai uguali anche se generati
+ * nello stesso millisecondo (es. durante un import): quando il contatore si esaurisce si passa
+ * al millisecondo successivo. Tra processi diversi le collisioni sono evitate dai 62 bit casuali.
+ */
+public final class EntryIds {
+
+    private static final SecureRandom RNG = new SecureRandom();
+    private static final int COUNTER_BITS = 12;
+    private static final int COUNTER_MAX = (1 << COUNTER_BITS) - 1;
+
+    private static long lastMillis;
+    private static int counter;
+
+    private EntryIds() {
+        // utility class, no instances
+    }
+
+    public static String next() {
+        long millis;
+        int seq;
+        synchronized (EntryIds.class) {
+            long now = System.currentTimeMillis();
+            // l'orologio può tornare indietro (NTP): si resta sull'ultimo istante usato
+            if (now > lastMillis) {
+                lastMillis = now;
+                counter = 0;
+            } else if (counter < COUNTER_MAX) {
+                counter++;
+            } else {
+                lastMillis++;
+                counter = 0;
+            }
+            millis = lastMillis;
+            seq = counter;
+        }
+        long msb = (millis << 16) | (0x7L << 12) | seq;
+        long lsb = (RNG.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(msb, lsb).toString();
+    }
+}
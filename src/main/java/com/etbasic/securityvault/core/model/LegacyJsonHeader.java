@@ -0,0 +1,129 @@
+package com.etbasic.securityvault.core.model;
+
+import com.etbasic.securityvault.core.json.Base64ByteArraySerializer;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Forma JSON dell'header, usata solo da {@link VaultHeaderCodec} per leggere i file con header JSON
+ * e per l'AAD dei vault con aadFormat JSON: l'AAD è lo SHA-256 di questo JSON, quindi campi, ordine
+ * e annotazioni devono restare esattamente quelli con cui i vault sono stati scritti.
+ */
+final class LegacyJsonHeader {
+
+    private int version = VaultHeader.VERSION_LEGACY;
+    private String kdfAlg = "PBKDF2WithHmacSHA256";
+
+    @JsonSerialize(using = Base64ByteArraySerializer.Serializer.class)
+    @JsonDeserialize(using = Base64ByteArraySerializer.Deserializer.class)
+    private byte[] encSalt;
+
+    private int encIterations;
+    private int keyLenBytes = 32;
+
+    private String cipherAlg = "AES/GCM/NoPadding";
+    private int ivSizeBytes = 12;
+    private int tagSizeBytes = 16;
+
+    private String storedAuthHash;
+    private String aadFormat = "header-json";
+
+    // I campi aggiunti dopo v1 sono omessi quando null: l'AAD è lo SHA-256 del JSON dell'header,
+    // quindi un campo in più (anche null) cambierebbe l'AAD dei vault già esistenti.
+
+    // vedi VaultLayout; null = snapshot
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String layout;
+
+    // vedi PayloadCodecs; null = json
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String payloadCodec;
+
+    // vedi Compressions; null = nessuna compressione. Solo layout SNAPSHOT.
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String compression;
+
+    // numero della riscrittura completa, incrementato a ogni write; null = 0 (vault precedenti).
+    // Con la lunghezza del corpo forma la VaultVersion usata per il compare-and-swap dello store.
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long sequence;
+
+    // v3: chiave del payload cifrata (AES-GCM, IV||ciphertext||tag) con la chiave derivata dalla password
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonSerialize(using = Base64ByteArraySerializer.Serializer.class)
+    @JsonDeserialize(using = Base64ByteArraySerializer.Deserializer.class)
+    private byte[] wrappedKey;
+
+    LegacyJsonHeader() {
+    }
+
+    LegacyJsonHeader(VaultHeader h) {
+        this.version = h.getVersion();
+        this.kdfAlg = h.getKdfAlg();
+        this.encSalt = h.getEncSalt();
+        this.encIterations = h.getEncIterations();
+        this.keyLenBytes = h.getKeyLenBytes();
+        this.cipherAlg = h.getCipherAlg();
+        this.ivSizeBytes = h.getIvSizeBytes();
+        this.tagSizeBytes = h.getTagSizeBytes();
+        this.storedAuthHash = h.getStoredAuthHash();
+        this.aadFormat = h.getAadFormat();
+        this.layout = h.getLayout();
+        this.payloadCodec = h.getPayloadCodec();
+        this.compression = h.getCompression();
+        this.sequence = h.getSequence();
+        this.wrappedKey = h.getWrappedKey();
+    }
+
+    VaultHeader toHeader() {
+        return new VaultHeader(version, kdfAlg, encSalt, encIterations, keyLenBytes, cipherAlg,
+                ivSizeBytes, tagSizeBytes, storedAuthHash, aadFormat, layout, payloadCodec,
+                compression, sequence, wrappedKey);
+    }
+
+    public int getVersion() { return version; }
+    public void setVersion(int version) { this.version = version; }
+
+    public String getKdfAlg() { return kdfAlg; }
+    public void setKdfAlg(String kdfAlg) { this.kdfAlg = kdfAlg; }
+
+    public byte[] getEncSalt() { return encSalt; }
+    public void setEncSalt(byte[] encSalt) { this.encSalt = encSalt; }
+
+    public int getEncIterations() { return encIterations; }
+    public void setEncIterations(int encIterations) { this.encIterations = encIterations; }
+
+    public int getKeyLenBytes() { return keyLenBytes; }
+    public void setKeyLenBytes(int keyLenBytes) { this.keyLenBytes = keyLenBytes; }
+
+    public String getCipherAlg() { return cipherAlg; }
+    public void setCipherAlg(String cipherAlg) { this.cipherAlg = cipherAlg; }
+
+    public int getIvSizeBytes() { return ivSizeBytes; }
+    public void setIvSizeBytes(int ivSizeBytes) { this.ivSizeBytes = ivSizeBytes; }
+
+    public int getTagSizeBytes() { return tagSizeBytes; }
+    public void setTagSizeBytes(int tagSizeBytes) { this.tagSizeBytes = tagSizeBytes; }
+
+    public String getStoredAuthHash() { return storedAuthHash; }
+    public void setStoredAuthHash(String storedAuthHash) { this.storedAuthHash = storedAuthHash; }
+
+    public String getAadFormat() { return aadFormat; }
+    public void setAadFormat(String aadFormat) { this.aadFormat = aadFormat; }
+
+    public String getLayout() { return layout; }
+    public void setLayout(String layout) { this.layout = layout; }
+
+    public String getPayloadCodec() { return payloadCodec; }
+    public void setPayloadCodec(String payloadCodec) { this.payloadCodec = payloadCodec; }
+
+    public String getCompression() { return compression; }
+    public void setCompression(String compression) { this.compression = compression; }
+
+    public Long getSequence() { return sequence; }
+    public void setSequence(Long sequence) { this.sequence = sequence; }
+
+    public byte[] getWrappedKey() { return wrappedKey; }
+    public void setWrappedKey(byte[] wrappedKey) { this.wrappedKey = wrappedKey; }
+}
@@ -0,0 +1,46 @@
+package com.etbasic.securityvault.core.model;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.etbasic.securityvault.core.json.Base64ByteArraySerializer;
+
+/**
+ * Riferimento a un allegato binario di una {@link VaultEntry}.
+ *
+ * Il contenuto non sta nel payload ma in un blob separato (vedi AttachmentStore),
+ * cifrato a flusso con una chiave casuale propria. La chiave vive solo qui, dentro il
+ * payload cifrato: cambiare la master password non richiede di ricifrare i blob.
+ */
+public class VaultAttachment {
+
+    private String id;
+    private String name;
+    private long size;
+
+    @JsonSerialize(using = Base64ByteArraySerializer.Serializer.class)
+    @JsonDeserialize(using = Base64ByteArraySerializer.Deserializer.class)
+    private byte[] key;
+
+    public VaultAttachment() {
+    }
+
+    public VaultAttachment(String id, String name, long size, byte[] key) {
+        this.id = id;
+        this.name = name;
+        this.size = size;
+        this.key = key;
+    }
+
+    // Getter + Setter
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public long getSize() { return size; }
+    public void setSize(long size) { this.size = size; }
+
+    public byte[] getKey() { return key; }
+    public void setKey(byte[] key) { this.key = key; }
+}
@@ -1,21 +1,34 @@
 package com.etbasic.securityvault.core.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.etbasic.securityvault.core.json.Base64ByteArraySerializer;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 public class VaultEntry {
 
     private String id;
     private String title;
     private String username;
-    private String password;
+    // char[] e non String: si può azzerare (vedi clearPassword). In JSON resta una stringa
+    private char[] password;
     private String notes;
 
+    // omesso dal JSON se assente, così le entry senza allegati restano identiche a prima
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private List<VaultAttachment> attachments;
+
     public VaultEntry() {
     }
 
-    public VaultEntry(String id, String title, String username, String password, String notes) {
+    /**
+     * @param password tenuta così com'è, senza copia: da qui in poi appartiene all'entry
+     */
+    public VaultEntry(String id, String title, String username, char[] password, String notes) {
         this.id = id;
         this.title = title;
         this.username = username;
@@ -33,9 +46,33 @@ public class VaultEntry {
     public String getUsername() { return username; }
     public void setUsername(String username) { this.username = username; }
 
-    public String getPassword() { return password; }
-    public void setPassword(String password) { this.password = password; }
+    // l'array interno, non una copia: chi lo legge non deve modificarlo
+    public char[] getPassword() { return password; }
+    public void setPassword(char[] password) { this.password = password; }
+
+    /**
+     * Azzera la password in memoria (es. alla chiusura della sessione); l'entry resta senza password.
+     */
+    public void clearPassword() {
+        if (password != null) {
+            Arrays.fill(password, '\u0000');
+            password = null;
+        }
+    }
+
+    /**
+     * Copia indipendente: password in un array nuovo e lista degli allegati propria.
+     * Azzerare una delle due entry non tocca l'altra.
+     */
+    public VaultEntry copy() {
+        VaultEntry c = new VaultEntry(id, title, username, password == null ? null : password.clone(), notes);
+        c.attachments = (attachments == null) ? null : new ArrayList<>(attachments);
+        return c;
+    }
 
     public String getNotes() { return notes; }
     public void setNotes(String notes) { this.notes = notes; }
+
+    public List<VaultAttachment> getAttachments() { return attachments; }
+    public void setAttachments(List<VaultAttachment> attachments) { this.attachments = attachments; }
 }
@@ -1,71 +1,194 @@
 package com.etbasic.securityvault.core.model;
 
-import com.fasterxml.jackson.databind.annotation.JsonSerialize;
-import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
-import com.etbasic.securityvault.core.json.Base64ByteArraySerializer;
-
-public class VaultHeader {
-
-    private int version = 1;
-    private String kdfAlg = "PBKDF2WithHmacSHA256";
-
-    @JsonSerialize(using = Base64ByteArraySerializer.Serializer.class)
-    @JsonDeserialize(using = Base64ByteArraySerializer.Deserializer.class)
-    private byte[] encSalt;
-
-    private int encIterations;
-    private int keyLenBytes = 32;
-
-    private String cipherAlg = "AES/GCM/NoPadding";
-    private int ivSizeBytes = 12;
-    private int tagSizeBytes = 16;
-
-    private String storedAuthHash;
-    private String aadFormat = "header-json";
-
-    public VaultHeader() {
-    }
-
+/**
+ * Header di un vault: parametri della KDF e della cifratura, formato del corpo, versione.
+ *
+ * Immutabile: le varianti si ottengono con i metodi {@code with...}, che ritornano un nuovo header.
+ * Per questo la codifica binaria e l'AAD si calcolano al primo uso e poi restano in memoria
+ * (vedi {@link VaultHeaderCodec}).
+ */
+public final class VaultHeader {
+
+    /**
+     * v1: due PBKDF2 separati, uno per l'auth hash (salt proprio) e uno per la chiave di cifratura.
+     */
+    public static final int VERSION_LEGACY = 1;
+
+    /**
+     * v2: un solo PBKDF2(password, encSalt, encIterations); l'output viene diviso con HKDF-SHA256
+     * in verificatore (salvato in storedAuthHash) e chiave AES.
+     */
+    public static final int VERSION_SINGLE_KDF = 2;
+
+    /**
+     * v3: come v2, ma la chiave HKDF non cifra il payload: cifra (wrappedKey) una chiave casuale
+     * che a sua volta cifra il payload. L'AAD esclude i campi della password ({@link #AAD_FORMAT_BODY}),
+     * quindi cambiare password o iterazioni riscrive solo l'header.
+     */
+    public static final int VERSION_WRAPPED_KEY = 3;
+
+    /**
+     * aadFormat dei vault v3 scritti con header JSON: SHA-256 del JSON dell'header senza i campi che
+     * cambiano con la password (kdfAlg, encSalt, encIterations, storedAuthHash, wrappedKey) e senza sequence.
+     * Gli altri valori ("header-json", "sha256(header-json)") indicano l'header JSON completo.
+     */
+    public static final String AAD_FORMAT_BODY = "sha256(header-json,body-fields)";
+
+    /**
+     * aadFormat dei vault v3 attuali: come {@link #AAD_FORMAT_BODY}, ma sulla codifica binaria
+     * canonica dell'header (vedi {@link VaultHeaderCodec#encode}), che non dipende da Jackson.
+     * Un vault con un aadFormat JSON passa a questo alla prima riscrittura completa.
+     */
+    public static final String AAD_FORMAT_TLV = "sha256(header-tlv,body-fields)";
+
+    private final int version;
+    private final String kdfAlg;
+    private final byte[] encSalt;
+    private final int encIterations;
+    private final int keyLenBytes;
+
+    private final String cipherAlg;
+    private final int ivSizeBytes;
+    private final int tagSizeBytes;
+
+    private final String storedAuthHash;
+    private final String aadFormat;
+
+    // vedi VaultLayout; null = snapshot
+    private final String layout;
+    // vedi PayloadCodecs; null = json
+    private final String payloadCodec;
+    // vedi Compressions; null = nessuna compressione. Solo layout SNAPSHOT.
+    private final String compression;
+
+    // numero della riscrittura completa, incrementato a ogni write; null = 0 (vault precedenti).
+    // Con la lunghezza del corpo forma la VaultVersion usata per il compare-and-swap dello store.
+    private final Long sequence;
+
+    // v3: chiave del payload cifrata (AES-GCM, IV||ciphertext||tag) con la chiave derivata dalla password
+    private final byte[] wrappedKey;
+
+    // calcolati al primo uso da VaultHeaderCodec. Volatile perché l'header è condiviso tra thread: chi legge
+    // il riferimento vede anche il contenuto dell'array. Due thread possono calcolarli entrambi: stesso valore
+    private volatile byte[] encoded;
+    private volatile byte[] aad;
+
+    /**
+     * Header v1 con i valori di default per algoritmi e dimensioni.
+     */
     public VaultHeader(byte[] encSalt,
                        int encIterations,
                        int keyLenBytes,
                        String storedAuthHash,
                        String aadFormat) {
-        this.encSalt = encSalt;
+        this(VERSION_LEGACY, "PBKDF2WithHmacSHA256", encSalt, encIterations, keyLenBytes,
+                "AES/GCM/NoPadding", 12, 16, storedAuthHash, aadFormat, null, null, null, null, null);
+    }
+
+    VaultHeader(int version, String kdfAlg, byte[] encSalt, int encIterations, int keyLenBytes,
+                String cipherAlg, int ivSizeBytes, int tagSizeBytes, String storedAuthHash, String aadFormat,
+                String layout, String payloadCodec, String compression, Long sequence, byte[] wrappedKey) {
+        this.version = version;
+        this.kdfAlg = kdfAlg;
+        this.encSalt = (encSalt != null) ? encSalt.clone() : null;
         this.encIterations = encIterations;
         this.keyLenBytes = keyLenBytes;
+        this.cipherAlg = cipherAlg;
+        this.ivSizeBytes = ivSizeBytes;
+        this.tagSizeBytes = tagSizeBytes;
         this.storedAuthHash = storedAuthHash;
         this.aadFormat = aadFormat;
+        this.layout = layout;
+        this.payloadCodec = payloadCodec;
+        this.compression = compression;
+        this.sequence = sequence;
+        this.wrappedKey = (wrappedKey != null) ? wrappedKey.clone() : null;
     }
 
-    // Getter + Setter
     public int getVersion() { return version; }
-    public void setVersion(int version) { this.version = version; }
 
     public String getKdfAlg() { return kdfAlg; }
-    public void setKdfAlg(String kdfAlg) { this.kdfAlg = kdfAlg; }
 
-    public byte[] getEncSalt() { return encSalt; }
-    public void setEncSalt(byte[] encSalt) { this.encSalt = encSalt; }
+    public byte[] getEncSalt() { return (encSalt != null) ? encSalt.clone() : null; }
 
     public int getEncIterations() { return encIterations; }
-    public void setEncIterations(int encIterations) { this.encIterations = encIterations; }
 
     public int getKeyLenBytes() { return keyLenBytes; }
-    public void setKeyLenBytes(int keyLenBytes) { this.keyLenBytes = keyLenBytes; }
 
     public String getCipherAlg() { return cipherAlg; }
-    public void setCipherAlg(String cipherAlg) { this.cipherAlg = cipherAlg; }
 
     public int getIvSizeBytes() { return ivSizeBytes; }
-    public void setIvSizeBytes(int ivSizeBytes) { this.ivSizeBytes = ivSizeBytes; }
 
     public int getTagSizeBytes() { return tagSizeBytes; }
-    public void setTagSizeBytes(int tagSizeBytes) { this.tagSizeBytes = tagSizeBytes; }
 
     public String getStoredAuthHash() { return storedAuthHash; }
-    public void setStoredAuthHash(String storedAuthHash) { this.storedAuthHash = storedAuthHash; }
 
     public String getAadFormat() { return aadFormat; }
-    public void setAadFormat(String aadFormat) { this.aadFormat = aadFormat; }
+
+    public String getLayout() { return layout; }
+
+    public String getPayloadCodec() { return payloadCodec; }
+
+    public String getCompression() { return compression; }
+
+    public Long getSequence() { return sequence; }
+
+    public byte[] getWrappedKey() { return (wrappedKey != null) ? wrappedKey.clone() : null; }
+
+    // ---------- varianti ----------
+
+    public VaultHeader withVersion(int version) {
+        return new VaultHeader(version, kdfAlg, encSalt, encIterations, keyLenBytes, cipherAlg, ivSizeBytes,
+                tagSizeBytes, storedAuthHash, aadFormat, layout, payloadCodec, compression, sequence, wrappedKey);
+    }
+
+    public VaultHeader withAadFormat(String aadFormat) {
+        return new VaultHeader(version, kdfAlg, encSalt, encIterations, keyLenBytes, cipherAlg, ivSizeBytes,
+                tagSizeBytes, storedAuthHash, aadFormat, layout, payloadCodec, compression, sequence, wrappedKey);
+    }
+
+    public VaultHeader withLayout(String layout) {
+        return new VaultHeader(version, kdfAlg, encSalt, encIterations, keyLenBytes, cipherAlg, ivSizeBytes,
+                tagSizeBytes, storedAuthHash, aadFormat, layout, payloadCodec, compression, sequence, wrappedKey);
+    }
+
+    public VaultHeader withPayloadCodec(String payloadCodec) {
+        return new VaultHeader(version, kdfAlg, encSalt, encIterations, keyLenBytes, cipherAlg, ivSizeBytes,
+                tagSizeBytes, storedAuthHash, aadFormat, layout, payloadCodec, compression, sequence, wrappedKey);
+    }
+
+    public VaultHeader withCompression(String compression) {
+        return new VaultHeader(version, kdfAlg, encSalt, encIterations, keyLenBytes, cipherAlg, ivSizeBytes,
+                tagSizeBytes, storedAuthHash, aadFormat, layout, payloadCodec, compression, sequence, wrappedKey);
+    }
+
+    public VaultHeader withSequence(Long sequence) {
+        return new VaultHeader(version, kdfAlg, encSalt, encIterations, keyLenBytes, cipherAlg, ivSizeBytes,
+                tagSizeBytes, storedAuthHash, aadFormat, layout, payloadCodec, compression, sequence, wrappedKey);
+    }
+
+    public VaultHeader withWrappedKey(byte[] wrappedKey) {
+        return new VaultHeader(version, kdfAlg, encSalt, encIterations, keyLenBytes, cipherAlg, ivSizeBytes,
+                tagSizeBytes, storedAuthHash, aadFormat, layout, payloadCodec, compression, sequence, wrappedKey);
+    }
+
+    /**
+     * Questo header con i campi della password (kdfAlg, encSalt, encIterations, storedAuthHash, wrappedKey)
+     * presi da {@code from}; gli altri campi, e quindi l'AAD v3, non cambiano.
+     */
+    public VaultHeader withPasswordFieldsOf(VaultHeader from) {
+        return new VaultHeader(version, from.kdfAlg, from.encSalt, from.encIterations, keyLenBytes, cipherAlg,
+                ivSizeBytes, tagSizeBytes, from.storedAuthHash, aadFormat, layout, payloadCodec, compression,
+                sequence, from.wrappedKey);
+    }
+
+    // ---------- valori calcolati una volta (VaultHeaderCodec) ----------
+
+    byte[] encodedOrNull() { return encoded; }
+
+    void setEncoded(byte[] encoded) { this.encoded = encoded; }
+
+    byte[] aadOrNull() { return aad; }
+
+    void setAad(byte[] aad) { this.aad = aad; }
 }
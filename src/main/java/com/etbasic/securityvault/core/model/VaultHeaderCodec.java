@@ -1,40 +1,351 @@
 package com.etbasic.securityvault.core.model;
 
+import com.etbasic.securityvault.core.metrics.HeaderCodecEvent;
+import com.etbasic.securityvault.core.metrics.Stage;
+import com.etbasic.securityvault.core.metrics.VaultMetrics;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
-public class VaultHeaderCodec {
+/**
+ * Codifica dell'header su disco e calcolo dell'AAD del corpo.
+ *
+ * Formato binario (TLV), scritto e letto a mano, senza reflection:
+ * <pre>
+ *   00 'S' 'V' 'H'  formato (1 byte, = 1)  { tag (1 byte)  len (2 byte BE)  valore (len byte) }*
+ * </pre>
+ * Interi a 4 byte e sequence a 8 byte big-endian, stringhe in UTF-8, campi null omessi.
+ * I tag compaiono una volta sola e in ordine crescente, quindi la codifica di un header è unica
+ * ed è quella su cui si calcola l'AAD ({@link VaultHeader#AAD_FORMAT_TLV}).
+ * Un lettore rifiuta i tag sconosciuti sotto {@link #FIRST_OPTIONAL_TAG} e salta gli altri:
+ * i campi futuri che non cambiano il modo di leggere il corpo vanno da lì in su.
+ *
+ * Gli header JSON dei file precedenti (riconosciuti dal primo byte '{') si leggono ancora con Jackson,
+ * che viene caricato solo in quel caso o per l'AAD dei vault con aadFormat JSON.
+ *
+ * Codifica e AAD si calcolano una volta per header (che è immutabile) e poi vengono riusati.
+ */
+public final class VaultHeaderCodec {
 
-    private static final ObjectMapper mapper = new ObjectMapper()
-            .disable(SerializationFeature.INDENT_OUTPUT) // prettyPrint = false
-            .enable(SerializationFeature.WRITE_NULL_MAP_VALUES) // encodeDefaults = true
-            ;
+    private static final byte[] MAGIC = {0x00, 'S', 'V', 'H'};
+    private static final byte FORMAT = 1;
+
+    private static final int TAG_VERSION = 1;
+    private static final int TAG_KDF_ALG = 2;
+    private static final int TAG_ENC_SALT = 3;
+    private static final int TAG_ENC_ITERATIONS = 4;
+    private static final int TAG_KEY_LEN = 5;
+    private static final int TAG_CIPHER_ALG = 6;
+    private static final int TAG_IV_SIZE = 7;
+    private static final int TAG_TAG_SIZE = 8;
+    private static final int TAG_AUTH_HASH = 9;
+    private static final int TAG_AAD_FORMAT = 10;
+    private static final int TAG_LAYOUT = 11;
+    private static final int TAG_PAYLOAD_CODEC = 12;
+    private static final int TAG_COMPRESSION = 13;
+    private static final int TAG_SEQUENCE = 14;
+    private static final int TAG_WRAPPED_KEY = 15;
+
+    /**
+     * Primo tag facoltativo: un lettore che non lo conosce lo ignora.
+     */
+    public static final int FIRST_OPTIONAL_TAG = 0x40;
+
+    private VaultHeaderCodec() {
+        // utility class, no instances
+    }
+
+    // Jackson serve solo per gli header JSON: la classe viene inizializzata al primo uso
+    private static final class Json {
+        static final ObjectMapper mapper = new ObjectMapper()
+                .disable(SerializationFeature.INDENT_OUTPUT) // prettyPrint = false
+                .enable(SerializationFeature.WRITE_NULL_MAP_VALUES) // encodeDefaults = true
+                ;
+
+        static LegacyJsonHeader read(ByteBuffer buffer) throws IOException {
+            if (buffer.hasArray()) {
+                return mapper.readValue(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                        buffer.remaining(), LegacyJsonHeader.class);
+            }
+            return mapper.readValue(new ByteBufferBackedInputStream(buffer.duplicate()), LegacyJsonHeader.class);
+        }
+    }
+
+    // ---------- formato binario ----------
+
+    /**
+     * Codifica binaria dell'header (una copia: il chiamante può azzerarla).
+     */
+    public static byte[] encode(VaultHeader header) {
+        byte[] encoded = header.encodedOrNull();
+        if (encoded == null) {
+            HeaderCodecEvent event = new HeaderCodecEvent();
+            event.begin();
+            long start = VaultMetrics.start();
+            encoded = encodeTlv(header, false);
+            header.setEncoded(encoded);
+            measured(event, Stage.HEADER_ENCODE, start, encoded.length);
+        }
+        return encoded.clone();
+    }
+
+    /**
+     * Legge un header binario o JSON direttamente dal buffer (anche direct/mappato), senza copiarlo.
+     *
+     * @throws IllegalArgumentException se l'header è malformato
+     */
+    public static VaultHeader decode(ByteBuffer buffer) {
+        if (buffer.remaining() > 0 && buffer.get(buffer.position()) == '{') {
+            return fromJson(buffer);
+        }
+        HeaderCodecEvent event = new HeaderCodecEvent();
+        event.begin();
+        long start = VaultMetrics.start();
+        int length = buffer.remaining();
+        VaultHeader header;
+        try {
+            header = decodeTlv(buffer.duplicate().order(ByteOrder.BIG_ENDIAN));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Header binario troncato");
+        }
+        measured(event, Stage.HEADER_DECODE, start, length);
+        return header;
+    }
+
+    private static byte[] encodeTlv(VaultHeader h, boolean bodyFieldsOnly) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        out.writeBytes(MAGIC);
+        out.write(FORMAT);
+        putInt(out, TAG_VERSION, h.getVersion());
+        if (!bodyFieldsOnly) {
+            putString(out, TAG_KDF_ALG, h.getKdfAlg());
+            putBytes(out, TAG_ENC_SALT, h.getEncSalt());
+            putInt(out, TAG_ENC_ITERATIONS, h.getEncIterations());
+        }
+        putInt(out, TAG_KEY_LEN, h.getKeyLenBytes());
+        putString(out, TAG_CIPHER_ALG, h.getCipherAlg());
+        putInt(out, TAG_IV_SIZE, h.getIvSizeBytes());
+        putInt(out, TAG_TAG_SIZE, h.getTagSizeBytes());
+        if (!bodyFieldsOnly) {
+            putString(out, TAG_AUTH_HASH, h.getStoredAuthHash());
+        }
+        putString(out, TAG_AAD_FORMAT, h.getAadFormat());
+        putString(out, TAG_LAYOUT, h.getLayout());
+        putString(out, TAG_PAYLOAD_CODEC, h.getPayloadCodec());
+        putString(out, TAG_COMPRESSION, h.getCompression());
+        if (!bodyFieldsOnly) {
+            if (h.getSequence() != null) {
+                putField(out, TAG_SEQUENCE, ByteBuffer.allocate(8).putLong(h.getSequence()).array());
+            }
+            putBytes(out, TAG_WRAPPED_KEY, h.getWrappedKey());
+        }
+        return out.toByteArray();
+    }
+
+    private static VaultHeader decodeTlv(ByteBuffer in) {
+        for (byte b : MAGIC) {
+            if (in.get() != b) {
+                throw new IllegalArgumentException("Header non riconosciuto (né JSON né binario)");
+            }
+        }
+        int format = in.get();
+        if (format != FORMAT) {
+            throw new IllegalArgumentException("Formato dell'header binario non supportato: " + format);
+        }
+
+        int version = 0, encIterations = 0, keyLen = 0, ivSize = 0, tagSize = 0;
+        String kdfAlg = null, cipherAlg = null, authHash = null, aadFormat = null;
+        String layout = null, payloadCodec = null, compression = null;
+        byte[] encSalt = null, wrappedKey = null;
+        Long sequence = null;
+
+        int lastTag = 0;
+        while (in.hasRemaining()) {
+            int tag = Byte.toUnsignedInt(in.get());
+            int len = Short.toUnsignedInt(in.getShort());
+            if (tag <= lastTag) {
+                throw new IllegalArgumentException("Tag dell'header fuori ordine o ripetuto: " + tag);
+            }
+            lastTag = tag;
+            ByteBuffer value = in.slice(in.position(), len);
+            in.position(in.position() + len);
+            switch (tag) {
+                case TAG_VERSION: version = intValue(value, tag); break;
+                case TAG_KDF_ALG: kdfAlg = stringValue(value); break;
+                case TAG_ENC_SALT: encSalt = bytesValue(value); break;
+                case TAG_ENC_ITERATIONS: encIterations = intValue(value, tag); break;
+                case TAG_KEY_LEN: keyLen = intValue(value, tag); break;
+                case TAG_CIPHER_ALG: cipherAlg = stringValue(value); break;
+                case TAG_IV_SIZE: ivSize = intValue(value, tag); break;
+                case TAG_TAG_SIZE: tagSize = intValue(value, tag); break;
+                case TAG_AUTH_HASH: authHash = stringValue(value); break;
+                case TAG_AAD_FORMAT: aadFormat = stringValue(value); break;
+                case TAG_LAYOUT: layout = stringValue(value); break;
+                case TAG_PAYLOAD_CODEC: payloadCodec = stringValue(value); break;
+                case TAG_COMPRESSION: compression = stringValue(value); break;
+                case TAG_SEQUENCE:
+                    if (len != 8) {
+                        throw new IllegalArgumentException("Lunghezza non valida per il tag " + tag + ": " + len);
+                    }
+                    sequence = value.getLong();
+                    break;
+                case TAG_WRAPPED_KEY: wrappedKey = bytesValue(value); break;
+                default:
+                    if (tag < FIRST_OPTIONAL_TAG) {
+                        throw new IllegalArgumentException("Campo obbligatorio sconosciuto nell'header: " + tag);
+                    }
+            }
+        }
+        if (lastTag < TAG_VERSION || version <= 0) {
+            throw new IllegalArgumentException("Versione mancante nell'header");
+        }
+        return new VaultHeader(version, kdfAlg, encSalt, encIterations, keyLen, cipherAlg, ivSize, tagSize,
+                authHash, aadFormat, layout, payloadCodec, compression, sequence, wrappedKey);
+    }
+
+    private static void putInt(ByteArrayOutputStream out, int tag, int value) {
+        putField(out, tag, ByteBuffer.allocate(4).putInt(value).array());
+    }
+
+    private static void putString(ByteArrayOutputStream out, int tag, String value) {
+        if (value != null) {
+            putField(out, tag, value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void putBytes(ByteArrayOutputStream out, int tag, byte[] value) {
+        if (value != null) {
+            putField(out, tag, value);
+        }
+    }
+
+    private static void putField(ByteArrayOutputStream out, int tag, byte[] value) {
+        if (value.length > 0xFFFF) {
+            throw new IllegalArgumentException("Campo dell'header troppo lungo: tag " + tag);
+        }
+        out.write(tag);
+        out.write(value.length >>> 8);
+        out.write(value.length);
+        out.writeBytes(value);
+    }
+
+    private static int intValue(ByteBuffer value, int tag) {
+        if (value.remaining() != 4) {
+            throw new IllegalArgumentException("Lunghezza non valida per il tag " + tag + ": " + value.remaining());
+        }
+        return value.getInt();
+    }
+
+    private static String stringValue(ByteBuffer value) {
+        return StandardCharsets.UTF_8.decode(value).toString();
+    }
+
+    private static byte[] bytesValue(ByteBuffer value) {
+        byte[] bytes = new byte[value.remaining()];
+        value.get(bytes);
+        return bytes;
+    }
+
+    // ---------- JSON (file precedenti e AAD dei vault con aadFormat JSON) ----------
 
     public static byte[] toJsonBytes(VaultHeader header) {
+        HeaderCodecEvent event = new HeaderCodecEvent();
+        event.begin();
+        long start = VaultMetrics.start();
+        byte[] json = jsonOf(new LegacyJsonHeader(header));
+        measured(event, Stage.HEADER_ENCODE, start, json.length);
+        return json;
+    }
+
+    public static VaultHeader fromJsonBytes(byte[] bytes) {
+        return fromJson(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Legge un header JSON direttamente da un buffer (anche direct/mappato), senza copiarlo in un array.
+     */
+    public static VaultHeader fromJson(ByteBuffer buffer) {
+        HeaderCodecEvent event = new HeaderCodecEvent();
+        event.begin();
+        long start = VaultMetrics.start();
         try {
-            return mapper.writeValueAsString(header).getBytes(StandardCharsets.UTF_8);
+            LegacyJsonHeader json = Json.read(buffer);
+            measured(event, Stage.HEADER_DECODE, start, buffer.remaining());
+            return json.toHeader();
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
-    public static VaultHeader fromJsonBytes(byte[] bytes) {
+    private static byte[] jsonOf(LegacyJsonHeader json) {
         try {
-            return mapper.readValue(bytes, VaultHeader.class);
+            return Json.mapper.writeValueAsString(json).getBytes(StandardCharsets.UTF_8);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    // ---------- AAD ----------
+
+    /**
+     * AAD del corpo, secondo l'aadFormat dell'header:
+     *  - {@link VaultHeader#AAD_FORMAT_TLV}: SHA-256 della codifica binaria dei soli campi del corpo
+     *    (senza i campi della password e senza sequence, che così si riscrivono senza ricifrare il corpo);
+     *  - {@link VaultHeader#AAD_FORMAT_BODY}: lo stesso sul JSON dell'header;
+     *  - altrimenti: SHA-256 del JSON dell'header completo.
+     * Calcolato una volta per header; ritorna una copia.
+     */
     public static byte[] aadOf(VaultHeader header) {
+        byte[] aad = header.aadOrNull();
+        if (aad == null) {
+            HeaderCodecEvent event = new HeaderCodecEvent();
+            event.begin();
+            long start = VaultMetrics.start();
+            byte[] bound;
+            if (VaultHeader.AAD_FORMAT_TLV.equals(header.getAadFormat())) {
+                bound = encodeTlv(header, true);
+            } else {
+                LegacyJsonHeader json = new LegacyJsonHeader(header);
+                if (VaultHeader.AAD_FORMAT_BODY.equals(header.getAadFormat())) {
+                    json.setKdfAlg(null);
+                    json.setEncSalt(null);
+                    json.setEncIterations(0);
+                    json.setStoredAuthHash(null);
+                    json.setWrappedKey(null);
+                    json.setSequence(null);
+                }
+                bound = jsonOf(json);
+            }
+            aad = sha256(bound);
+            header.setAad(aad);
+            measured(event, Stage.HEADER_AAD, start, bound.length);
+        }
+        return aad.clone();
+    }
+
+    private static byte[] sha256(byte[] data) {
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            return md.digest(toJsonBytes(header));
-        } catch (Exception e) {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException(e);
         }
     }
+
+    private static void measured(HeaderCodecEvent event, Stage stage, long start, long bytes) {
+        VaultMetrics.stop(stage, start);
+        if (event.shouldCommit()) {
+            event.operation = stage.name();
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
 }
@@ -0,0 +1,28 @@
+package com.etbasic.securityvault.core.model;
+
+/**
+ * Organizzazione del corpo del file vault (dopo l'header).
+ *
+ *  - SNAPSHOT: un unico blob IV || CIPHERTEXT || TAG con tutto il payload; ogni modifica riscrive il file.
+ *  - LOG: sequenza di record [4 byte BE len][IV || CIPHERTEXT || TAG], uno per mutazione
+ *    (aggiunta/modifica o tombstone di una entry), aggiunti in coda al file. Il caricamento
+ *    riesegue il log; la compattazione lo riscrive con un record per entry viva.
+ */
+public enum VaultLayout {
+    SNAPSHOT,
+    LOG;
+
+    /**
+     * Valore dell'header -> layout. {@code null} (header scritti prima del campo) = SNAPSHOT.
+     */
+    public static VaultLayout fromHeader(String value) {
+        if (value == null) {
+            return SNAPSHOT;
+        }
+        return valueOf(value.toUpperCase(java.util.Locale.ROOT));
+    }
+
+    public String headerValue() {
+        return name().toLowerCase(java.util.Locale.ROOT);
+    }
+}
@@ -1,24 +1,87 @@
 package com.etbasic.securityvault.core.model;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+/**
+ * Entry del vault indicizzate per id, in ordine di inserimento.
+ *
+ * get/put/remove per id costano O(1) indipendentemente dalla dimensione del vault.
+ * In JSON resta {"entries":[...]} come quando il payload era una lista.
+ */
 public class VaultPayload {
 
-    private List<VaultEntry> entries = new ArrayList<>();
+    private final Map<String, VaultEntry> entries = new LinkedHashMap<>();
 
     public VaultPayload() {
     }
 
-    public VaultPayload(List<VaultEntry> entries) {
-        this.entries = entries;
+    public VaultPayload(Collection<VaultEntry> entries) {
+        replaceEntries(entries);
     }
 
-    public List<VaultEntry> getEntries() {
-        return entries;
+    /**
+     * Vista in sola lettura, in ordine di inserimento; per modificare usare {@link #put} e {@link #remove}.
+     */
+    public Collection<VaultEntry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
     }
 
-    public void setEntries(List<VaultEntry> entries) {
-        this.entries = entries;
+    /**
+     * Sostituisce tutte le entry. Un id mancante o già visto (i vecchi id basati sui millisecondi
+     * potevano ripetersi) viene rimpiazzato con uno nuovo invece di perdere l'entry.
+     */
+    public void setEntries(Collection<VaultEntry> entries) {
+        replaceEntries(entries);
+    }
+
+    private void replaceEntries(Collection<VaultEntry> entries) {
+        this.entries.clear();
+        if (entries == null) {
+            return;
+        }
+        for (VaultEntry e : entries) {
+            if (e.getId() == null || this.entries.containsKey(e.getId())) {
+                e.setId(EntryIds.next());
+            }
+            this.entries.put(e.getId(), e);
+        }
+    }
+
+    /**
+     * @return l'entry con questo id, o {@code null}
+     */
+    public VaultEntry get(String id) {
+        return entries.get(id);
+    }
+
+    public boolean contains(String id) {
+        return entries.containsKey(id);
+    }
+
+    /**
+     * Aggiunge l'entry o sostituisce quella con lo stesso id (che mantiene la sua posizione).
+     * Un'entry senza id ne riceve uno da {@link EntryIds#next()}.
+     *
+     * @return l'entry sostituita, o {@code null}
+     */
+    public VaultEntry put(VaultEntry entry) {
+        if (entry.getId() == null) {
+            entry.setId(EntryIds.next());
+        }
+        return entries.put(entry.getId(), entry);
+    }
+
+    /**
+     * @return l'entry rimossa, o {@code null} se l'id non c'era
+     */
+    public VaultEntry remove(String id) {
+        return entries.remove(id);
+    }
+
+    public int size() {
+        return entries.size();
     }
 }
@@ -0,0 +1,47 @@
+package com.etbasic.securityvault.core.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Archivio dei blob degli allegati (già cifrati), separato dal file del vault.
+ * I blob si scrivono e si leggono a flusso, senza mai caricarli interi in memoria.
+ */
+public interface AttachmentStore {
+
+    /**
+     * Prepara la scrittura di un nuovo blob. Il blob diventa visibile solo dopo
+     * {@link BlobWriter#commit()}; chiudere il writer senza commit scarta i dati scritti.
+     */
+    BlobWriter create(String vault, String attachmentId) throws IOException;
+
+    /**
+     * Apre il blob in lettura. Lancia IOException se non esiste.
+     */
+    InputStream open(String vault, String attachmentId) throws IOException;
+
+    /**
+     * Rimuove un blob.
+     */
+    boolean delete(String vault, String attachmentId) throws IOException;
+
+    /**
+     * Rimuove tutti i blob del vault (es. quando il vault viene cancellato).
+     */
+    void deleteAll(String vault) throws IOException;
+
+    /**
+     * Scrittura in corso di un blob.
+     */
+    interface BlobWriter extends Closeable {
+
+        OutputStream stream();
+
+        /**
+         * Rende visibile il blob in modo atomico. Lo stream deve essere già chiuso.
+         */
+        void commit() throws IOException;
+    }
+}
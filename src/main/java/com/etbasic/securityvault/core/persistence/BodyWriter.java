@@ -0,0 +1,19 @@
+package com.etbasic.securityvault.core.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Scrive il corpo di un vault direttamente nel buffer preparato dallo store
+ * (vedi {@link VaultStore#write(String, VaultVersion, com.etbasic.securityvault.core.model.VaultHeader, int, BodyWriter)}),
+ * ad esempio cifrando sul posto, senza passare da un array intermedio.
+ */
+@FunctionalInterface
+public interface BodyWriter {
+
+    /**
+     * @param out buffer con esattamente la lunghezza dichiarata disponibile dalla posizione corrente;
+     *            va riempito tutto, avanzando la posizione
+     */
+    void writeTo(ByteBuffer out) throws IOException;
+}
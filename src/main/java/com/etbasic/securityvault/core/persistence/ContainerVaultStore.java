@@ -0,0 +1,776 @@
+package com.etbasic.securityvault.core.persistence;
+
+import com.etbasic.securityvault.core.metrics.Stage;
+import com.etbasic.securityvault.core.metrics.StoreEvent;
+import com.etbasic.securityvault.core.metrics.VaultMetrics;
+import com.etbasic.securityvault.core.model.VaultHeader;
+import com.etbasic.securityvault.core.model.VaultHeaderCodec;
+import com.etbasic.securityvault.core.persistence.FileVaultStore.VaultFile;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * VaultStore che tiene molti vault in un solo file contenitore: pensato per migliaia di vault piccoli,
+ * dove un file per vault costa in inode, scansioni della directory e open/fsync per file.
+ *
+ * Formato del contenitore:
+ *   [superblock, 4 KiB]  magic, versione del formato, numero di slot dell'indice
+ *   [indice]             {@code slots} voci fisse da 256 byte: due copie da 128 byte (A/B) per voce
+ *   [dati]               un'area per vault con l'immagine [4 byte BE headerLen] [header] [corpo],
+ *                        lo stesso formato di un file di {@link FileVaultStore}
+ *
+ * Una voce dell'indice (generazione, nome, offset e capacità dell'area, versione, CRC32C) non si
+ * sovrascrive mai: si scrive la copia più vecchia delle due con la generazione successiva e all'apertura
+ * vale la copia integra più recente. Una scrittura mette la nuova immagine in un'area libera e solo dopo
+ * aggiorna la voce, quindi un crash lascia la versione vecchia o quella nuova; l'area vecchia torna libera
+ * (e riusabile) solo dopo che la voce nuova è su disco. Questo ordine lo impongono le fsync: con
+ * {@link FileVaultStore.Durability#NONE} vale solo per un crash del processo, mentre dopo un crash del
+ * sistema la voce può puntare a un'immagine mai arrivata su disco, o a un'area già riusata.
+ *
+ * L'indice viene letto una volta all'apertura e tenuto in memoria: read, write e version vanno
+ * direttamente all'offset del vault con I/O posizionale, senza mai scorrere il contenitore.
+ * Ogni area ha un margine oltre l'immagine, così gli append (layout LOG) di solito restano sul posto.
+ * {@link #compact()} sposta i vault nelle aree libere più in basso e accorcia il file mentre lo store
+ * resta in uso.
+ *
+ * Il contenitore è di un solo processo alla volta (FileLock esclusivo fino a {@link #close()});
+ * dentro il processo lo store è thread-safe. Gli allegati stanno in {@code <contenitore>.att/}.
+ */
+public class ContainerVaultStore implements VaultStore, Closeable {
+
+    public static final int DEFAULT_SLOTS = 4096;
+
+    // il nome del vault è salvato nella voce dell'indice, in UTF-8
+    public static final int MAX_NAME_BYTES = 64;
+
+    private static final long MAGIC = 0x5356434F4E543031L; // "SVCONT01"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int SUPERBLOCK_SIZE = 4096;
+    private static final int RECORD_SIZE = 128;
+    private static final int SLOT_SIZE = 2 * RECORD_SIZE;
+    private static final int ALIGN = 512;
+
+    private static final byte STATE_FREE = 0;
+    private static final byte STATE_LIVE = 1;
+
+    /**
+     * Voce dell'indice in memoria.
+     */
+    private static final class Slot {
+        final int index;
+        int copy = 1;          // copia (0/1) con la generazione corrente
+        long generation;
+        String name;
+        long offset;
+        long capacity;
+        int headerLength;
+        VaultVersion version;
+
+        Slot(int index) {
+            this.index = index;
+        }
+
+        long length() {
+            return 4L + headerLength + version.getBodyLength();
+        }
+    }
+
+    private final File file;
+    private final FileChannel channel;
+    private final FileLock fileLock;
+    private final FileVaultStore.Durability durability;
+    private final FileAttachmentStore attachments;
+    private final int slotCount;
+    private final long dataStart;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Slot[] slots;
+    private final Map<String, Slot> byName = new HashMap<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    // aree libere della zona dati: offset -> dimensione, adiacenti sempre fuse
+    private final TreeMap<Long, Long> freeAreas = new TreeMap<>();
+    private long end;
+
+    /**
+     * Senza fsync ({@link FileVaultStore.Durability#NONE}).
+     */
+    public ContainerVaultStore(File file) throws IOException {
+        this(file, DEFAULT_SLOTS, FileVaultStore.Durability.NONE);
+    }
+
+    /**
+     * @param slots      numero massimo di vault; usato solo quando il contenitore viene creato,
+     *                   altrimenti vale quello scritto nel superblock
+     * @param durability DATA e FULL forzano su disco l'immagine prima della voce dell'indice e la voce prima
+     *                   di restituire; FULL forza anche la directory quando il contenitore viene creato.
+     *                   NONE non regge a un crash del sistema (vedi sopra): solo per dati ricostruibili e misure
+     */
+    public ContainerVaultStore(File file, int slots, FileVaultStore.Durability durability) throws IOException {
+        if (slots <= 0) {
+            throw new IllegalArgumentException("Numero di slot non valido: " + slots);
+        }
+        this.file = file;
+        this.durability = durability;
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists()) {
+            parent.mkdirs();
+        }
+        boolean created = !file.exists();
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            this.fileLock = tryLock(channel);
+            if (fileLock == null) {
+                throw new IOException("Contenitore già aperto da un altro store: " + file.getPath());
+            }
+            if (created || channel.size() == 0) {
+                this.slotCount = slots;
+                writeSuperblock();
+                if (durability == FileVaultStore.Durability.FULL) {
+                    SyncGroup.force(parent.toPath());
+                }
+            } else {
+                this.slotCount = readSuperblock();
+            }
+            this.dataStart = align((long) SUPERBLOCK_SIZE + (long) slotCount * SLOT_SIZE, SUPERBLOCK_SIZE);
+            this.slots = new Slot[slotCount];
+            loadIndex();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        this.attachments = new FileAttachmentStore(new File(file.getPath() + ".att"), durability);
+    }
+
+    // un secondo store sullo stesso contenitore nella stessa JVM vale come un altro processo
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    // ---------- superblock e indice ----------
+
+    private void writeSuperblock() throws IOException {
+        ByteBuffer sb = ByteBuffer.allocate(SUPERBLOCK_SIZE).order(ByteOrder.BIG_ENDIAN);
+        sb.putLong(MAGIC).putInt(FORMAT_VERSION).putInt(slotCount);
+        sb.putInt(16, WriteJournal.checksum(ByteBuffer.wrap(sb.array(), 0, 16)));
+        sb.clear();
+        writeFully(sb, 0);
+        force();
+    }
+
+    private int readSuperblock() throws IOException {
+        ByteBuffer sb = ByteBuffer.allocate(20).order(ByteOrder.BIG_ENDIAN);
+        readFully(sb, 0);
+        if (sb.getLong(0) != MAGIC) {
+            throw new IllegalArgumentException("Non è un contenitore di vault: " + file.getPath());
+        }
+        if (sb.getInt(16) != WriteJournal.checksum(ByteBuffer.wrap(sb.array(), 0, 16))) {
+            throw new IllegalArgumentException("Superblock corrotto: " + file.getPath());
+        }
+        if (sb.getInt(8) != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Versione del contenitore non supportata: " + sb.getInt(8));
+        }
+        return sb.getInt(12);
+    }
+
+    /**
+     * Legge l'intero indice con una sola lettura e ricostruisce in memoria nomi, slot liberi e aree libere.
+     */
+    private void loadIndex() throws IOException {
+        ByteBuffer index = ByteBuffer.allocate(slotCount * SLOT_SIZE).order(ByteOrder.BIG_ENDIAN);
+        if (channel.size() >= SUPERBLOCK_SIZE + (long) index.capacity()) {
+            readFully(index, SUPERBLOCK_SIZE);
+        }
+        List<Slot> live = new ArrayList<>();
+        for (int i = 0; i < slotCount; i++) {
+            Slot slot = new Slot(i);
+            boolean isLive = false;
+            for (int copy = 0; copy < 2; copy++) {
+                ByteBuffer rec = index.slice(i * SLOT_SIZE + copy * RECORD_SIZE, RECORD_SIZE)
+                        .order(ByteOrder.BIG_ENDIAN);
+                long generation = rec.getLong(0);
+                if (generation <= slot.generation
+                        || rec.getInt(RECORD_SIZE - 4) != WriteJournal.checksum(rec.slice(0, RECORD_SIZE - 4))) {
+                    continue;
+                }
+                slot.copy = copy;
+                slot.generation = generation;
+                isLive = rec.get(8) == STATE_LIVE;
+                if (isLive) {
+                    decode(rec, slot);
+                } else {
+                    slot.name = null;
+                    slot.version = null;
+                }
+            }
+            slots[i] = slot;
+            if (isLive) {
+                live.add(slot);
+                byName.put(slot.name, slot);
+            } else {
+                freeSlots.add(i);
+            }
+        }
+
+        // le aree libere sono i buchi tra le aree dei vault vivi
+        live.sort(Comparator.comparingLong(s -> s.offset));
+        long pos = dataStart;
+        for (Slot slot : live) {
+            if (slot.offset > pos) {
+                freeAreas.put(pos, slot.offset - pos);
+            }
+            pos = Math.max(pos, slot.offset + slot.capacity);
+        }
+        end = pos;
+    }
+
+    private static void decode(ByteBuffer rec, Slot slot) {
+        int nameLen = Byte.toUnsignedInt(rec.get(9));
+        byte[] name = new byte[nameLen];
+        rec.get(10, name);
+        slot.name = new String(name, StandardCharsets.UTF_8);
+        slot.offset = rec.getLong(74);
+        slot.capacity = rec.getLong(82);
+        slot.version = new VaultVersion(rec.getLong(90), rec.getLong(98));
+        slot.headerLength = rec.getInt(106);
+    }
+
+    /**
+     * Scrive la voce nella copia non corrente con la generazione successiva, poi aggiorna lo slot in memoria.
+     * {@code name == null} libera la voce.
+     */
+    private void writeRecord(Slot slot, String name, long offset, long capacity, int headerLength,
+                             VaultVersion version) throws IOException {
+        ByteBuffer rec = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.BIG_ENDIAN);
+        long generation = slot.generation + 1;
+        rec.putLong(0, generation);
+        rec.put(8, name != null ? STATE_LIVE : STATE_FREE);
+        if (name != null) {
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            rec.put(9, (byte) nameBytes.length);
+            rec.put(10, nameBytes);
+            rec.putLong(74, offset);
+            rec.putLong(82, capacity);
+            rec.putLong(90, version.getSequence());
+            rec.putLong(98, version.getBodyLength());
+            rec.putInt(106, headerLength);
+        }
+        rec.putInt(RECORD_SIZE - 4, WriteJournal.checksum(rec.slice(0, RECORD_SIZE - 4)));
+        int copy = 1 - slot.copy;
+        writeFully(rec, SUPERBLOCK_SIZE + (long) slot.index * SLOT_SIZE + (long) copy * RECORD_SIZE);
+        force();
+
+        slot.copy = copy;
+        slot.generation = generation;
+        slot.name = name;
+        slot.offset = offset;
+        slot.capacity = capacity;
+        slot.headerLength = headerLength;
+        slot.version = version;
+    }
+
+    // ---------- VaultStore ----------
+
+    @Override
+    public void write(String filename, VaultHeader header, byte[] ciphertext) throws IOException {
+        measured(Stage.STORE_WRITE, filename, ciphertext.length,
+                () -> writeImage(filename, null, header, ciphertext.length, out -> out.put(ciphertext)));
+    }
+
+    @Override
+    public void write(String filename, VaultVersion expected, VaultHeader header, byte[] ciphertext)
+            throws IOException {
+        Objects.requireNonNull(expected, "expected");
+        measured(Stage.STORE_WRITE, filename, ciphertext.length,
+                () -> writeImage(filename, expected, header, ciphertext.length, out -> out.put(ciphertext)));
+    }
+
+    /**
+     * Il corpo viene scritto da {@code body} direttamente nell'immagine, dopo lunghezza e header.
+     */
+    @Override
+    public void write(String filename, VaultVersion expected, VaultHeader header, int bodyLength, BodyWriter body)
+            throws IOException {
+        measured(Stage.STORE_WRITE, filename, bodyLength,
+                () -> writeImage(filename, expected, header, bodyLength, body));
+    }
+
+    /**
+     * Nel contenitore l'immagine va comunque riscritta altrove (la voce dell'indice è l'unico punto
+     * di commit), ma il corpo viene copiato così com'è, senza passare dalla cifratura.
+     */
+    @Override
+    public void writeHeader(String filename, VaultVersion expected, VaultHeader header) throws IOException {
+        Objects.requireNonNull(expected, "expected");
+        measured(Stage.STORE_WRITE_HEADER, filename, expected.getBodyLength(),
+                () -> rewriteHeader(filename, expected, header));
+    }
+
+    private void rewriteHeader(String filename, VaultVersion expected, VaultHeader header) throws IOException {
+        byte[] body;
+        lock.readLock().lock();
+        try {
+            Slot slot = checkVersion(filename, expected);
+            body = new byte[(int) expected.getBodyLength()];
+            readFully(ByteBuffer.wrap(body), slot.offset + 4 + slot.headerLength);
+        } finally {
+            lock.readLock().unlock();
+        }
+        writeImage(filename, expected, header, body.length, out -> out.put(body));
+    }
+
+    /**
+     * L'immagine nuova va in un'area riservata fuori dal lock; il lock in scrittura copre solo il
+     * controllo di versione, la voce dell'indice e il rilascio dell'area vecchia.
+     */
+    private void writeImage(String filename, VaultVersion expected, VaultHeader header, int bodyLength,
+                            BodyWriter body) throws IOException {
+        checkName(filename);
+        byte[] headerBytes = VaultHeaderCodec.encode(header);
+        ByteBuffer image = ByteBuffer.allocate(4 + headerBytes.length + bodyLength)
+                .order(ByteOrder.BIG_ENDIAN);
+        image.putInt(headerBytes.length).put(headerBytes);
+        ByteBuffer bodyOut = image.slice();
+        body.writeTo(bodyOut);
+        VaultStore.checkWritten(bodyOut, bodyLength);
+        image.clear();
+        VaultVersion version = VaultVersion.of(header, bodyLength);
+        long capacity = capacityFor(image.remaining());
+
+        long offset;
+        lock.writeLock().lock();
+        try {
+            if (expected != null) {
+                // controllo anticipato: una versione già superata non scrive l'immagine
+                checkVersion(filename, expected);
+            }
+            offset = allocate(capacity);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        boolean committed = false;
+        try {
+            writeFully(image, offset);
+            force();
+            lock.writeLock().lock();
+            try {
+                Slot slot = (expected != null) ? checkVersion(filename, expected) : byName.get(filename);
+                if (slot == null) {
+                    slot = takeFreeSlot(filename);
+                }
+                long oldOffset = slot.offset;
+                long oldCapacity = slot.capacity;
+                boolean wasLive = slot.name != null;
+                writeRecord(slot, filename, offset, capacity, headerBytes.length, version);
+                committed = true;
+                byName.put(filename, slot);
+                if (wasLive) {
+                    release(oldOffset, oldCapacity);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            if (!committed) {
+                lock.writeLock().lock();
+                try {
+                    release(offset, capacity);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            Arrays.fill(headerBytes, (byte) 0);
+        }
+    }
+
+    @Override
+    public void append(String filename, byte[] data) throws IOException {
+        measured(Stage.STORE_APPEND, filename, data.length, () -> appendImage(filename, null, data));
+    }
+
+    @Override
+    public void append(String filename, VaultVersion expected, byte[] data) throws IOException {
+        Objects.requireNonNull(expected, "expected");
+        measured(Stage.STORE_APPEND, filename, data.length, () -> appendImage(filename, expected, data));
+    }
+
+    /**
+     * Se il margine dell'area basta, i byte si scrivono sul posto dopo l'immagine (oltre la lunghezza
+     * registrata, quindi senza toccare dati vivi) e poi si aggiorna la voce; altrimenti l'immagine
+     * viene spostata in un'area più grande.
+     */
+    private void appendImage(String filename, VaultVersion expected, byte[] data) throws IOException {
+        lock.writeLock().lock();
+        try {
+            Slot slot = (expected != null) ? checkVersion(filename, expected) : byName.get(filename);
+            if (slot == null) {
+                throw new NoSuchFileException(filename);
+            }
+            long length = slot.length();
+            VaultVersion version = slot.version.appended(data.length);
+            if (length + data.length <= slot.capacity) {
+                writeFully(ByteBuffer.wrap(data), slot.offset + length);
+                force();
+                writeRecord(slot, filename, slot.offset, slot.capacity, slot.headerLength, version);
+                return;
+            }
+
+            long capacity = capacityFor(length + data.length);
+            long offset = allocate(capacity);
+            boolean committed = false;
+            try {
+                copy(slot.offset, offset, length);
+                writeFully(ByteBuffer.wrap(data), offset + length);
+                force();
+                long oldOffset = slot.offset;
+                long oldCapacity = slot.capacity;
+                writeRecord(slot, filename, offset, capacity, slot.headerLength, version);
+                committed = true;
+                release(oldOffset, oldCapacity);
+            } finally {
+                if (!committed) {
+                    release(offset, capacity);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Una sola lettura posizionale dell'immagine; il lock in lettura impedisce che l'area venga
+     * liberata e riusata mentre la si legge.
+     */
+    @Override
+    public VaultFile read(String filename) throws IOException {
+        StoreEvent event = new StoreEvent();
+        event.begin();
+        long start = VaultMetrics.start();
+        ByteBuffer image;
+        lock.readLock().lock();
+        try {
+            Slot slot = byName.get(filename);
+            if (slot == null) {
+                throw new NoSuchFileException(filename);
+            }
+            image = ByteBuffer.allocate((int) slot.length());
+            readFully(image, slot.offset);
+        } finally {
+            lock.readLock().unlock();
+        }
+        image.flip();
+        VaultFile vf = FileVaultStore.parse(image);
+        committed(event, Stage.STORE_READ, start, filename, image.capacity());
+        return vf;
+    }
+
+    /**
+     * Dall'indice in memoria, senza I/O.
+     */
+    @Override
+    public VaultVersion version(String filename) {
+        lock.readLock().lock();
+        try {
+            Slot slot = byName.get(filename);
+            return (slot != null) ? slot.version : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean exists(String filename) {
+        return version(filename) != null;
+    }
+
+    @Override
+    public List<String> list() {
+        lock.readLock().lock();
+        try {
+            List<String> names = new ArrayList<>(byName.keySet());
+            names.sort(null);
+            return names;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean delete(String filename) throws IOException {
+        lock.writeLock().lock();
+        try {
+            Slot slot = byName.get(filename);
+            if (slot == null) {
+                return false;
+            }
+            long offset = slot.offset;
+            long capacity = slot.capacity;
+            writeRecord(slot, null, 0, 0, 0, null);
+            byName.remove(filename);
+            freeSlots.add(slot.index);
+            release(offset, capacity);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        attachments.deleteAll(filename);
+        return true;
+    }
+
+    @Override
+    public AttachmentStore attachments() {
+        return attachments;
+    }
+
+    // ---------- metriche ----------
+
+    private static void measured(Stage stage, String filename, long bytes, FileVaultStore.Commit operation)
+            throws IOException {
+        StoreEvent event = new StoreEvent();
+        event.begin();
+        long start = VaultMetrics.start();
+        operation.run();
+        committed(event, stage, start, filename, bytes);
+    }
+
+    private static void committed(StoreEvent event, Stage stage, long start, String filename, long bytes) {
+        VaultMetrics.stop(stage, start);
+        if (event.shouldCommit()) {
+            event.operation = stage.name();
+            event.store = "container";
+            event.vault = filename;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    // ---------- compattazione ----------
+
+    /**
+     * Compattazione online: sposta uno alla volta il vault più in fondo nella prima area libera
+     * abbastanza grande più in basso, finché è possibile, poi accorcia il file. Il lock in scrittura
+     * è preso per un vault alla volta, quindi letture e scritture continuano tra uno spostamento e l'altro.
+     *
+     * @return byte restituiti al file system
+     */
+    public long compact() throws IOException {
+        long before;
+        lock.readLock().lock();
+        try {
+            before = channel.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+        while (moveLastDown()) {
+            // un vault per giro
+        }
+        lock.writeLock().lock();
+        try {
+            // release() non lascia aree libere in coda: oltre end il file non contiene vault
+            if (channel.size() > end) {
+                channel.truncate(end);
+                force();
+            }
+            return before - channel.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean moveLastDown() throws IOException {
+        lock.writeLock().lock();
+        try {
+            Slot last = null;
+            for (Slot slot : byName.values()) {
+                if (last == null || slot.offset > last.offset) {
+                    last = slot;
+                }
+            }
+            if (last == null) {
+                return false;
+            }
+            Long target = firstFit(last.capacity);
+            if (target == null || target >= last.offset) {
+                return false;
+            }
+            take(target, last.capacity);
+            boolean committed = false;
+            try {
+                copy(last.offset, target, last.length());
+                force();
+                long oldOffset = last.offset;
+                writeRecord(last, last.name, target, last.capacity, last.headerLength, last.version);
+                committed = true;
+                release(oldOffset, last.capacity);
+            } finally {
+                if (!committed) {
+                    release(target, last.capacity);
+                }
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (channel.isOpen()) {
+                fileLock.release();
+                channel.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ---------- spazio libero (sotto il lock in scrittura) ----------
+
+    // margine del 25% per gli append, arrotondato ad ALIGN
+    private static long capacityFor(long length) {
+        return align(length + length / 4, ALIGN);
+    }
+
+    private static long align(long value, long to) {
+        return (value + to - 1) / to * to;
+    }
+
+    private Long firstFit(long size) {
+        for (Map.Entry<Long, Long> area : freeAreas.entrySet()) {
+            if (area.getValue() >= size) {
+                return area.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Prima area libera abbastanza grande, dal basso; altrimenti in coda al file.
+     */
+    private long allocate(long size) {
+        Long offset = firstFit(size);
+        if (offset == null) {
+            offset = end;
+            end += size;
+            return offset;
+        }
+        take(offset, size);
+        return offset;
+    }
+
+    private void take(long offset, long size) {
+        long areaSize = freeAreas.remove(offset);
+        if (areaSize > size) {
+            freeAreas.put(offset + size, areaSize - size);
+        }
+    }
+
+    private void release(long offset, long size) {
+        Map.Entry<Long, Long> prev = freeAreas.floorEntry(offset);
+        if (prev != null && prev.getKey() + prev.getValue() == offset) {
+            freeAreas.remove(prev.getKey());
+            offset = prev.getKey();
+            size += prev.getValue();
+        }
+        Long next = freeAreas.get(offset + size);
+        if (next != null) {
+            freeAreas.remove(offset + size);
+            size += next;
+        }
+        if (offset + size == end) {
+            end = offset;
+        } else {
+            freeAreas.put(offset, size);
+        }
+    }
+
+    private Slot takeFreeSlot(String filename) throws IOException {
+        Integer index = freeSlots.poll();
+        if (index == null) {
+            throw new IOException("Contenitore pieno (" + slotCount + " vault): impossibile aggiungere " + filename);
+        }
+        return slots[index];
+    }
+
+    private Slot checkVersion(String filename, VaultVersion expected) throws VaultConflictException {
+        Slot slot = byName.get(filename);
+        VaultVersion actual = (slot != null) ? slot.version : null;
+        if (!expected.equals(actual)) {
+            throw new VaultConflictException(filename, expected, actual);
+        }
+        return slot;
+    }
+
+    private static void checkName(String filename) {
+        int length = filename.getBytes(StandardCharsets.UTF_8).length;
+        if (length == 0 || length > MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("Nome del vault vuoto o più lungo di " + MAX_NAME_BYTES
+                    + " byte: " + filename);
+        }
+    }
+
+    // ---------- I/O posizionale ----------
+
+    private void copy(long from, long to, long length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate((int) Math.min(length, 64 * 1024));
+        for (long done = 0; done < length; ) {
+            buf.clear().limit((int) Math.min(buf.capacity(), length - done));
+            readFully(buf, from + done);
+            buf.flip();
+            writeFully(buf, to + done);
+            done += buf.limit();
+        }
+    }
+
+    private void force() throws IOException {
+        if (durability != FileVaultStore.Durability.NONE) {
+            channel.force(false);
+        }
+    }
+
+    private void writeFully(ByteBuffer buf, long position) throws IOException {
+        long pos = position;
+        while (buf.hasRemaining()) {
+            pos += channel.write(buf, pos);
+        }
+    }
+
+    private void readFully(ByteBuffer buf, long position) throws IOException {
+        long pos = position;
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, pos);
+            if (n < 0) {
+                throw new IllegalArgumentException("Contenitore troncato: " + file.getPath());
+            }
+            pos += n;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.etbasic.securityvault.core.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * AttachmentStore su file system: i blob del vault "nome" stanno in {@code <dir>/nome.att/<attachmentId>}.
+ * La scrittura passa da un file temporaneo in {@code <dir>/.staging/}, poi rename atomico (come FileVaultStore),
+ * con le stesse fsync del vault (vedi {@link FileVaultStore.Durability}): il blob è durevole prima che
+ * il vault lo referenzi.
+ */
+public class FileAttachmentStore implements AttachmentStore {
+
+    private static final String DIR_SUFFIX = ".att";
+
+    private final File dir;
+    private final FileVaultStore.Durability durability;
+
+    public FileAttachmentStore(File dir) {
+        this(dir, FileVaultStore.Durability.NONE);
+    }
+
+    public FileAttachmentStore(File dir, FileVaultStore.Durability durability) {
+        this.dir = dir;
+        this.durability = durability;
+    }
+
+    @Override
+    public BlobWriter create(String vault, String attachmentId) throws IOException {
+        Path target = blobPath(vault, attachmentId);
+        Files.createDirectories(target.getParent());
+        // lo staging è condiviso con FileVaultStore, che all'avvio ne elimina i temporanei abbandonati
+        Path staging = Files.createDirectories(dir.toPath().resolve(FileVaultStore.STAGING_DIR));
+        Path tmp = Files.createTempFile(staging, "att", ".tmp");
+        FileChannel ch;
+        try {
+            ch = FileVaultStore.openStaged(tmp);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(ch));
+        return new FileBlobWriter(tmp, target, ch, out);
+    }
+
+    @Override
+    public InputStream open(String vault, String attachmentId) throws IOException {
+        return new BufferedInputStream(Files.newInputStream(blobPath(vault, attachmentId)));
+    }
+
+    @Override
+    public boolean delete(String vault, String attachmentId) throws IOException {
+        return Files.deleteIfExists(blobPath(vault, attachmentId));
+    }
+
+    @Override
+    public void deleteAll(String vault) throws IOException {
+        Path vaultDir = vaultDir(vault);
+        if (!Files.isDirectory(vaultDir)) {
+            return;
+        }
+        try (DirectoryStream<Path> blobs = Files.newDirectoryStream(vaultDir)) {
+            for (Path blob : blobs) {
+                Files.deleteIfExists(blob);
+            }
+        }
+        Files.deleteIfExists(vaultDir);
+    }
+
+    private Path vaultDir(String vault) {
+        return dir.toPath().resolve(vault + DIR_SUFFIX);
+    }
+
+    private Path blobPath(String vault, String attachmentId) {
+        if (attachmentId == null || attachmentId.isEmpty()
+                || attachmentId.contains("/") || attachmentId.contains("\\") || attachmentId.startsWith(".")) {
+            throw new IllegalArgumentException("Id allegato non valido: " + attachmentId);
+        }
+        return vaultDir(vault).resolve(attachmentId);
+    }
+
+    private final class FileBlobWriter implements BlobWriter {
+        private final Path tmp;
+        private final Path target;
+        private final FileChannel channel;
+        private final OutputStream out;
+        private boolean committed;
+
+        FileBlobWriter(Path tmp, Path target, FileChannel channel, OutputStream out) {
+            this.tmp = tmp;
+            this.target = target;
+            this.channel = channel;
+            this.out = out;
+        }
+
+        /**
+         * Chi scrive chiude lo stream prima di commit (es. lo stream cifrante chiude anche quello
+         * sottostante): qui la chiusura fa solo flush, così commit trova il canale ancora aperto per
+         * la fsync. Il canale lo chiude close, anche dopo il commit.
+         */
+        @Override
+        public OutputStream stream() {
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    out.flush();
+                }
+            };
+        }
+
+        @Override
+        public void commit() throws IOException {
+            out.flush();
+            if (durability != FileVaultStore.Durability.NONE) {
+                channel.force(true);
+            }
+            // il canale (e il suo lock) resta aperto fino a close: il temporaneo non è un orfano finché c'è il rename
+            try {
+                Files.move(tmp, target,
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (Exception e) {
+                // Se ATOMIC_MOVE non è supportato, esegui rename non-atomico come fallback
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            committed = true;
+            if (durability == FileVaultStore.Durability.FULL) {
+                SyncGroup.force(target.getParent());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (!committed) {
+                    Files.deleteIfExists(tmp);
+                }
+                out.close();
+            } finally {
+                FileVaultStore.closeStaged(tmp, channel);
+            }
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.etbasic.securityvault.core.persistence;
 
+import com.etbasic.securityvault.core.metrics.Stage;
+import com.etbasic.securityvault.core.metrics.StoreEvent;
+import com.etbasic.securityvault.core.metrics.VaultMetrics;
 import com.etbasic.securityvault.core.model.VaultHeader;
 import com.etbasic.securityvault.core.model.VaultHeaderCodec;
 
@@ -7,47 +10,193 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
 
 /**
  * Semplice FileVaultStore didattico.
- * Formato del file sul disco: [4 byte BE headerLen] [headerJsonBytes] [ciphertext||tag (blob)]
+ * Formato del file sul disco: [4 byte BE headerLen] [header] [corpo]
+ * dove l'header è binario (JSON nei file precedenti, vedi {@link VaultHeaderCodec}) e il corpo è
+ * il blob IV||ciphertext||tag oppure, nel layout LOG, la sequenza di record.
  *
- * Questa classe espone funzioni minimali: write, read, delete, exists.
+ * Questa classe espone funzioni minimali: write, append, read, delete, exists.
  * È pensata per essere semplice e leggibile, non per produzione.
+ *
+ * Più processi possono usare la stessa directory: ogni scrittura prende un lock esclusivo
+ * (FileChannel.lock) sul file {@code .<filename>.lock}, solo per il tempo del controllo di versione
+ * e del rename / append. Le letture non prendono lock: il rename atomico garantisce che vedano
+ * sempre un file completo (al più con un record incompleto in coda nel layout LOG).
+ *
+ * Le fsync dipendono dalla {@link Durability} scelta; con il group commit le scritture concorrenti
+ * condividono le fsync della directory e dei vault in append.
+ *
+ * I file temporanei stanno in {@code <dir>/.staging/} e ogni rename è preceduto da un intento nel
+ * journal della directory (vedi {@link WriteJournal}). Il costruttore esegue il recupero: completa
+ * o scarta le scritture interrotte da un crash ed elimina i temporanei abbandonati, cioè quelli di cui
+ * nessuno scrittore tiene più il FileLock (vedi {@link #getRecoveryReport()}).
  */
 public class FileVaultStore implements VaultStore {
 
+    /**
+     * Come {@link #read} carica il file.
+     *  - HEAP: una sola lettura su heap; header e ciphertext sono viste (slice) dello stesso array.
+     *  - MAPPED: il file viene mappato con FileChannel.map; header e ciphertext sono slice della
+     *    mappatura, quindi il ciphertext non passa mai dall'heap. Usato solo per file di almeno
+     *    {@link #MAPPED_MIN_SIZE} byte (per i file piccoli mappare costa più che leggere).
+     */
+    public enum ReadMode {
+        HEAP,
+        MAPPED
+    }
+
+    /**
+     * Quanto una scrittura è durevole quando write/append ritornano.
+     *  - NONE: nessuna fsync. Dopo un crash del sistema (non solo del processo) il vault può risultare
+     *    vuoto, troncato o vecchio.
+     *  - DATA: il file temporaneo è forzato su disco prima del rename (e il vault dopo ogni append):
+     *    dopo un crash si trova la versione vecchia o quella nuova, mai un file vuoto o a metà.
+     *  - FULL: come DATA, più la fsync della directory dopo il rename, che rende durevole anche il rename
+     *    (e la cancellazione). Su Windows la directory non si può forzare ed equivale a DATA.
+     */
+    public enum Durability {
+        NONE,
+        DATA,
+        FULL
+    }
+
+    // sotto questa dimensione anche in modalità MAPPED si legge su heap
+    public static final long MAPPED_MIN_SIZE = 64 * 1024;
+
+    // directory dei file temporanei (vault e allegati), sullo stesso file system dei vault
+    static final String STAGING_DIR = ".staging";
+
+    // un temporaneo più giovane può essere appena stato creato e non ancora bloccato dal suo scrittore
+    private static final long ORPHAN_MIN_AGE_MILLIS = 60_000;
+
+    // FileLock vale per l'intero processo: tra thread della stessa JVM serve anche un lock locale
+    private static final ConcurrentHashMap<Path, ReentrantLock> COMMIT_LOCKS = new ConcurrentHashMap<>();
+
+    // temporanei in scrittura in questa JVM: il recupero non li apre nemmeno (chiudere un canale
+    // sullo stesso file rilascerebbe il FileLock dello scrittore)
+    private static final Set<Path> STAGED = ConcurrentHashMap.newKeySet();
+
     private final File dir;
+    private final FileAttachmentStore attachments;
+    private final ReadMode readMode;
+    private final Durability durability;
+    private final boolean groupCommit;
+    private final Path staging;
+    private final WriteJournal journal;
+    private final RecoveryReport recovery;
 
     public FileVaultStore(File dir) {
+        this(dir, ReadMode.HEAP);
+    }
+
+    /**
+     * Senza fsync ({@link Durability#NONE}).
+     *
+     * @param readMode su Windows MAPPED equivale a HEAP: un file mappato non può essere sostituito
+     *                 con rename finché la mappatura è viva, e in Java non si può rilasciarla esplicitamente
+     */
+    public FileVaultStore(File dir, ReadMode readMode) {
+        this(dir, readMode, Durability.NONE, false);
+    }
+
+    /**
+     * @param durability  fsync eseguite da ogni scrittura
+     * @param groupCommit se true, le fsync della directory (FULL) e dei vault dopo un append vengono
+     *                    condivise tra le scritture concorrenti, anche di store diversi sulla stessa directory
+     *                    (vedi {@link SyncGroup}); quella del file temporaneo resta per scrittura
+     */
+    public FileVaultStore(File dir, ReadMode readMode, Durability durability, boolean groupCommit) {
         this.dir = dir;
+        this.readMode = isWindows() ? ReadMode.HEAP : readMode;
+        this.durability = durability;
+        this.groupCommit = groupCommit;
         if (!dir.exists()) {
             dir.mkdirs();
         }
         if (!dir.isDirectory()) {
             throw new IllegalArgumentException("Provided path is not a directory: " + dir.getPath());
         }
+        this.attachments = new FileAttachmentStore(dir, durability);
+        this.staging = dir.toPath().resolve(STAGING_DIR);
+        this.journal = new WriteJournal(dir.toPath());
+        try {
+            this.recovery = recover();
+        } catch (IOException e) {
+            throw new RuntimeException("Recupero fallito nella directory " + dir.getPath(), e);
+        }
     }
 
     public static class VaultFile {
         private final VaultHeader header;
-        private final byte[] ciphertext;
+        private final ByteBuffer ciphertext;
+        private final VaultVersion version;
 
         public VaultFile(VaultHeader header, byte[] ciphertext) {
+            this(header, ByteBuffer.wrap(ciphertext));
+        }
+
+        /**
+         * @param ciphertext corpo del file; può essere una slice di un array più grande o di una mappatura
+         */
+        public VaultFile(VaultHeader header, ByteBuffer ciphertext) {
             this.header = header;
             this.ciphertext = ciphertext;
+            this.version = VaultVersion.of(header, ciphertext.remaining());
         }
 
         public VaultHeader getHeader() {
             return header;
         }
 
+        /**
+         * Corpo del file come array. Se il buffer non coincide con un array intero viene fatta una copia:
+         * per evitarla usare {@link #getCiphertextBuffer()}.
+         */
         public byte[] getCiphertext() {
-            return ciphertext;
+            if (ciphertext.hasArray() && ciphertext.arrayOffset() == 0 && ciphertext.position() == 0
+                    && ciphertext.remaining() == ciphertext.array().length) {
+                return ciphertext.array();
+            }
+            byte[] copy = new byte[ciphertext.remaining()];
+            ciphertext.duplicate().get(copy);
+            return copy;
+        }
+
+        /**
+         * Corpo del file senza copie (sola lettura, posizione 0). Con ReadMode.MAPPED è una slice della mappatura.
+         */
+        public ByteBuffer getCiphertextBuffer() {
+            return ciphertext.asReadOnlyBuffer();
+        }
+
+        public boolean isMapped() {
+            return ciphertext.isDirect();
+        }
+
+        /**
+         * Versione letta, da passare alle scritture condizionali dello store.
+         */
+        public VaultVersion getVersion() {
+            return version;
         }
     }
 
@@ -56,77 +205,588 @@ public class FileVaultStore implements VaultStore {
      */
     @Override
     public void write(String filename, VaultHeader header, byte[] ciphertext) throws IOException {
-        byte[] headerBytes = VaultHeaderCodec.toJsonBytes(header);
+        writeFile(filename, null, header, ciphertext.length, out -> out.put(ciphertext));
+    }
+
+    /**
+     * Il file temporaneo viene scritto prima di prendere il lock, che copre solo il controllo
+     * della versione e il rename.
+     */
+    @Override
+    public void write(String filename, VaultVersion expected, VaultHeader header, byte[] ciphertext)
+            throws IOException {
+        writeFile(filename, Objects.requireNonNull(expected, "expected"), header, ciphertext.length,
+                out -> out.put(ciphertext));
+    }
+
+    /**
+     * Il corpo viene scritto da {@code body} direttamente nel buffer del file, dopo lunghezza e header.
+     */
+    @Override
+    public void write(String filename, VaultVersion expected, VaultHeader header, int bodyLength, BodyWriter body)
+            throws IOException {
+        writeFile(filename, expected, header, bodyLength, body);
+    }
+
+    private void writeFile(String filename, VaultVersion expected, VaultHeader header, int bodyLength,
+                           BodyWriter body) throws IOException {
+        StoreEvent event = new StoreEvent();
+        event.begin();
+        long start = VaultMetrics.start();
+        if (expected != null) {
+            // controllo anticipato senza lock: una versione già superata non paga scrittura e fsync del tmp
+            checkVersion(filename, expected);
+        }
+        VaultVersion after = VaultVersion.of(header, bodyLength);
+        byte[] headerBytes = VaultHeaderCodec.encode(header);
         int headerLen = headerBytes.length;
 
         ByteBuffer out = ByteBuffer
-                .allocate(4 + headerLen + ciphertext.length)
+                .allocate(4 + headerLen + bodyLength)
                 .order(ByteOrder.BIG_ENDIAN);
 
         out.putInt(headerLen);
         out.put(headerBytes);
-        out.put(ciphertext);
         byte[] bytes = out.array();
+        ByteBuffer bodyOut = out.slice();
+        body.writeTo(bodyOut);
+        VaultStore.checkWritten(bodyOut, bodyLength);
+        int checksum = WriteJournal.checksum(ByteBuffer.wrap(bytes, 0, 4 + headerLen));
 
         Path target = dir.toPath().resolve(filename);
 
         // Write to temp file then atomically move
-        Path tmp = Files.createTempFile(dir.toPath(), "vault", ".tmp");
+        Path tmp = Files.createTempFile(staging, "vault", ".tmp");
+        WriteJournal.Intent[] intent = new WriteJournal.Intent[1];
+        FileChannel ch = null;
         try {
-            Files.write(tmp, bytes);
-            try {
-                Files.move(tmp, target,
-                        StandardCopyOption.ATOMIC_MOVE,
-                        StandardCopyOption.REPLACE_EXISTING);
-            } catch (Exception e) {
-                // Se ATOMIC_MOVE non è supportato, esegui rename non-atomico come fallback
-                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            ch = openStaged(tmp);
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            while (buf.hasRemaining()) {
+                ch.write(buf);
             }
+            forceTemp(ch);
+            locked(filename, () -> {
+                VaultVersion before = (expected != null)
+                        ? checkVersion(filename, expected)
+                        : readableVersion(target);
+                intent[0] = logIntent(filename, tmp, before, after, checksum);
+                moveIntoPlace(tmp, target);
+            });
+            syncDirectory();
+            journal.end(intent[0]);
+            measured(event, Stage.STORE_WRITE, start, filename, bytes.length);
         } finally {
             // cerca di eliminare il tmp se esiste ancora
             try {
                 Files.deleteIfExists(tmp);
             } catch (Exception ignored) {
             }
+            closeStaged(tmp, ch);
             // azzera l'array temporaneo per buona pratica
             Arrays.fill(bytes, (byte) 0);
             Arrays.fill(headerBytes, (byte) 0);
         }
     }
 
+    /**
+     * Il file viene comunque riscritto (l'header può cambiare lunghezza e la sostituzione deve restare
+     * atomica), ma il corpo è copiato dal kernel con transferTo, senza passare dall'heap né dalla cifratura.
+     */
+    @Override
+    public void writeHeader(String filename, VaultVersion expected, VaultHeader header) throws IOException {
+        Objects.requireNonNull(expected, "expected");
+        StoreEvent event = new StoreEvent();
+        event.begin();
+        long start = VaultMetrics.start();
+        byte[] headerBytes = VaultHeaderCodec.encode(header);
+        VaultVersion after = VaultVersion.of(header, expected.getBodyLength());
+        Path target = dir.toPath().resolve(filename);
+        Path tmp = Files.createTempFile(staging, "vault", ".tmp");
+        WriteJournal.Intent[] intent = new WriteJournal.Intent[1];
+        int checksum;
+        FileChannel dst = null;
+        try {
+            dst = openStaged(tmp);
+            try (FileChannel src = FileChannel.open(target, StandardOpenOption.READ)) {
+                // se il file viene sostituito nel frattempo il canale continua a leggere questa versione,
+                // e il controllo sotto lock se ne accorge
+                VaultVersion actual = versionOf(src);
+                if (!expected.equals(actual)) {
+                    throw new VaultConflictException(filename, expected, actual);
+                }
+                ByteBuffer prefix = ByteBuffer.allocate(4 + headerBytes.length).order(ByteOrder.BIG_ENDIAN);
+                prefix.putInt(headerBytes.length).put(headerBytes).flip();
+                checksum = WriteJournal.checksum(prefix.duplicate());
+                while (prefix.hasRemaining()) {
+                    dst.write(prefix);
+                }
+                long pos = 4 + headerLength(src);
+                long end = pos + expected.getBodyLength();
+                while (pos < end) {
+                    pos += src.transferTo(pos, end - pos, dst);
+                }
+                forceTemp(dst);
+            }
+            int headerChecksum = checksum;
+            locked(filename, () -> {
+                checkVersion(filename, expected);
+                intent[0] = logIntent(filename, tmp, expected, after, headerChecksum);
+                moveIntoPlace(tmp, target);
+            });
+            syncDirectory();
+            journal.end(intent[0]);
+            measured(event, Stage.STORE_WRITE_HEADER, start, filename, headerBytes.length);
+        } catch (NoSuchFileException e) {
+            throw new VaultConflictException(filename, expected, null);
+        } finally {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (Exception ignored) {
+            }
+            closeStaged(tmp, dst);
+        }
+    }
+
+    private static void moveIntoPlace(Path tmp, Path target) throws IOException {
+        try {
+            Files.move(tmp, target,
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (Exception e) {
+            // Se ATOMIC_MOVE non è supportato, esegui rename non-atomico come fallback
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Aggiunge {@code data} in coda al file, che deve già esistere.
+     * Non è atomico come write: un crash a metà può lasciare un record incompleto in coda,
+     * che chi legge deve riconoscere e scartare (vedi layout LOG).
+     */
+    @Override
+    public void append(String filename, byte[] data) throws IOException {
+        appendTo(filename, null, data);
+    }
+
+    @Override
+    public void append(String filename, VaultVersion expected, byte[] data) throws IOException {
+        appendTo(filename, Objects.requireNonNull(expected, "expected"), data);
+    }
+
+    private void appendTo(String filename, VaultVersion expected, byte[] data) throws IOException {
+        StoreEvent event = new StoreEvent();
+        event.begin();
+        long start = VaultMetrics.start();
+        locked(filename, () -> {
+            if (expected != null) {
+                checkVersion(filename, expected);
+            }
+            appendFile(filename, data);
+        });
+        syncAppend(filename);
+        measured(event, Stage.STORE_APPEND, start, filename, data.length);
+    }
+
+    private void appendFile(String filename, byte[] data) throws IOException {
+        Path target = dir.toPath().resolve(filename);
+        try (FileChannel ch = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            if (durability != Durability.NONE && !groupCommit) {
+                ch.force(true);
+            }
+        }
+    }
+
+    // ---------- fsync secondo la Durability ----------
+
+    /**
+     * Il file temporaneo va su disco prima del rename: altrimenti dopo un crash il rename può
+     * risultare fatto e il contenuto no (vault vuoto).
+     */
+    private void forceTemp(FileChannel tmp) throws IOException {
+        if (durability != Durability.NONE) {
+            tmp.force(true);
+        }
+    }
+
+    /**
+     * FULL: rende durevole il rename (o la cancellazione) appena fatto. Fuori dal lock: con il group
+     * commit una sola fsync copre i rename di più scrittori.
+     */
+    private void syncDirectory() throws IOException {
+        if (durability != Durability.FULL) {
+            return;
+        }
+        if (groupCommit) {
+            SyncGroup.of(dir.toPath()).sync();
+        } else {
+            SyncGroup.force(dir.toPath());
+        }
+    }
+
+    /**
+     * Con il group commit la fsync dell'append si fa dopo aver rilasciato il lock, condivisa con
+     * gli append concorrenti sullo stesso vault (senza, la fa appendFile sul suo canale).
+     */
+    private void syncAppend(String filename) throws IOException {
+        if (durability != Durability.NONE && groupCommit) {
+            SyncGroup.of(dir.toPath().resolve(filename)).sync();
+        }
+    }
+
+    // ---------- journal e recupero ----------
+
+    /**
+     * Registra l'intento di installare {@code tmp} al posto di {@code filename}; va chiamato sotto il
+     * lock del vault, subito prima del rename. In FULL l'intento è su disco prima del rename.
+     */
+    private WriteJournal.Intent logIntent(String filename, Path tmp, VaultVersion before, VaultVersion after,
+                                          int checksum) throws IOException {
+        WriteJournal.Intent intent = journal.begin(filename, tmp.getFileName().toString(), before, after,
+                checksum, durability != Durability.NONE);
+        if (durability == Durability.FULL) {
+            if (groupCommit) {
+                SyncGroup.of(journal.file()).sync();
+            } else {
+                SyncGroup.force(journal.file());
+            }
+        }
+        return intent;
+    }
+
+    /**
+     * Aggiunge il vault alle code scartate del {@link RecoveryReport}.
+     */
+    @Override
+    public void reportTornTail(String filename, long discardedBytes) {
+        recovery.tornTail(filename, discardedBytes);
+    }
+
+    /**
+     * Esito del recupero eseguito dal costruttore, più le code scartate segnalate dalle sessioni.
+     */
+    public RecoveryReport getRecoveryReport() {
+        return recovery;
+    }
+
+    /**
+     * Risolve gli intenti rimasti aperti nel journal, poi elimina i temporanei abbandonati nello staging.
+     * Non legge la lista dei vault: il costo dipende dal journal e dai file in staging.
+     */
+    private RecoveryReport recover() throws IOException {
+        RecoveryReport report = new RecoveryReport();
+        if (!Files.isDirectory(staging)) {
+            // prima apertura con lo staging: i temporanei delle versioni precedenti stanno accanto ai vault
+            sweepLegacyTemps(report);
+            Files.createDirectories(staging);
+        }
+        long startedAt = System.currentTimeMillis();
+
+        List<WriteJournal.Intent> pending = journal.pending();
+        for (WriteJournal.Intent intent : pending) {
+            locked(intent.target, () -> resolve(intent, report));
+        }
+        if (!report.getCompleted().isEmpty()) {
+            syncDirectory();
+        }
+        for (WriteJournal.Intent intent : pending) {
+            journal.end(intent);
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(staging)) {
+            for (Path tmp : files) {
+                if (Files.getLastModifiedTime(tmp).toMillis() < startedAt - ORPHAN_MIN_AGE_MILLIS
+                        && deleteOrphan(tmp)) {
+                    report.orphanDeleted();
+                }
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Apre in scrittura un temporaneo appena creato nello staging e ne prende il FileLock, tenuto
+     * fino a {@link #closeStaged}: finché lo scrittore è vivo il recupero di un altro processo non
+     * lo elimina, per quanto la scrittura sia lenta. Il lock segue l'inode, quindi resta valido anche
+     * dopo il rename.
+     */
+    static FileChannel openStaged(Path tmp) throws IOException {
+        Path key = tmp.toAbsolutePath().normalize();
+        STAGED.add(key);
+        FileChannel ch = null;
+        try {
+            ch = FileChannel.open(tmp, StandardOpenOption.WRITE);
+            ch.lock();
+            return ch;
+        } catch (IOException | RuntimeException e) {
+            closeStaged(tmp, ch);
+            throw e;
+        }
+    }
+
+    /**
+     * Chiude il canale di {@link #openStaged} (rilasciando il lock). Non lancia eccezioni: si usa nei finally.
+     */
+    static void closeStaged(Path tmp, FileChannel ch) {
+        try {
+            if (ch != null) {
+                ch.close();
+            }
+        } catch (IOException ignored) {
+        } finally {
+            STAGED.remove(tmp.toAbsolutePath().normalize());
+        }
+    }
+
+    /**
+     * Elimina un temporaneo abbandonato solo se ne ottiene il FileLock, cioè se nessuno scrittore
+     * (di questo o di un altro processo) lo sta ancora usando.
+     */
+    private static boolean deleteOrphan(Path tmp) throws IOException {
+        if (STAGED.contains(tmp.toAbsolutePath().normalize())) {
+            return false;
+        }
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            FileLock lock = ch.tryLock();
+            if (lock == null) {
+                return false;
+            }
+            try {
+                return Files.deleteIfExists(tmp);
+            } finally {
+                lock.release();
+            }
+        } catch (NoSuchFileException | OverlappingFileLockException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Sotto il lock del vault:
+     *  - il vault è già alla versione dell'intento: il rename era avvenuto, niente da fare;
+     *  - il vault è ancora alla versione di partenza e il temporaneo è integro e durevole: si completa
+     *    il rename (roll forward);
+     *  - altrimenti il temporaneo si scarta (roll back) e il vault resta com'è.
+     * Se il temporaneo non c'è più il rename era avvenuto (e il vault è stato poi riscritto) oppure,
+     * senza fsync, il temporaneo non è mai arrivato su disco.
+     */
+    private void resolve(WriteJournal.Intent intent, RecoveryReport report) throws IOException {
+        Path target = dir.toPath().resolve(intent.target);
+        Path staged = staging.resolve(intent.staged);
+        if (intent.after.equals(readableVersion(target)) && headerMatches(target, intent.checksum)) {
+            Files.deleteIfExists(staged);
+            return;
+        }
+        if (!Files.exists(staged)) {
+            return;
+        }
+        if (intent.durable
+                && Objects.equals(intent.before, readableVersion(target))
+                && intent.after.equals(readableVersion(staged))
+                && headerMatches(staged, intent.checksum)) {
+            moveIntoPlace(staged, target);
+            report.completed(intent.target);
+        } else {
+            Files.delete(staged);
+            report.discarded(intent.target);
+        }
+    }
+
+    private static boolean headerMatches(Path file, int checksum) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer prefix = ByteBuffer.allocate(4 + headerLength(ch));
+            readFully(ch, prefix, 0);
+            prefix.flip();
+            return WriteJournal.checksum(prefix) == checksum;
+        } catch (NoSuchFileException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Temporanei lasciati dalle versioni senza staging: "vault*.tmp" accanto ai vault e "att*.tmp"
+     * nelle directory degli allegati. Si cercano una volta sola, quando lo staging ancora non esiste.
+     */
+    private void sweepLegacyTemps(RecoveryReport report) throws IOException {
+        try (DirectoryStream<Path> temps = Files.newDirectoryStream(dir.toPath(), "vault*.tmp")) {
+            for (Path tmp : temps) {
+                if (Files.isRegularFile(tmp) && Files.deleteIfExists(tmp)) {
+                    report.orphanDeleted();
+                }
+            }
+        }
+        try (DirectoryStream<Path> attDirs = Files.newDirectoryStream(dir.toPath(), "*.att")) {
+            for (Path attDir : attDirs) {
+                if (!Files.isDirectory(attDir)) {
+                    continue;
+                }
+                try (DirectoryStream<Path> temps = Files.newDirectoryStream(attDir, "att*.tmp")) {
+                    for (Path tmp : temps) {
+                        if (Files.deleteIfExists(tmp)) {
+                            report.orphanDeleted();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Legge il file e restituisce header + ciphertext.
+     * Header e ciphertext sono viste sul contenuto letto (o mappato), senza copie intermedie.
      * Lancia IOException se il file non esiste
      * o IllegalArgumentException se il file è malformato.
      */
     @Override
     public VaultFile read(String filename) throws IOException, IllegalArgumentException {
+        StoreEvent event = new StoreEvent();
+        event.begin();
+        long start = VaultMetrics.start();
         Path target = dir.toPath().resolve(filename);
-        byte[] all = Files.readAllBytes(target);
 
-        if (all.length < 4) {
+        ByteBuffer all;
+        if (readMode == ReadMode.MAPPED && Files.size(target) >= MAPPED_MIN_SIZE) {
+            try (FileChannel ch = FileChannel.open(target, StandardOpenOption.READ)) {
+                // la mappatura resta valida anche dopo la chiusura del canale
+                all = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            }
+        } else {
+            all = ByteBuffer.wrap(Files.readAllBytes(target));
+        }
+        VaultFile vf = parse(all);
+        measured(event, Stage.STORE_READ, start, filename, all.capacity());
+        return vf;
+    }
+
+    private static void measured(StoreEvent event, Stage stage, long start, String filename, long bytes) {
+        VaultMetrics.stop(stage, start);
+        if (event.shouldCommit()) {
+            event.operation = stage.name();
+            event.store = "file";
+            event.vault = filename;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    /**
+     * Divide un file vault completo in header e corpo; il corpo è una vista di {@code all}.
+     */
+    static VaultFile parse(ByteBuffer all) {
+        if (all.remaining() < 4) {
             throw new IllegalArgumentException("File troppo corto per contenere la lunghezza dell'header");
         }
 
-        ByteBuffer bb = ByteBuffer.wrap(all).order(ByteOrder.BIG_ENDIAN);
-        int headerLen = bb.getInt();
-        if (headerLen <= 0 || headerLen > all.length - 4) {
+        int headerLen = all.order(ByteOrder.BIG_ENDIAN).getInt(0);
+        if (headerLen <= 0 || headerLen > all.remaining() - 4) {
             throw new IllegalArgumentException("Header length non valida: " + headerLen);
         }
 
-        byte[] headerBytes = new byte[headerLen];
-        bb.get(headerBytes);
+        VaultHeader header = VaultHeaderCodec.decode(all.slice(4, headerLen));
+        ByteBuffer cipherBytes = all.slice(4 + headerLen, all.remaining() - 4 - headerLen);
 
-        byte[] cipherBytes = new byte[bb.remaining()];
-        bb.get(cipherBytes);
+        // (non azzeriamo `all`: il ciphertext è una sua vista e non contiene dati in chiaro)
+        return new VaultFile(header, cipherBytes);
+    }
 
-        VaultHeader header = VaultHeaderCodec.fromJsonBytes(headerBytes);
+    /**
+     * Legge solo la lunghezza e l'header; la lunghezza del corpo si ricava dalla dimensione del file.
+     */
+    @Override
+    public VaultVersion version(String filename) throws IOException {
+        return versionAt(dir.toPath().resolve(filename));
+    }
 
-        // azzera i buffer temporanei non necessari
-        Arrays.fill(headerBytes, (byte) 0);
+    private static VaultVersion versionAt(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            return versionOf(ch);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
 
-        // (non azzeriamo `all` per gli stessi motivi del commento Kotlin)
-        return new VaultFile(header, cipherBytes);
+    /**
+     * Come {@link #versionAt}, ma un file illeggibile (header corrotto) vale come assente.
+     */
+    private static VaultVersion readableVersion(Path file) throws IOException {
+        try {
+            return versionAt(file);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static VaultVersion versionOf(FileChannel ch) throws IOException {
+        long size = ch.size();
+        int headerLen = headerLength(ch);
+        ByteBuffer headerBytes = ByteBuffer.allocate(headerLen);
+        readFully(ch, headerBytes, 4);
+        headerBytes.flip();
+        return VaultVersion.of(VaultHeaderCodec.decode(headerBytes), size - 4 - headerLen);
+    }
+
+    private static int headerLength(FileChannel ch) throws IOException {
+        ByteBuffer len = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN);
+        readFully(ch, len, 0);
+        int headerLen = len.getInt(0);
+        if (headerLen <= 0 || headerLen > ch.size() - 4) {
+            throw new IllegalArgumentException("Header length non valida: " + headerLen);
+        }
+        return headerLen;
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, position + buf.position());
+            if (n < 0) {
+                throw new IllegalArgumentException("File troppo corto per contenere l'header");
+            }
+        }
+    }
+
+    private VaultVersion checkVersion(String filename, VaultVersion expected) throws IOException {
+        VaultVersion actual = version(filename);
+        if (!expected.equals(actual)) {
+            throw new VaultConflictException(filename, expected, actual);
+        }
+        return actual;
+    }
+
+    @FunctionalInterface
+    interface Commit {
+        void run() throws IOException;
+    }
+
+    /**
+     * Esegue {@code commit} tenendo il lock di scrittura del vault, sia verso gli altri processi
+     * (FileLock sul file .lock) sia verso gli altri thread di questa JVM.
+     */
+    private void locked(String filename, Commit commit) throws IOException {
+        withLock(lockFile(filename), commit);
+    }
+
+    static void withLock(Path lockFile, Commit commit) throws IOException {
+        ReentrantLock local = COMMIT_LOCKS.computeIfAbsent(lockFile.toAbsolutePath().normalize(),
+                k -> new ReentrantLock());
+        local.lock();
+        try (FileChannel ch = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock fileLock = ch.lock();
+            try {
+                commit.run();
+            } finally {
+                fileLock.release();
+            }
+        } finally {
+            local.unlock();
+        }
+    }
+
+    private Path lockFile(String filename) {
+        return dir.toPath().resolve("." + filename + ".lock");
     }
 
     @Override
@@ -134,8 +794,45 @@ public class FileVaultStore implements VaultStore {
         return Files.exists(dir.toPath().resolve(filename));
     }
 
+    /**
+     * File regolari della directory, esclusi i temporanei di write ("vault*.tmp") e i file nascosti
+     * (es. checkpoint dei batch, file di lock). Le directory degli allegati ({@code <vault>.att}) non sono file regolari.
+     */
+    @Override
+    public List<String> list() throws IOException {
+        List<String> names = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir.toPath())) {
+            files.filter(Files::isRegularFile).forEach(p -> {
+                String name = p.getFileName().toString();
+                if (!name.startsWith(".") && !(name.startsWith("vault") && name.endsWith(".tmp"))) {
+                    names.add(name);
+                }
+            });
+        }
+        names.sort(null);
+        return names;
+    }
+
     @Override
     public boolean delete(String filename) throws IOException {
-        return Files.deleteIfExists(dir.toPath().resolve(filename));
+        boolean[] deleted = new boolean[1];
+        locked(filename, () -> deleted[0] = Files.deleteIfExists(dir.toPath().resolve(filename)));
+        syncDirectory();
+        // il file .lock resta: cancellarlo permetterebbe a un altro processo di bloccare un inode nuovo
+        // mentre un terzo tiene ancora il lock su quello vecchio, con due commit in parallelo
+        attachments.deleteAll(filename);
+        return deleted[0];
+    }
+
+    static boolean isWindows() {
+        return System.getProperty("os.name", "").toLowerCase(java.util.Locale.ROOT).startsWith("windows");
+    }
+
+    /**
+     * Gli allegati stanno accanto al vault: {@code <dir>/<filename>.att/}.
+     */
+    @Override
+    public AttachmentStore attachments() {
+        return attachments;
     }
 }
@@ -0,0 +1,66 @@
+package com.etbasic.securityvault.core.persistence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Esito del recupero eseguito da {@link FileVaultStore} all'avvio.
+ *  - completed: scritture interrotte prima del rename e completate dal recupero (roll forward).
+ *  - discarded: scritture interrotte e scartate (roll back): il vault è rimasto alla versione precedente.
+ *  - orphansDeleted: file temporanei abbandonati ed eliminati.
+ *  - tornTails: vault LOG di cui una sessione ha scartato la coda (byte scartati), segnalati anche dopo
+ *    l'avvio, al caricamento (vedi {@link VaultStore#reportTornTail}). Senza un crash recente sono un
+ *    possibile troncamento o manomissione del file.
+ */
+public final class RecoveryReport {
+
+    private final List<String> completed = new ArrayList<>();
+    private final List<String> discarded = new ArrayList<>();
+    private int orphansDeleted;
+    private final Map<String, Long> tornTails = new LinkedHashMap<>();
+
+    void completed(String filename) {
+        completed.add(filename);
+    }
+
+    void discarded(String filename) {
+        discarded.add(filename);
+    }
+
+    void orphanDeleted() {
+        orphansDeleted++;
+    }
+
+    synchronized void tornTail(String filename, long discardedBytes) {
+        tornTails.put(filename, discardedBytes);
+    }
+
+    public List<String> getCompleted() {
+        return Collections.unmodifiableList(completed);
+    }
+
+    public List<String> getDiscarded() {
+        return Collections.unmodifiableList(discarded);
+    }
+
+    public int getOrphansDeleted() {
+        return orphansDeleted;
+    }
+
+    public synchronized Map<String, Long> getTornTails() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(tornTails));
+    }
+
+    public synchronized boolean isEmpty() {
+        return completed.isEmpty() && discarded.isEmpty() && orphansDeleted == 0 && tornTails.isEmpty();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "completate=" + completed + ", scartate=" + discarded + ", temporanei eliminati=" + orphansDeleted
+                + (tornTails.isEmpty() ? "" : ", code scartate=" + tornTails);
+    }
+}
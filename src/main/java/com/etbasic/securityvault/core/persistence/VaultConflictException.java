@@ -0,0 +1,42 @@
+package com.etbasic.securityvault.core.persistence;
+
+import java.io.IOException;
+
+/**
+ * Lanciata da una scrittura condizionale di {@link VaultStore} quando il vault non è più
+ * alla versione attesa: un altro processo (o un'altra sessione) l'ha modificato dopo la lettura.
+ *
+ * Il file non è stato toccato. Chi l'ha ricevuta può rileggere il vault, riapplicare la propria
+ * modifica sulla versione più recente e riprovare (vedi {@code VaultSession}).
+ */
+public class VaultConflictException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String filename;
+    private final VaultVersion expected;
+    private final VaultVersion actual;
+
+    public VaultConflictException(String filename, VaultVersion expected, VaultVersion actual) {
+        super("Vault modificato da un altro processo: " + filename
+                + " (atteso " + expected + ", trovato " + (actual != null ? actual : "nessun file") + ")");
+        this.filename = filename;
+        this.expected = expected;
+        this.actual = actual;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public VaultVersion getExpected() {
+        return expected;
+    }
+
+    /**
+     * Versione trovata su disco al momento della scrittura, o null se il vault è stato cancellato.
+     */
+    public VaultVersion getActual() {
+        return actual;
+    }
+}
@@ -4,6 +4,8 @@ import com.etbasic.securityvault.core.model.VaultHeader;
 import com.etbasic.securityvault.core.persistence.FileVaultStore.VaultFile;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
 
 public interface VaultStore {
 
@@ -12,19 +14,103 @@ public interface VaultStore {
      */
     void write(String filename, VaultHeader header, byte[] ciphertext) throws IOException;
 
+    /**
+     * Come {@link #write(String, VaultHeader, byte[])}, ma solo se il vault è ancora alla versione
+     * {@code expected} (compare-and-swap). {@code header} dovrebbe avere una sequence successiva.
+     *
+     * @throws VaultConflictException se nel frattempo il vault è stato modificato o cancellato
+     */
+    void write(String filename, VaultVersion expected, VaultHeader header, byte[] ciphertext) throws IOException;
+
+    /**
+     * Come {@link #write(String, VaultVersion, VaultHeader, byte[])}, ma il corpo di {@code bodyLength} byte
+     * viene prodotto da {@code body} direttamente nel buffer dello store (es. cifrato sul posto),
+     * evitando il blob intermedio e la sua copia. {@code expected} null = scrittura incondizionata.
+     *
+     * L'implementazione di default passa comunque da un array; gli store del progetto la ridefiniscono.
+     *
+     * @throws IllegalStateException se {@code body} non scrive esattamente {@code bodyLength} byte
+     */
+    default void write(String filename, VaultVersion expected, VaultHeader header, int bodyLength, BodyWriter body)
+            throws IOException {
+        byte[] ciphertext = new byte[bodyLength];
+        ByteBuffer out = ByteBuffer.wrap(ciphertext);
+        body.writeTo(out);
+        checkWritten(out, bodyLength);
+        if (expected == null) {
+            write(filename, header, ciphertext);
+        } else {
+            write(filename, expected, header, ciphertext);
+        }
+    }
+
+    /**
+     * Controlla che un {@link BodyWriter} abbia riempito il buffer ricevuto.
+     */
+    static void checkWritten(ByteBuffer out, int bodyLength) {
+        if (out.hasRemaining()) {
+            throw new IllegalStateException("Corpo incompleto: scritti " + (bodyLength - out.remaining())
+                    + " byte su " + bodyLength);
+        }
+    }
+
+    /**
+     * Sostituisce l'header lasciando il corpo invariato (es. cambio password con chiave cifrata
+     * nell'header), solo se il vault è ancora alla versione {@code expected}.
+     *
+     * @throws VaultConflictException se nel frattempo il vault è stato modificato o cancellato
+     */
+    void writeHeader(String filename, VaultVersion expected, VaultHeader header) throws IOException;
+
+    /**
+     * Aggiunge byte in coda al corpo di un vault esistente, senza riscrivere il resto del file
+     * (usato dal layout LOG). Il file deve esistere.
+     */
+    void append(String filename, byte[] data) throws IOException;
+
+    /**
+     * Come {@link #append(String, byte[])}, ma solo se il vault è ancora alla versione {@code expected}.
+     *
+     * @throws VaultConflictException se nel frattempo il vault è stato modificato o cancellato
+     */
+    void append(String filename, VaultVersion expected, byte[] data) throws IOException;
+
     /**
      * Carica e ritorna il blob completo.
      * Lancia eccezione se il file non esiste o è malformato.
      */
     VaultFile read(String filename) throws IOException;
 
+    /**
+     * Versione corrente del vault, leggendo solo l'header; null se il vault non esiste.
+     */
+    VaultVersion version(String filename) throws IOException;
+
     /**
      * Controlla se il vault esiste.
      */
     boolean exists(String filename);
 
     /**
-     * Rimuove il file del vault.
+     * Nomi di tutti i vault dello store, in ordine alfabetico.
+     */
+    List<String> list() throws IOException;
+
+    /**
+     * Rimuove il file del vault (e i suoi allegati).
      */
     boolean delete(String filename) throws IOException;
+
+    /**
+     * Notifica che, caricando il vault, la sessione ha scartato {@code discardedBytes} byte in coda al corpo
+     * (layout LOG: record incompleto o non autentico). Lo store può esporlo nel suo rapporto di recupero;
+     * di default non fa nulla.
+     */
+    default void reportTornTail(String filename, long discardedBytes) {
+    }
+
+    /**
+     * Archivio dei blob degli allegati associato a questo store.
+     */
+    AttachmentStore attachments();
 }
@@ -0,0 +1,72 @@
+package com.etbasic.securityvault.core.persistence;
+
+import com.etbasic.securityvault.core.model.VaultHeader;
+
+import java.io.Serializable;
+
+/**
+ * Versione di un vault su disco, per il compare-and-swap di {@link VaultStore}.
+ *
+ * Ogni riscrittura completa incrementa {@code sequence} (salvato nell'header), ogni append
+ * allunga il corpo: la coppia cambia a ogni scrittura, di qualunque tipo.
+ */
+public final class VaultVersion implements Serializable {
+
+    // viaggia dentro VaultConflictException, che come ogni eccezione è Serializable
+    private static final long serialVersionUID = 1L;
+
+    private final long sequence;
+    private final long bodyLength;
+
+    public VaultVersion(long sequence, long bodyLength) {
+        this.sequence = sequence;
+        this.bodyLength = bodyLength;
+    }
+
+    /**
+     * Versione di un vault con questo header e un corpo di {@code bodyLength} byte.
+     */
+    public static VaultVersion of(VaultHeader header, long bodyLength) {
+        return new VaultVersion(sequenceOf(header), bodyLength);
+    }
+
+    /**
+     * Sequence dell'header; 0 per i vault scritti prima che esistesse il campo.
+     */
+    public static long sequenceOf(VaultHeader header) {
+        return (header.getSequence() != null) ? header.getSequence() : 0;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getBodyLength() {
+        return bodyLength;
+    }
+
+    /**
+     * Versione dopo un append di {@code length} byte.
+     */
+    public VaultVersion appended(long length) {
+        return new VaultVersion(sequence, bodyLength + length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof VaultVersion)) return false;
+        VaultVersion other = (VaultVersion) o;
+        return sequence == other.sequence && bodyLength == other.bodyLength;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(sequence) * 31 + Long.hashCode(bodyLength);
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + "+" + bodyLength;
+    }
+}
@@ -0,0 +1,259 @@
+package com.etbasic.securityvault.core.persistence;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32C;
+
+/**
+ * Journal write-ahead di una directory di vault ({@code <dir>/.journal}).
+ *
+ * Prima del rename che installa una nuova versione, {@link FileVaultStore} registra l'intento (BEGIN):
+ * vault, file in staging, versione su disco, versione nuova e checksum del nuovo header; a rename
+ * completato registra END. Al riavvio contano solo gli intenti rimasti aperti, quindi il recupero
+ * costa quanto il journal e non quanto il numero di vault.
+ *
+ * Su disco ogni record è [4 byte BE len] [payload] [4 byte BE CRC32C del payload]: un record incompleto
+ * o corrotto in coda (crash durante la scrittura) viene ignorato. Superati {@link #COMPACT_SIZE} byte
+ * il journal viene riscritto con i soli intenti aperti.
+ *
+ * Il journal non si apre mai in modo persistente: ogni operazione lo riapre sotto il lock
+ * {@code .journal.lock}, che resta lo stesso file anche quando il journal viene sostituito.
+ */
+final class WriteJournal {
+
+    static final String FILE_NAME = ".journal";
+    private static final String LOCK_NAME = ".journal.lock";
+
+    private static final long COMPACT_SIZE = 64 * 1024;
+
+    private static final byte BEGIN = 1;
+    private static final byte END = 2;
+
+    /**
+     * Intento di sostituire {@code target} con il file {@code staged} della directory di staging.
+     */
+    static final class Intent {
+        final long id;
+        final String target;
+        final String staged;
+        final VaultVersion before; // versione su disco al momento del BEGIN, null se il vault non esisteva
+        final VaultVersion after;
+        final int checksum;        // CRC32C di [len][header] del file nuovo
+        final boolean durable;     // il file in staging era già su disco quando è stato scritto il BEGIN
+
+        Intent(long id, String target, String staged, VaultVersion before, VaultVersion after,
+               int checksum, boolean durable) {
+            this.id = id;
+            this.target = target;
+            this.staged = staged;
+            this.before = before;
+            this.after = after;
+            this.checksum = checksum;
+            this.durable = durable;
+        }
+    }
+
+    private final Path file;
+    private final Path lockFile;
+
+    WriteJournal(Path dir) {
+        this.file = dir.resolve(FILE_NAME);
+        this.lockFile = dir.resolve(LOCK_NAME);
+    }
+
+    Path file() {
+        return file;
+    }
+
+    Intent begin(String target, String staged, VaultVersion before, VaultVersion after,
+                 int checksum, boolean durable) throws IOException {
+        Intent intent = new Intent(ThreadLocalRandom.current().nextLong(), target, staged,
+                before, after, checksum, durable);
+        byte[] record = encodeBegin(intent);
+        FileVaultStore.withLock(lockFile, () -> appendRecord(record));
+        return intent;
+    }
+
+    /**
+     * Non serve fsync: se END va perso, al riavvio l'intento risulta già completato.
+     */
+    void end(Intent intent) throws IOException {
+        byte[] record = encodeEnd(intent.id);
+        FileVaultStore.withLock(lockFile, () -> {
+            appendRecord(record);
+            if (Files.size(file) > COMPACT_SIZE) {
+                rewrite(scan().open);
+            }
+        });
+    }
+
+    /**
+     * Intenti con BEGIN e senza END, in ordine di scrittura. Un record incompleto in coda, lasciato
+     * da un crash, viene tagliato: altrimenti nasconderebbe i record aggiunti dopo.
+     */
+    List<Intent> pending() throws IOException {
+        List<List<Intent>> out = new ArrayList<>(1);
+        FileVaultStore.withLock(lockFile, () -> {
+            Scan scan = scan();
+            if (scan.validLength < scan.size) {
+                try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    ch.truncate(scan.validLength);
+                }
+            }
+            out.add(scan.open);
+        });
+        return out.get(0);
+    }
+
+    private static final class Scan {
+        final List<Intent> open = new ArrayList<>();
+        long validLength;
+        long size;
+    }
+
+    private Scan scan() throws IOException {
+        Scan scan = new Scan();
+        ByteBuffer bb;
+        try {
+            bb = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.BIG_ENDIAN);
+        } catch (NoSuchFileException e) {
+            return scan;
+        }
+        scan.size = bb.remaining();
+        Map<Long, Intent> open = new LinkedHashMap<>();
+        while (bb.remaining() >= 8) {
+            int len = bb.getInt(bb.position());
+            if (len <= 0 || len > bb.remaining() - 8) {
+                break; // coda incompleta
+            }
+            ByteBuffer payload = bb.slice(bb.position() + 4, len);
+            int crc = bb.getInt(bb.position() + 4 + len);
+            if (crc != checksum(payload.duplicate())) {
+                break; // coda scritta a metà
+            }
+            bb.position(bb.position() + 8 + len);
+
+            byte type = payload.get();
+            long id = payload.getLong();
+            if (type == BEGIN) {
+                open.put(id, decodeBegin(id, payload));
+            } else if (type == END) {
+                open.remove(id);
+            } else {
+                throw new IOException("Tipo di record del journal sconosciuto: " + type);
+            }
+        }
+        scan.validLength = bb.position();
+        scan.open.addAll(open.values());
+        return scan;
+    }
+
+    private void appendRecord(byte[] record) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buf = ByteBuffer.wrap(record);
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+        }
+    }
+
+    /**
+     * Sostituisce il journal con uno che contiene solo {@code open}. Il nuovo file è su disco prima
+     * del rename, così gli intenti aperti non si perdono.
+     */
+    private void rewrite(List<Intent> open) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Intent intent : open) {
+            out.write(encodeBegin(intent));
+        }
+        Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.wrap(out.toByteArray());
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            ch.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // ---------- codifica dei record ----------
+
+    private static byte[] encodeBegin(Intent intent) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(BEGIN);
+        out.writeLong(intent.id);
+        writeString(out, intent.target);
+        writeString(out, intent.staged);
+        out.writeBoolean(intent.before != null);
+        if (intent.before != null) {
+            out.writeLong(intent.before.getSequence());
+            out.writeLong(intent.before.getBodyLength());
+        }
+        out.writeLong(intent.after.getSequence());
+        out.writeLong(intent.after.getBodyLength());
+        out.writeInt(intent.checksum);
+        out.writeBoolean(intent.durable);
+        return frame(bytes.toByteArray());
+    }
+
+    private static byte[] encodeEnd(long id) {
+        return frame(ByteBuffer.allocate(9).order(ByteOrder.BIG_ENDIAN).put(END).putLong(id).array());
+    }
+
+    private static Intent decodeBegin(long id, ByteBuffer payload) {
+        String target = readString(payload);
+        String staged = readString(payload);
+        VaultVersion before = (payload.get() != 0) ? new VaultVersion(payload.getLong(), payload.getLong()) : null;
+        VaultVersion after = new VaultVersion(payload.getLong(), payload.getLong());
+        int checksum = payload.getInt();
+        boolean durable = payload.get() != 0;
+        return new Intent(id, target, staged, before, after, checksum, durable);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer payload) {
+        int len = Short.toUnsignedInt(payload.getShort());
+        byte[] bytes = new byte[len];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] frame(byte[] payload) {
+        return ByteBuffer.allocate(8 + payload.length)
+                .order(ByteOrder.BIG_ENDIAN)
+                .putInt(payload.length)
+                .put(payload)
+                .putInt(checksum(ByteBuffer.wrap(payload)))
+                .array();
+    }
+
+    static int checksum(ByteBuffer bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,70 @@
+package com.etbasic.securityvault.core.pool;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Pool limitato di istanze riusabili ma non thread-safe (Cipher, SecretKeyFactory, Mac, Deflater...),
+ * condiviso tra tutti i thread.
+ *
+ * Sostituisce i ThreadLocal: con i virtual thread (una connessione del demone = un thread) ogni
+ * thread vive per poche richieste, quindi un'istanza per thread verrebbe ricreata e buttata a ogni
+ * connessione. Qui le istanze sopravvivono ai thread: se il pool è vuoto se ne crea una nuova, se
+ * al rilascio è pieno quella in eccesso viene scartata. Le istanze in uso contemporaneamente non sono
+ * limitate, solo quelle tenute da parte.
+ *
+ * Chi prende un'istanza con {@link #acquire()} la usa da un solo thread e la restituisce con
+ * {@link #release} (in un finally), re-inizializzandola a ogni uso come faceva con il ThreadLocal.
+ */
+public final class InstancePool<T> {
+
+    private final ArrayBlockingQueue<T> idle;
+    private final Supplier<T> factory;
+    private final Consumer<T> discard;
+
+    /**
+     * Capacità di default: due istanze per processore, perché le operazioni che le usano sono
+     * CPU-bound e non restano mai sospese a metà (nemmeno su un virtual thread).
+     */
+    public InstancePool(Supplier<T> factory) {
+        this(2 * Runtime.getRuntime().availableProcessors(), factory, t -> { });
+    }
+
+    /**
+     * @param capacity istanze tenute da parte al massimo
+     * @param discard  chiamato sulle istanze in eccesso al rilascio (es. Deflater::end)
+     */
+    public InstancePool(int capacity, Supplier<T> factory, Consumer<T> discard) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+        this.idle = new ArrayBlockingQueue<>(capacity);
+        this.factory = factory;
+        this.discard = discard;
+    }
+
+    /**
+     * Un'istanza libera del pool oppure, se non ce ne sono, una nuova.
+     */
+    public T acquire() {
+        T t = idle.poll();
+        return (t != null) ? t : factory.get();
+    }
+
+    /**
+     * Restituisce un'istanza presa con {@link #acquire()}; non va più usata dopo il rilascio.
+     */
+    public void release(T t) {
+        if (t != null && !idle.offer(t)) {
+            discard.accept(t);
+        }
+    }
+
+    /**
+     * Istanze libere in questo momento.
+     */
+    public int idleCount() {
+        return idle.size();
+    }
+}
@@ -0,0 +1,421 @@
+package com.etbasic.securityvault.core.search;
+
+import com.etbasic.securityvault.core.model.VaultEntry;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Indice in memoria su titolo, username e note delle entry, per cercare senza scorrere tutto il payload.
+ *
+ * I testi sono divisi in termini (sequenze di lettere/cifre, minuscole). Ogni termine è in:
+ *  - un trie, per la ricerca per prefisso ("goo" trova "google");
+ *  - un indice di trigrammi, per la ricerca tollerante agli errori ("gogle" trova "google"):
+ *    i candidati sono i termini con trigrammi in comune, accettati se il coefficiente di Dice
+ *    sui trigrammi è almeno {@link #MIN_SIMILARITY}.
+ *
+ * Punteggio di un termine di ricerca su un'entry: tipo di match (esatto > prefisso > fuzzy)
+ * per il peso dei campi in cui compare (titolo > username > note). Con più termini di ricerca
+ * un'entry deve trovarli tutti e i punteggi si sommano.
+ *
+ * L'indice si aggiorna per singola entry ({@link #add}, {@link #remove}), senza ricostruzione.
+ * Non è thread-safe, come la VaultSession che lo possiede.
+ */
+public final class EntryIndex {
+
+    /**
+     * Soglia del coefficiente di Dice sui trigrammi per un match fuzzy.
+     */
+    public static final double MIN_SIMILARITY = 0.5;
+
+    private static final int FIELD_TITLE = 1;
+    private static final int FIELD_USERNAME = 2;
+    private static final int FIELD_NOTES = 4;
+
+    private static final double EXACT_FACTOR = 1.0;
+    private static final double PREFIX_FACTOR = 0.7;
+    private static final double FUZZY_FACTOR = 0.5;
+
+    // sotto questa lunghezza un termine di ricerca ha troppo pochi trigrammi per il match fuzzy
+    private static final int MIN_FUZZY_LENGTH = 3;
+
+    private final Map<String, Doc> docs = new HashMap<>();
+    private final Map<String, Term> terms = new HashMap<>();
+    private final Node root = new Node();
+    private final Map<String, Set<Term>> trigrams = new HashMap<>();
+
+    // marca i Doc toccati dal termine di ricerca corrente (evita mappe temporanee per ogni query)
+    private long stamp;
+
+    // peggiore in testa: la coda tiene solo i migliori `limit` risultati
+    private static final Comparator<Doc> RANKING_WORST_FIRST = Comparator
+            .comparingDouble((Doc d) -> d.total)
+            .thenComparing((Doc d) -> d.entry.getTitle(), Comparator.nullsFirst(Comparator.<String>reverseOrder()));
+
+    public EntryIndex() {
+    }
+
+    public EntryIndex(Iterable<VaultEntry> entries) {
+        for (VaultEntry e : entries) {
+            add(e);
+        }
+    }
+
+    /**
+     * Indicizza l'entry; se ce n'è già una con lo stesso id viene sostituita.
+     */
+    public void add(VaultEntry entry) {
+        if (entry.getId() == null) {
+            throw new IllegalArgumentException("Entry senza id");
+        }
+        remove(entry.getId());
+        Doc doc = new Doc(entry);
+        indexField(doc, entry.getTitle(), FIELD_TITLE);
+        indexField(doc, entry.getUsername(), FIELD_USERNAME);
+        indexField(doc, entry.getNotes(), FIELD_NOTES);
+        docs.put(entry.getId(), doc);
+    }
+
+    /**
+     * Toglie l'entry dall'indice, usando i termini registrati quando è stata aggiunta
+     * (funziona anche se nel frattempo l'oggetto è stato modificato).
+     *
+     * @return false se l'id non era indicizzato
+     */
+    public boolean remove(String entryId) {
+        Doc doc = docs.remove(entryId);
+        if (doc == null) {
+            return false;
+        }
+        for (Term t : doc.terms) {
+            t.postings.remove(doc);
+            if (t.postings.isEmpty()) {
+                dropTerm(t);
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        return docs.size();
+    }
+
+    /**
+     * @param query testo libero; i termini vanno trovati tutti (per prefisso o con errori)
+     * @param limit numero massimo di risultati
+     * @return risultati in ordine di punteggio decrescente (a parità, per titolo)
+     */
+    public List<SearchHit> search(String query, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        Set<String> queryTerms = new LinkedHashSet<>(tokenize(query));
+        if (queryTerms.isEmpty()) {
+            return List.of();
+        }
+
+        // entry che hanno trovato tutti i termini di ricerca visti finora, con punteggio cumulato
+        List<Doc> matches = null;
+        for (String q : queryTerms) {
+            long st = ++stamp;
+            List<Doc> touched = scoreTerm(q, st);
+            if (matches == null) {
+                for (Doc d : touched) {
+                    d.total = d.termScore;
+                }
+                matches = touched;
+            } else {
+                List<Doc> next = new ArrayList<>(Math.min(matches.size(), touched.size()));
+                for (Doc d : matches) {
+                    if (d.termStamp == st) {
+                        d.total += d.termScore;
+                        next.add(d);
+                    }
+                }
+                matches = next;
+            }
+            if (matches.isEmpty()) {
+                return List.of();
+            }
+        }
+
+        // selezione dei migliori `limit` senza ordinare tutti i risultati
+        PriorityQueue<Doc> top = new PriorityQueue<>(Math.min(limit, matches.size()) + 1, RANKING_WORST_FIRST);
+        for (Doc d : matches) {
+            if (top.size() < limit) {
+                top.add(d);
+            } else if (RANKING_WORST_FIRST.compare(d, top.peek()) > 0) {
+                top.poll();
+                top.add(d);
+            }
+        }
+        SearchHit[] hits = new SearchHit[top.size()];
+        for (int i = hits.length - 1; i >= 0; i--) {
+            Doc d = top.poll();
+            hits[i] = new SearchHit(d.entry, d.total);
+        }
+        return Arrays.asList(hits);
+    }
+
+    /**
+     * Miglior punteggio di ogni entry per un singolo termine di ricerca, scritto in Doc.termScore.
+     *
+     * @return le entry trovate (ognuna una volta sola, marcata con {@code st})
+     */
+    private List<Doc> scoreTerm(String q, long st) {
+        // fattore di match per ogni termine candidato (il migliore tra esatto, prefisso e fuzzy)
+        Map<Term, Double> candidates = new HashMap<>();
+
+        Node node = find(q);
+        if (node != null) {
+            Deque<Node> stack = new ArrayDeque<>();
+            stack.push(node);
+            while (!stack.isEmpty()) {
+                Node n = stack.pop();
+                if (n.term != null) {
+                    Term t = n.term;
+                    double f = t.text.length() == q.length()
+                            ? EXACT_FACTOR
+                            : PREFIX_FACTOR * q.length() / t.text.length();
+                    candidates.put(t, f);
+                }
+                for (int i = 0; i < n.size; i++) {
+                    stack.push(n.kids[i]);
+                }
+            }
+        }
+
+        if (q.length() >= MIN_FUZZY_LENGTH) {
+            String[] qGrams = trigramsOf(q);
+            Map<Term, Integer> shared = new HashMap<>();
+            for (String g : qGrams) {
+                Set<Term> ts = trigrams.get(g);
+                if (ts != null) {
+                    for (Term t : ts) {
+                        shared.merge(t, 1, Integer::sum);
+                    }
+                }
+            }
+            for (Map.Entry<Term, Integer> e : shared.entrySet()) {
+                Term t = e.getKey();
+                double dice = 2.0 * e.getValue() / (qGrams.length + t.trigrams.length);
+                if (dice >= MIN_SIMILARITY) {
+                    candidates.merge(t, FUZZY_FACTOR * dice, Math::max);
+                }
+            }
+        }
+
+        List<Doc> touched = new ArrayList<>();
+        for (Map.Entry<Term, Double> c : candidates.entrySet()) {
+            double factor = c.getValue();
+            for (Map.Entry<Doc, Integer> p : c.getKey().postings.entrySet()) {
+                Doc d = p.getKey();
+                double score = factor * fieldWeight(p.getValue());
+                if (d.termStamp != st) {
+                    d.termStamp = st;
+                    d.termScore = score;
+                    touched.add(d);
+                } else if (score > d.termScore) {
+                    d.termScore = score;
+                }
+            }
+        }
+        return touched;
+    }
+
+    private static double fieldWeight(int fields) {
+        double w = 0;
+        if ((fields & FIELD_TITLE) != 0) w += 3;
+        if ((fields & FIELD_USERNAME) != 0) w += 2;
+        if ((fields & FIELD_NOTES) != 0) w += 1;
+        return w;
+    }
+
+    // ---------- termini ----------
+
+    private void indexField(Doc doc, String text, int field) {
+        for (String token : tokenize(text)) {
+            Term t = terms.get(token);
+            if (t == null) {
+                t = newTerm(token);
+            }
+            Integer fields = t.postings.get(doc);
+            if (fields == null) {
+                t.postings.put(doc, field);
+                doc.terms.add(t);
+            } else {
+                t.postings.put(doc, fields | field);
+            }
+        }
+    }
+
+    private Term newTerm(String text) {
+        Term t = new Term(text, trigramsOf(text));
+        terms.put(text, t);
+
+        Node n = root;
+        for (int i = 0; i < text.length(); i++) {
+            n = n.childOrCreate(text.charAt(i));
+        }
+        n.term = t;
+
+        for (String g : t.trigrams) {
+            trigrams.computeIfAbsent(g, k -> new HashSet<>()).add(t);
+        }
+        return t;
+    }
+
+    private void dropTerm(Term t) {
+        terms.remove(t.text);
+
+        for (String g : t.trigrams) {
+            Set<Term> ts = trigrams.get(g);
+            ts.remove(t);
+            if (ts.isEmpty()) {
+                trigrams.remove(g);
+            }
+        }
+
+        // scende lungo il percorso e poi pota i nodi rimasti senza termini né figli
+        Node[] path = new Node[t.text.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < t.text.length(); i++) {
+            path[i + 1] = path[i].child(t.text.charAt(i));
+        }
+        path[t.text.length()].term = null;
+        for (int i = t.text.length(); i > 0; i--) {
+            Node n = path[i];
+            if (n.term != null || n.size > 0) {
+                break;
+            }
+            path[i - 1].removeChild(t.text.charAt(i - 1));
+        }
+    }
+
+    private Node find(String prefix) {
+        Node n = root;
+        for (int i = 0; i < prefix.length() && n != null; i++) {
+            n = n.child(prefix.charAt(i));
+        }
+        return n;
+    }
+
+    /**
+     * Termini di un testo: sequenze massimali di lettere/cifre, in minuscolo.
+     */
+    static List<String> tokenize(String text) {
+        List<String> out = new ArrayList<>();
+        if (text == null) {
+            return out;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean word = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                out.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return out;
+    }
+
+    // con un delimitatore ai bordi, così anche inizio e fine parola contano ("$go", "le$")
+    private static String[] trigramsOf(String term) {
+        String padded = "$" + term + "$";
+        Set<String> out = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            out.add(padded.substring(i, i + 3));
+        }
+        return out.toArray(new String[0]);
+    }
+
+    private static final class Doc {
+        final VaultEntry entry;
+        final List<Term> terms = new ArrayList<>();
+
+        // stato di lavoro di search()
+        long termStamp;
+        double termScore;
+        double total;
+
+        Doc(VaultEntry entry) {
+            this.entry = entry;
+        }
+    }
+
+    private static final class Term {
+        final String text;
+        final String[] trigrams;
+        // entry che contengono il termine -> bitmask dei campi in cui compare
+        final Map<Doc, Integer> postings = new HashMap<>();
+
+        Term(String text, String[] trigrams) {
+            this.text = text;
+            this.trigrams = trigrams;
+        }
+    }
+
+    /**
+     * Nodo del trie. I figli sono array ordinati per carattere: molto più compatti di una mappa
+     * per nodo, e i nodi hanno quasi sempre pochi figli.
+     */
+    private static final class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_KIDS = new Node[0];
+
+        char[] keys = NO_KEYS;
+        Node[] kids = NO_KIDS;
+        int size;
+        Term term;
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, 0, size, c);
+            return (i >= 0) ? kids[i] : null;
+        }
+
+        Node childOrCreate(char c) {
+            int i = Arrays.binarySearch(keys, 0, size, c);
+            if (i >= 0) {
+                return kids[i];
+            }
+            i = -i - 1;
+            if (size == keys.length) {
+                int cap = Math.max(2, size * 2);
+                keys = Arrays.copyOf(keys, cap);
+                kids = Arrays.copyOf(kids, cap);
+            }
+            System.arraycopy(keys, i, keys, i + 1, size - i);
+            System.arraycopy(kids, i, kids, i + 1, size - i);
+            Node n = new Node();
+            keys[i] = c;
+            kids[i] = n;
+            size++;
+            return n;
+        }
+
+        void removeChild(char c) {
+            int i = Arrays.binarySearch(keys, 0, size, c);
+            if (i < 0) {
+                return;
+            }
+            System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+            System.arraycopy(kids, i + 1, kids, i, size - i - 1);
+            size--;
+            kids[size] = null;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.etbasic.securityvault.core.search;
+
+import com.etbasic.securityvault.core.model.VaultEntry;
+
+/**
+ * Risultato di {@link EntryIndex#search}: l'entry e il suo punteggio (più alto = più rilevante).
+ */
+public final class SearchHit {
+
+    private final VaultEntry entry;
+    private final double score;
+
+    public SearchHit(VaultEntry entry, double score) {
+        this.entry = entry;
+        this.score = score;
+    }
+
+    public VaultEntry getEntry() {
+        return entry;
+    }
+
+    public double getScore() {
+        return score;
+    }
+}
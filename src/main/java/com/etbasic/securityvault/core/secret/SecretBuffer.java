@@ -0,0 +1,137 @@
+package com.etbasic.securityvault.core.secret;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+
+/**
+ * Byte segreti (plaintext del payload, chiavi) fuori dallo heap, azzerati in modo deterministico alla chiusura.
+ *
+ * La memoria è un ByteBuffer diretto: il GC non la sposta né la copia tra le generazioni, quindi
+ * dopo {@link #close()} non ne restano copie in giro per lo heap. Se il chiamante dimentica la chiusura
+ * il contenuto viene comunque azzerato quando il buffer diventa irraggiungibile (Cleaner), ma in un
+ * momento non prevedibile: va sempre usato in un try-with-resources.
+ *
+ * Non è thread-safe: un buffer appartiene a chi lo ha creato finché non lo chiude.
+ */
+public final class SecretBuffer implements AutoCloseable {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final ByteBuffer memory;
+    private final Cleaner.Cleanable cleanable;
+    private int length;
+    private boolean closed;
+
+    private SecretBuffer(int capacity) {
+        this.memory = ByteBuffer.allocateDirect(capacity);
+        this.length = capacity;
+        // l'azione tiene solo il ByteBuffer, non questo oggetto: altrimenti non diventerebbe mai irraggiungibile
+        this.cleanable = CLEANER.register(this, new Wipe(memory));
+    }
+
+    /**
+     * Buffer di {@code capacity} byte a zero; la lunghezza iniziale è l'intera capacità.
+     */
+    public static SecretBuffer allocate(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative");
+        }
+        return new SecretBuffer(capacity);
+    }
+
+    /**
+     * Copia {@code src} fuori dallo heap; l'array del chiamante resta sotto la sua responsabilità (va azzerato).
+     */
+    public static SecretBuffer copyOf(byte[] src) {
+        SecretBuffer b = allocate(src.length);
+        b.memory.put(0, src);
+        return b;
+    }
+
+    /**
+     * Numero di byte validi, da 0 a {@link #capacity()}.
+     */
+    public int length() {
+        ensureOpen();
+        return length;
+    }
+
+    public int capacity() {
+        return memory.capacity();
+    }
+
+    /**
+     * Riduce i byte validi (es. quando il plaintext risulta più corto del previsto); quelli oltre restano a zero.
+     */
+    public void setLength(int length) {
+        ensureOpen();
+        if (length < 0 || length > memory.capacity()) {
+            throw new IllegalArgumentException("length out of range: " + length);
+        }
+        if (length < this.length) {
+            fill(memory, length, this.length);
+        }
+        this.length = length;
+    }
+
+    /**
+     * Vista in lettura sui byte validi (posizione 0, limite {@link #length()}).
+     * Non va usata dopo {@link #close()}: da quel momento contiene solo zeri.
+     */
+    public ByteBuffer contents() {
+        ensureOpen();
+        return memory.slice(0, length).asReadOnlyBuffer();
+    }
+
+    /**
+     * Vista modificabile sull'intera capacità, per scriverci direttamente (es. output di un Cipher).
+     */
+    public ByteBuffer writable() {
+        ensureOpen();
+        return memory.slice(0, memory.capacity());
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Azzera tutta la memoria. Idempotente.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        length = 0;
+        cleanable.clean();
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("SecretBuffer già chiuso");
+        }
+    }
+
+    private static void fill(ByteBuffer b, int from, int to) {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            b.putLong(i, 0L);
+        }
+        for (; i < to; i++) {
+            b.put(i, (byte) 0);
+        }
+    }
+
+    private static final class Wipe implements Runnable {
+        private final ByteBuffer memory;
+
+        Wipe(ByteBuffer memory) {
+            this.memory = memory;
+        }
+
+        @Override
+        public void run() {
+            fill(memory, 0, memory.capacity());
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.etbasic.securityvault.core.session;
+
+import java.security.GeneralSecurityException;
+
+/**
+ * Lanciata quando la master password non corrisponde all'hash di autenticazione
+ * memorizzato nell'header del vault.
+ */
+public class InvalidPasswordException extends GeneralSecurityException {
+
+    private static final long serialVersionUID = 1L;
+
+    public InvalidPasswordException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,167 @@
+package com.etbasic.securityvault.core.session;
+
+import com.etbasic.securityvault.core.cipher.AesGcmCipher;
+import com.etbasic.securityvault.core.codec.PayloadCodec;
+import com.etbasic.securityvault.core.model.VaultEntry;
+import com.etbasic.securityvault.core.model.VaultPayload;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.SecretKey;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Record del layout LOG (vedi {@link com.etbasic.securityvault.core.model.VaultLayout}).
+ *
+ * Su disco:   [4 byte BE len] [IV || CIPHERTEXT || TAG]
+ * Plaintext:  [1 byte op] [corpo]   PUT: entry nel codec del vault, DELETE: id in UTF-8
+ * AAD:        aadOf(header) || indice del record (8 byte BE)
+ *
+ * L'indice nell'AAD impedisce di riordinare, duplicare o spostare record tra posizioni.
+ * Un record incompleto in coda (crash durante un append) viene scartato: non era mai stato confermato.
+ * Lo scarto non è silenzioso: {@link Replay#tornBytes} arriva alla sessione, che lo espone e lo segnala
+ * allo store. Gli append non riscrivono l'header, quindi il formato non può distinguere una coda rotta
+ * da un crash da una troncata o alterata di proposito: il chiamante deve trattarlo come un possibile rollback.
+ */
+final class RecordLog {
+
+    static final byte OP_PUT = 1;
+    static final byte OP_DELETE = 2;
+
+    private RecordLog() {
+    }
+
+    /**
+     * Risultato del replay: entry vive (in ordine di inserimento), record letti, coda scartata.
+     */
+    static final class Replay {
+        final VaultPayload payload = new VaultPayload();
+        long records;
+        boolean torn;
+        // byte in coda non applicati (record incompleto o ultimo record non autentico); 0 se nessuno
+        long tornBytes;
+    }
+
+    static byte[] put(AesGcmCipher cipher, SecretKey key, byte[] headerAad, PayloadCodec codec,
+                      long index, VaultEntry entry) throws IOException {
+        byte[] encoded = codec.encodeEntry(entry);
+        try {
+            return seal(cipher, key, headerAad, index, OP_PUT, encoded);
+        } finally {
+            Arrays.fill(encoded, (byte) 0);
+        }
+    }
+
+    static byte[] delete(AesGcmCipher cipher, SecretKey key, byte[] headerAad, long index, String id) {
+        return seal(cipher, key, headerAad, index, OP_DELETE, id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Corpo compatto: un PUT per ogni entry viva, indici da 0.
+     */
+    static byte[] compact(AesGcmCipher cipher, SecretKey key, byte[] headerAad, PayloadCodec codec,
+                          Iterable<VaultEntry> entries) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long index = 0;
+        for (VaultEntry e : entries) {
+            out.write(put(cipher, key, headerAad, codec, index++, e));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Riesegue il log. Lancia AEADBadTagException se un record completo non è autentico.
+     */
+    static Replay replay(AesGcmCipher cipher, SecretKey key, byte[] headerAad, PayloadCodec codec,
+                         ByteBuffer body) throws AEADBadTagException, IOException {
+        Replay r = new Replay();
+        ByteBuffer bb = body.duplicate().order(ByteOrder.BIG_ENDIAN);
+        while (bb.hasRemaining()) {
+            int recordStart = bb.position();
+            if (bb.remaining() < 4) {
+                tear(r, bb, recordStart);
+                break;
+            }
+            int len = bb.getInt();
+            if (len <= 0 || len > bb.remaining()) {
+                tear(r, bb, recordStart);
+                break;
+            }
+            // il record viene decifrato sul posto (slice), senza copiarlo
+            ByteBuffer blob = bb.slice(bb.position(), len);
+            bb.position(bb.position() + len);
+
+            byte[] plain;
+            try {
+                plain = cipher.decrypt(key, blob, recordAad(headerAad, r.records));
+            } catch (AEADBadTagException e) {
+                // l'ultimo record può essere stato scritto solo in parte (es. blocchi a zero dopo un crash):
+                // scartarlo equivale a un troncamento, che il formato comunque non può rilevare
+                if (!bb.hasRemaining()) {
+                    tear(r, bb, recordStart);
+                    break;
+                }
+                throw e;
+            }
+            try {
+                apply(r, codec, plain);
+            } finally {
+                Arrays.fill(plain, (byte) 0);
+            }
+            r.records++;
+        }
+        return r;
+    }
+
+    private static void tear(Replay r, ByteBuffer bb, int recordStart) {
+        r.torn = true;
+        r.tornBytes = bb.limit() - recordStart;
+    }
+
+    private static void apply(Replay r, PayloadCodec codec, byte[] plain) throws IOException {
+        if (plain.length < 1) {
+            throw new IOException("Record vuoto");
+        }
+        switch (plain[0]) {
+            case OP_PUT: {
+                VaultEntry e = codec.decodeEntry(plain, 1, plain.length - 1);
+                r.payload.put(e);
+                break;
+            }
+            case OP_DELETE:
+                r.payload.remove(new String(plain, 1, plain.length - 1, StandardCharsets.UTF_8));
+                break;
+            default:
+                throw new IOException("Tipo di record sconosciuto: " + plain[0]);
+        }
+    }
+
+    private static byte[] seal(AesGcmCipher cipher, SecretKey key, byte[] headerAad, long index,
+                               byte op, byte[] body) {
+        byte[] plain = new byte[1 + body.length];
+        plain[0] = op;
+        System.arraycopy(body, 0, plain, 1, body.length);
+        try {
+            byte[] blob = cipher.encrypt(key, plain, recordAad(headerAad, index));
+            return ByteBuffer.allocate(4 + blob.length)
+                    .order(ByteOrder.BIG_ENDIAN)
+                    .putInt(blob.length)
+                    .put(blob)
+                    .array();
+        } finally {
+            Arrays.fill(plain, (byte) 0);
+        }
+    }
+
+    private static byte[] recordAad(byte[] headerAad, long index) {
+        return ByteBuffer.allocate(headerAad.length + 8)
+                .order(ByteOrder.BIG_ENDIAN)
+                .put(headerAad)
+                .putLong(index)
+                .array();
+    }
+}
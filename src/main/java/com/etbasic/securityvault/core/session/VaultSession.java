@@ -0,0 +1,1291 @@
+package com.etbasic.securityvault.core.session;
+
+import com.etbasic.securityvault.core.cipher.AesGcmCipher;
+import com.etbasic.securityvault.core.cipher.AesGcmStreamCipher;
+import com.etbasic.securityvault.core.cipher.AesKey;
+import com.etbasic.securityvault.core.cipher.StreamingAeadCipher;
+import com.etbasic.securityvault.core.codec.PayloadCodec;
+import com.etbasic.securityvault.core.codec.PayloadCodecs;
+import com.etbasic.securityvault.core.compress.Compressions;
+import com.etbasic.securityvault.core.compress.Compressor;
+import com.etbasic.securityvault.core.kdf.HKDF;
+import com.etbasic.securityvault.core.kdf.KdfPolicy;
+import com.etbasic.securityvault.core.kdf.PBKDF2;
+import com.etbasic.securityvault.core.model.EntryIds;
+import com.etbasic.securityvault.core.model.VaultAttachment;
+import com.etbasic.securityvault.core.model.VaultEntry;
+import com.etbasic.securityvault.core.model.VaultHeader;
+import com.etbasic.securityvault.core.model.VaultHeaderCodec;
+import com.etbasic.securityvault.core.model.VaultLayout;
+import com.etbasic.securityvault.core.model.VaultPayload;
+import com.etbasic.securityvault.core.persistence.AttachmentStore;
+import com.etbasic.securityvault.core.persistence.BodyWriter;
+import com.etbasic.securityvault.core.persistence.FileVaultStore.VaultFile;
+import com.etbasic.securityvault.core.persistence.VaultConflictException;
+import com.etbasic.securityvault.core.persistence.VaultStore;
+import com.etbasic.securityvault.core.persistence.VaultVersion;
+import com.etbasic.securityvault.core.secret.SecretBuffer;
+import com.etbasic.securityvault.core.search.EntryIndex;
+import com.etbasic.securityvault.core.search.SearchHit;
+import com.etbasic.securityvault.core.transfer.EntryDeduplicator;
+import com.etbasic.securityvault.core.transfer.EntrySink;
+import com.etbasic.securityvault.core.transfer.EntrySource;
+import com.etbasic.securityvault.core.transfer.ImportResult;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Vault sbloccato: tiene in memoria la chiave derivata e il payload decifrato,
+ * così letture e scritture successive non devono rieseguire la KDF.
+ *
+ * Si ottiene con {@link #create} o {@link #unlock}; va chiusa con {@link #close()},
+ * che azzera la chiave. Di solito è gestita da un {@link VaultSessionCache}.
+ *
+ * Può essere condivisa tra thread: le letture ({@link #getEntry}, {@link #getEntries}, {@link #search},
+ * {@link #exportEntries}) procedono in parallelo, le modifiche prendono il lock in scrittura e quindi
+ * sono serializzate tra loro e rispetto alle letture. Le entry restituite sono copie: chi le usa dopo
+ * la lettura (es. per serializzarle) non vede né le modifiche successive né l'azzeramento di
+ * {@link #close()}, e può azzerarne la password quando non gli serve più. Fa eccezione {@link #getPayload()},
+ * che espone il payload senza protezione ed è pensato per l'uso da un solo thread.
+ *
+ * Più sessioni (anche in processi diversi) possono modificare lo stesso vault: ogni scrittura è
+ * condizionata alla versione letta (vedi {@link VaultVersion}). Se un altro scrittore è arrivato prima,
+ * la sessione ricarica il vault e riapplica la propria modifica sulla versione più recente.
+ */
+public class VaultSession implements AutoCloseable {
+
+    private static final int SALT_LENGTH_BYTES = 16;
+    private static final int VERIFIER_LENGTH_BYTES = 32;
+    private static final int ATTACHMENT_KEY_BYTES = 32;
+
+    private static final SecureRandom RNG = new SecureRandom();
+
+    private static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+    private static final long MIN_RECORDS_FOR_COMPACTION = 32;
+
+    // tentativi di una modifica in caso di scritture concorrenti, prima di arrendersi
+    private static final int MAX_CONFLICT_ATTEMPTS = 20;
+
+    // etichette HKDF (header v2/v3): verificatore e chiave sono indipendenti pur venendo dallo stesso PBKDF2.
+    // In v2 la chiave "enc-key" cifra il payload, in v3 cifra la chiave casuale del payload (wrappedKey).
+    private static final String INFO_VERIFIER = "securityvault/v2/auth-verifier";
+    private static final String INFO_ENC_KEY = "securityvault/v2/enc-key";
+    private static final byte[] WRAPPED_KEY_AAD = "securityvault/v3/wrapped-key".getBytes(StandardCharsets.UTF_8);
+
+    private static final AesGcmCipher KEY_WRAP_CIPHER = new AesGcmCipher();
+
+    private final VaultStore store;
+    private final String filename;
+    private final AesGcmCipher cipher = new AesGcmCipher();
+    private final StreamingAeadCipher streamCipher = new AesGcmStreamCipher();
+
+    private VaultHeader header;
+    private byte[] encKey;
+    private AesKey aesKey; // costruita una volta, riusata per ogni encrypt della sessione
+    private byte[] aad;
+    private PayloadCodec codec; // dal campo payloadCodec dell'header
+    private Compressor compressor; // dal campo compression; null = nessuna
+    private VaultPayload payload;
+    private EntryIndex index; // costruito alla prima ricerca, poi aggiornato a ogni modifica
+    private VaultVersion version; // versione su disco su cui si basa la sessione; null prima della creazione
+
+    // layout LOG: record presenti nel file e soglia di record morti oltre cui compattare
+    private long recordCount;
+    private boolean tornTail;
+    // byte scartati in coda al log all'ultimo caricamento (vedi getDiscardedTailBytes)
+    private long discardedTailBytes;
+    // perché unlockAndUpgrade non ha potuto alzare le iterazioni PBKDF2 (vedi getKdfUpgradeFailure)
+    private String kdfUpgradeFailure;
+    private double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+    // letture in parallelo, modifiche (e ricaricamenti) in esclusiva
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // EntryIndex.search non è rientrante: le ricerche, pur sotto il lock in lettura, si serializzano tra loro
+    private final Object searchLock = new Object();
+
+    private volatile long lastAccessNanos;
+    private volatile boolean closed;
+
+    private VaultSession(VaultStore store, String filename, VaultHeader header,
+                         byte[] encKey, VaultPayload payload) {
+        this.store = store;
+        this.filename = filename;
+        this.header = header;
+        this.encKey = encKey;
+        this.aesKey = new AesKey(encKey);
+        this.aad = VaultHeaderCodec.aadOf(header);
+        this.codec = PayloadCodecs.forName(header.getPayloadCodec());
+        this.compressor = Compressions.forName(header.getCompression());
+        this.payload = payload;
+        touch();
+    }
+
+    /**
+     * Crea un nuovo vault vuoto in layout SNAPSHOT.
+     *
+     * @see #create(VaultStore, String, char[], int, VaultLayout)
+     */
+    public static VaultSession create(VaultStore store, String filename, char[] password,
+                                      int encIterations) throws IOException {
+        return create(store, filename, password, encIterations, VaultLayout.SNAPSHOT);
+    }
+
+    /**
+     * Crea un nuovo vault vuoto (header v3: KDF a passata singola e chiave casuale del payload cifrata
+     * nell'header; payload in codec binario) e lo salva su disco.
+     *
+     * @param password      usata solo per la KDF; l'array resta del chiamante, che lo azzera
+     * @param encIterations iterazioni PBKDF2
+     * @param layout        SNAPSHOT (riscrittura completa) o LOG (un record in coda per ogni modifica)
+     * @return la sessione già sbloccata sul nuovo vault
+     */
+    public static VaultSession create(VaultStore store, String filename, char[] password,
+                                      int encIterations, VaultLayout layout) throws IOException {
+        return create(store, filename, password, encIterations, layout, null);
+    }
+
+    /**
+     * Come {@link #create(VaultStore, String, char[], int, VaultLayout)}, comprimendo il payload
+     * prima della cifratura.
+     *
+     * @param compression es. {@link Compressions#LZ} o {@code Compressions.deflate(6)};
+     *                    {@code null} = nessuna. Supportata solo nel layout SNAPSHOT.
+     */
+    public static VaultSession create(VaultStore store, String filename, char[] password,
+                                      int encIterations, VaultLayout layout, Compressor compression)
+            throws IOException {
+        if (compression != null && layout != VaultLayout.SNAPSHOT) {
+            throw new IllegalArgumentException("Compressione supportata solo nel layout SNAPSHOT");
+        }
+        int keyLenBytes = 32; // AES-256
+
+        byte[] encSalt = newSalt();
+        byte[] master = new PBKDF2(encIterations, keyLenBytes * 8).deriveKey(password, encSalt);
+        byte[] dataKey = newDataKey(keyLenBytes);
+        VaultHeader header = wrappedKeyHeader(master, encSalt, encIterations, dataKey);
+        Arrays.fill(master, (byte) 0);
+        if (layout == VaultLayout.LOG) {
+            header = header.withLayout(layout.headerValue());
+        }
+        header = header.withPayloadCodec(PayloadCodecs.BINARY.name());
+        if (compression != null) {
+            header = header.withCompression(compression.name());
+        }
+
+        VaultSession session = new VaultSession(store, filename, header, dataKey, new VaultPayload());
+        try {
+            session.writeAll();
+        } catch (IOException | RuntimeException e) {
+            session.close();
+            throw e;
+        }
+        return session;
+    }
+
+    /**
+     * Legge il vault, verifica la password e decifra il payload.
+     * Gli header v1 e v2 vengono accettati e migrati a v3 alla prima riscrittura completa.
+     * La password non viene conservata: l'array resta del chiamante, che lo azzera.
+     *
+     * @throws InvalidPasswordException se la password non corrisponde all'auth hash / verificatore
+     * @throws AEADBadTagException      se la decifratura fallisce (chiave/AAD errata o dati corrotti)
+     */
+    public static VaultSession unlock(VaultStore store, String filename, char[] password)
+            throws IOException, InvalidPasswordException, AEADBadTagException {
+        VaultFile vf = store.read(filename);
+        VaultHeader header = vf.getHeader();
+
+        byte[] encKey = deriveEncKey(header, password);
+        VaultSession session = new VaultSession(store, filename, header, encKey, new VaultPayload());
+        try {
+            // il corpo resta una vista sul file letto/mappato: nessuna copia del ciphertext
+            session.load(vf.getCiphertextBuffer());
+            session.version = vf.getVersion();
+            return session;
+        } catch (AEADBadTagException | RuntimeException | IOException e) {
+            session.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Come {@link #unlock(VaultStore, String, char[])}, ma può scrivere il vault: se le iterazioni PBKDF2
+     * sono sotto il minimo di {@code policy}, la chiave del payload viene subito ricifrata con le iterazioni
+     * calibrate su questa macchina (nuovo salt, stessa password; nei vault v3 si riscrive solo l'header,
+     * i v1/v2 vengono migrati a v3). Serve quindi uno store scrivibile, e lo sblocco costa anche una
+     * derivazione in più (più la calibrazione, se la policy non l'ha ancora fatta).
+     * Se la scrittura fallisce (es. conflitto con un altro scrittore, store in sola lettura) lo sblocco resta
+     * valido, il motivo è in {@link #getKdfUpgradeFailure()} e l'aggiornamento viene ritentato al prossimo
+     * sblocco. Qualsiasi altra eccezione chiude la sessione (azzerando la chiave) e viene rilanciata.
+     */
+    public static VaultSession unlockAndUpgrade(VaultStore store, String filename, char[] password,
+                                                KdfPolicy policy)
+            throws IOException, InvalidPasswordException, AEADBadTagException {
+        VaultSession session = unlock(store, filename, password);
+        try {
+            if (policy.needsUpgrade(session.header.getEncIterations())) {
+                // la password è appena stata verificata dallo sblocco
+                session.rewrapKey(password, policy.iterations());
+            }
+        } catch (IOException e) {
+            // lo stato della sessione cambia solo dopo una scrittura riuscita: il vault su disco e in
+            // memoria è ancora quello di prima, con le iterazioni vecchie
+            // il tipo conta: il messaggio di es. AccessDeniedException è solo il nome del file
+            session.kdfUpgradeFailure = e.getClass().getSimpleName()
+                    + ((e.getMessage() != null) ? ": " + e.getMessage() : "");
+        } catch (RuntimeException | Error e) {
+            session.close();
+            throw e;
+        }
+        return session;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public VaultHeader getHeader() {
+        ensureOpen();
+        return header;
+    }
+
+    /**
+     * Payload decifrato in memoria. Le modifiche vanno rese persistenti con {@link #save()}
+     * (oppure fatte con addEntry/updateEntry/removeEntry, che tengono aggiornato anche l'indice di ricerca).
+     */
+    public VaultPayload getPayload() {
+        ensureOpen();
+        touch();
+        return payload;
+    }
+
+    /**
+     * Copia dell'entry con l'id indicato, o null. Né le modifiche successive né {@link #close()} la toccano.
+     */
+    public VaultEntry getEntry(String entryId) {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            touch();
+            VaultEntry entry = payload.get(entryId);
+            return (entry == null) ? null : entry.copy();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copie delle entry, in ordine di inserimento. Né le modifiche successive né {@link #close()} le toccano.
+     */
+    public List<VaultEntry> getEntries() {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            touch();
+            List<VaultEntry> copies = new ArrayList<>(payload.size());
+            for (VaultEntry e : payload.getEntries()) {
+                copies.add(e.copy());
+            }
+            return copies;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Aggiunge una entry e la rende persistente, senza rieseguire la KDF.
+     * Layout LOG: un solo record in coda al file; SNAPSHOT: riscrittura completa.
+     * Un'entry senza id ne riceve uno nuovo (vedi {@link EntryIds}).
+     *
+     * @throws IllegalArgumentException se esiste già un'entry con lo stesso id
+     */
+    public void addEntry(VaultEntry entry) throws IOException {
+        ensureOpen();
+        retrying(() -> {
+            if (entry.getId() != null && payload.contains(entry.getId())) {
+                throw new IllegalArgumentException("Entry già presente: " + entry.getId());
+            }
+            payload.put(entry);
+            try {
+                persistPut(entry);
+            } catch (IOException | RuntimeException e) {
+                payload.remove(entry.getId());
+                throw e;
+            }
+            if (index != null) {
+                index.add(entry);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Sostituisce l'entry con lo stesso id e la rende persistente.
+     */
+    public void updateEntry(VaultEntry entry) throws IOException {
+        ensureOpen();
+        retrying(() -> {
+            requireEntry(entry.getId());
+            VaultEntry previous = payload.put(entry);
+            try {
+                persistPut(entry);
+            } catch (IOException | RuntimeException e) {
+                payload.put(previous); // stesso id: riprende la sua posizione
+                throw e;
+            }
+            if (index != null) {
+                index.add(entry); // sostituisce la versione precedente (stesso id)
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Rimuove l'entry (layout LOG: tombstone in coda) ed elimina i blob dei suoi allegati.
+     * Se un altro scrittore l'ha già rimossa non fa nulla.
+     */
+    public void removeEntry(String entryId) throws IOException {
+        reading(() -> requireEntry(entryId));
+        VaultEntry removed = retrying(() -> {
+            VaultEntry entry = payload.remove(entryId);
+            if (entry == null) {
+                return null; // rimossa nel frattempo da un'altra sessione
+            }
+            try {
+                persistDelete(entryId);
+            } catch (IOException | RuntimeException e) {
+                // torna in fondo all'ordine di inserimento: il contenuto è comunque quello su disco
+                payload.put(entry);
+                throw e;
+            }
+            if (index != null) {
+                index.remove(entryId);
+            }
+            return entry;
+        });
+        if (removed != null && removed.getAttachments() != null) {
+            for (VaultAttachment a : removed.getAttachments()) {
+                store.attachments().delete(filename, a.getId());
+            }
+        }
+    }
+
+    /**
+     * Importa tutte le entry di {@code source} con una sola cifratura e una sola scrittura del file
+     * (layout LOG: un'unica compattazione), invece di un salvataggio per entry.
+     *
+     * I duplicati (vedi {@link EntryDeduplicator}), sia rispetto
+     * al vault sia all'interno dell'input, vengono scartati. Un id mancante o già usato viene
+     * sostituito con uno nuovo; eventuali allegati nell'input sono ignorati.
+     * Se la lettura o la scrittura falliscono il vault resta com'era.
+     */
+    public ImportResult importEntries(EntrySource source) throws IOException {
+        ensureOpen();
+        touch();
+        // l'input si legge una volta sola: dopo un conflitto l'import viene riapplicato sul vault ricaricato
+        List<VaultEntry> incoming = new ArrayList<>();
+        VaultEntry next;
+        while ((next = source.next()) != null) {
+            next.setAttachments(null);
+            incoming.add(next);
+        }
+        return retrying(() -> {
+            EntryDeduplicator dedupe = new EntryDeduplicator(payload.getEntries());
+            List<VaultEntry> added = new ArrayList<>();
+            int duplicates = 0;
+            try {
+                for (VaultEntry e : incoming) {
+                    if (!dedupe.add(e)) {
+                        duplicates++;
+                        continue;
+                    }
+                    if (e.getId() == null || payload.contains(e.getId())) {
+                        e.setId(EntryIds.next());
+                    }
+                    payload.put(e);
+                    added.add(e);
+                }
+                if (!added.isEmpty()) {
+                    writeAll();
+                }
+            } catch (IOException | RuntimeException ex) {
+                for (VaultEntry a : added) {
+                    payload.remove(a.getId());
+                }
+                throw ex;
+            }
+            if (index != null) {
+                for (VaultEntry a : added) {
+                    index.add(a);
+                }
+            }
+            return new ImportResult(added.size(), duplicates);
+        });
+    }
+
+    /**
+     * Scrive tutte le entry su {@code sink}, una alla volta (senza allegati).
+     * Il chiamante chiude il sink, che completa il documento.
+     *
+     * @return numero di entry esportate
+     */
+    public int exportEntries(EntrySink sink) throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            touch();
+            int n = 0;
+            for (VaultEntry e : payload.getEntries()) {
+                sink.write(e);
+                n++;
+            }
+            return n;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Cerca tra titolo, username e note delle entry (per prefisso e tollerando errori di battitura).
+     * L'indice viene costruito alla prima ricerca della sessione e poi aggiornato entry per entry.
+     *
+     * @param limit numero massimo di risultati
+     * @return risultati ordinati per rilevanza, con copie delle entry (come {@link #getEntries()})
+     * @see EntryIndex
+     */
+    public List<SearchHit> search(String query, int limit) {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            touch();
+            synchronized (searchLock) {
+                if (index == null) {
+                    index = new EntryIndex(payload.getEntries());
+                }
+                List<SearchHit> hits = index.search(query, limit);
+                List<SearchHit> copies = new ArrayList<>(hits.size());
+                for (SearchHit hit : hits) {
+                    copies.add(new SearchHit(hit.getEntry().copy(), hit.getScore()));
+                }
+                return copies;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Soglia di compattazione del layout LOG: frazione di record morti (sovrascritti o cancellati)
+     * oltre la quale, dopo una modifica, il file viene riscritto con le sole entry vive.
+     *
+     * @param deadRatio tra 0 (compatta sempre) e 1 (mai automaticamente)
+     */
+    public void setCompactionThreshold(double deadRatio) {
+        if (deadRatio < 0 || deadRatio > 1) {
+            throw new IllegalArgumentException("deadRatio must be in [0, 1]");
+        }
+        this.compactionThreshold = deadRatio;
+    }
+
+    /**
+     * Layout LOG: riscrive il file con un record per entry viva. SNAPSHOT: equivale a {@link #save()}.
+     */
+    public void compact() throws IOException {
+        retrying(() -> {
+            writeAll();
+            return null;
+        });
+    }
+
+    /**
+     * Cambia la compressione del payload e riscrive il vault (layout SNAPSHOT).
+     * Il nome del compressore è nell'header, quindi cambiano anche header e AAD; la chiave resta la stessa.
+     *
+     * @param compression {@code null} per disattivarla
+     */
+    public void setCompression(Compressor compression) throws IOException {
+        ensureOpen();
+        if (compression != null && isLog()) {
+            throw new IllegalArgumentException("Compressione supportata solo nel layout SNAPSHOT");
+        }
+        retrying(() -> {
+            if (header.getVersion() < VaultHeader.VERSION_WRAPPED_KEY) {
+                writeAll(); // migra prima a v3
+            }
+            commit(header.withCompression(compression != null ? compression.name() : null));
+            return null;
+        });
+    }
+
+    /**
+     * Cambia il codec del payload (es. da JSON, dei vault più vecchi, a binario) e riscrive il vault.
+     * Come per la compressione cambiano header e AAD, la chiave resta la stessa.
+     */
+    public void setPayloadCodec(PayloadCodec newCodec) throws IOException {
+        ensureOpen();
+        retrying(() -> {
+            if (header.getVersion() < VaultHeader.VERSION_WRAPPED_KEY) {
+                writeAll(); // migra prima a v3
+            }
+            commit(header.withPayloadCodec(newCodec.name()));
+            return null;
+        });
+    }
+
+    /**
+     * Cifra a flusso {@code content} in un nuovo blob e lo collega all'entry.
+     * La memoria usata non dipende dalla dimensione dell'allegato.
+     *
+     * @param entryId id dell'entry a cui allegare
+     * @param name    nome mostrato (es. nome del file originale)
+     * @param content dati in chiaro; letto fino alla fine ma non chiuso
+     */
+    public VaultAttachment addAttachment(String entryId, String name, InputStream content) throws IOException {
+        reading(() -> requireEntry(entryId));
+
+        // chiave casuale per ogni allegato, conservata solo nel payload cifrato
+        String id = UUID.randomUUID().toString();
+        byte[] key = new byte[ATTACHMENT_KEY_BYTES];
+        RNG.nextBytes(key);
+
+        AttachmentStore blobs = store.attachments();
+        long size;
+        try (AttachmentStore.BlobWriter writer = blobs.create(filename, id)) {
+            try (OutputStream enc = streamCipher.newEncryptingStream(key, writer.stream(), attachmentAad(id))) {
+                size = content.transferTo(enc);
+            }
+            writer.commit();
+        }
+
+        VaultAttachment attachment = new VaultAttachment(id, name, size, key);
+        try {
+            retrying(() -> {
+                // dopo un conflitto l'entry è quella ricaricata dal disco
+                VaultEntry target = requireEntry(entryId);
+                if (target.getAttachments() == null) {
+                    target.setAttachments(new ArrayList<>());
+                }
+                target.getAttachments().add(attachment);
+                try {
+                    persistPut(target);
+                } catch (IOException | RuntimeException e) {
+                    target.getAttachments().remove(attachment);
+                    throw e;
+                }
+                return null;
+            });
+        } catch (IOException | RuntimeException e) {
+            blobs.delete(filename, id);
+            throw e;
+        }
+        return attachment;
+    }
+
+    /**
+     * Apre l'allegato in lettura; il chiamante deve chiudere lo stream.
+     * Se il blob è stato manomesso o troncato, {@code read} lancia IOException.
+     */
+    public InputStream openAttachment(String entryId, String attachmentId) throws IOException {
+        VaultAttachment attachment = reading(() -> requireAttachment(requireEntry(entryId), attachmentId));
+        InputStream blob = store.attachments().open(filename, attachment.getId());
+        try {
+            return streamCipher.newDecryptingStream(attachment.getKey(), blob, attachmentAad(attachment.getId()));
+        } catch (IOException | RuntimeException e) {
+            blob.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Scollega l'allegato dall'entry, salva il vault e poi elimina il blob.
+     */
+    public void removeAttachment(String entryId, String attachmentId) throws IOException {
+        ensureOpen();
+        VaultAttachment attachment = retrying(() -> {
+            VaultEntry entry = requireEntry(entryId);
+            VaultAttachment a = requireAttachment(entry, attachmentId);
+            entry.getAttachments().remove(a);
+            try {
+                persistPut(entry);
+            } catch (IOException | RuntimeException e) {
+                entry.getAttachments().add(a);
+                throw e;
+            }
+            return a;
+        });
+        // il payload non lo referenzia più: un errore qui lascia solo un blob orfano
+        store.attachments().delete(filename, attachment.getId());
+    }
+
+    /**
+     * Ricarica il vault se un altro scrittore l'ha modificato dopo l'ultima lettura/scrittura
+     * della sessione, riusando la chiave (nessuna KDF). L'indice di ricerca viene ricostruito.
+     *
+     * @return true se il vault è stato ricaricato
+     * @throws VaultConflictException se il vault è stato cancellato o la sua chiave non è più quella
+     *                                della sessione: la sessione non può riallinearsi e va sbloccata di nuovo
+     */
+    public boolean refresh() throws IOException {
+        ensureOpen();
+        touch();
+        VaultVersion current = store.version(filename);
+        if (reading(() -> current != null && current.equals(version))) {
+            return false;
+        }
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            if (current != null && current.equals(version)) {
+                return false; // ricaricato nel frattempo da un altro thread
+            }
+            reload(new VaultConflictException(filename, version, current));
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Change<T> {
+        T apply() throws IOException;
+    }
+
+    /**
+     * Esegue una modifica che si riscrive su disco. Se la scrittura trova il vault cambiato da un altro
+     * scrittore, la sessione ricarica l'ultima versione e riesegue {@code change} sopra di essa.
+     * {@code change} deve lasciare payload e indice come li ha trovati quando fallisce.
+     */
+    private <T> T retrying(Change<T> change) throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    return change.apply();
+                } catch (VaultConflictException e) {
+                    if (attempt >= MAX_CONFLICT_ATTEMPTS) {
+                        throw e;
+                    }
+                    reload(e);
+                    backoff(attempt);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Esegue {@code read} sotto il lock in lettura: vede il payload tra una modifica e l'altra.
+     */
+    private <T> T reading(Supplier<T> read) {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            touch();
+            return read.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Attesa casuale e crescente tra i tentativi: con più scrittori in gara evita che si
+     * invalidino a vicenda all'infinito. Il primo nuovo tentativo è immediato.
+     */
+    private static void backoff(int attempt) throws IOException {
+        if (attempt < 2) {
+            return;
+        }
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextInt(1, 2 << Math.min(attempt, 7)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrotto in attesa di riscrivere il vault");
+        }
+    }
+
+    /**
+     * Rilegge il file e adotta header, chiave e payload correnti.
+     *
+     * @param conflict rilanciata se la chiave della sessione non vale più per il file su disco
+     */
+    private void reload(VaultConflictException conflict) throws IOException {
+        VaultFile vf;
+        try {
+            vf = store.read(filename);
+        } catch (NoSuchFileException e) {
+            throw conflict;
+        }
+        byte[] key = keyFor(vf.getHeader());
+        if (key == null) {
+            throw conflict;
+        }
+        VaultSession fresh = new VaultSession(store, filename, vf.getHeader(), key, new VaultPayload());
+        try {
+            fresh.load(vf.getCiphertextBuffer());
+        } catch (AEADBadTagException e) {
+            // il payload è cifrato con un'altra chiave (o è corrotto): la sessione non può riallinearsi
+            fresh.close();
+            conflict.addSuppressed(e);
+            throw conflict;
+        } catch (IOException | RuntimeException e) {
+            fresh.close();
+            throw e;
+        }
+        Arrays.fill(encKey, (byte) 0);
+        aesKey.destroy();
+        header = fresh.header;
+        encKey = fresh.encKey;
+        aesKey = fresh.aesKey;
+        aad = fresh.aad;
+        codec = fresh.codec;
+        compressor = fresh.compressor;
+        payload = fresh.payload;
+        recordCount = fresh.recordCount;
+        tornTail = fresh.tornTail;
+        discardedTailBytes = fresh.discardedTailBytes;
+        version = vf.getVersion();
+        index = null;
+    }
+
+    /**
+     * Chiave del payload per un header riscritto da un altro scrittore, o null se la sessione non può ricavarla:
+     *  - v3 su v3: la stessa, anche se è cambiata la password (cambia solo wrappedKey; se il payload
+     *    fosse stato ricifrato con un'altra chiave il caricamento fallirebbe);
+     *  - stessa versione, password e salt: la stessa;
+     *  - v1/v2 migrato altrove (stessa password e salt): quella ricavata dalla chiave della sessione.
+     */
+    private byte[] keyFor(VaultHeader h) {
+        if (header.getVersion() >= VaultHeader.VERSION_WRAPPED_KEY && h.getVersion() >= VaultHeader.VERSION_WRAPPED_KEY) {
+            return encKey.clone();
+        }
+        if (h.getKeyLenBytes() != header.getKeyLenBytes()
+                || h.getEncIterations() != header.getEncIterations()
+                || !Arrays.equals(h.getEncSalt(), header.getEncSalt())) {
+            return null;
+        }
+        if (h.getVersion() == header.getVersion()) {
+            return Objects.equals(h.getStoredAuthHash(), header.getStoredAuthHash()) ? encKey.clone() : null;
+        }
+        if (h.getVersion() < header.getVersion() || h.getStoredAuthHash() == null) {
+            return null;
+        }
+        // la chiave v1 è il segreto master di v2/v3, quella v2 è la "enc-key" che in v3 cifra la chiave del payload
+        boolean legacy = header.getVersion() < VaultHeader.VERSION_SINGLE_KDF;
+        String verifier = legacy ? verifierOf(encKey) : header.getStoredAuthHash();
+        if (!MessageDigest.isEqual(verifier.getBytes(StandardCharsets.US_ASCII),
+                h.getStoredAuthHash().getBytes(StandardCharsets.US_ASCII))) {
+            return null;
+        }
+        byte[] key = legacy ? HKDF.expand(encKey, INFO_ENC_KEY, header.getKeyLenBytes()) : encKey.clone();
+        if (h.getVersion() < VaultHeader.VERSION_WRAPPED_KEY) {
+            return key;
+        }
+        try {
+            return unwrapDataKey(key, h);
+        } catch (AEADBadTagException e) {
+            return null;
+        } finally {
+            Arrays.fill(key, (byte) 0);
+        }
+    }
+
+    private VaultEntry requireEntry(String entryId) {
+        VaultEntry entry = (entryId != null) ? payload.get(entryId) : null;
+        if (entry == null) {
+            throw new IllegalArgumentException("Entry non trovata: " + entryId);
+        }
+        return entry;
+    }
+
+    private static VaultAttachment requireAttachment(VaultEntry entry, String attachmentId) {
+        if (entry.getAttachments() != null) {
+            for (VaultAttachment a : entry.getAttachments()) {
+                if (a.getId().equals(attachmentId)) {
+                    return a;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Allegato non trovato: " + attachmentId);
+    }
+
+    // l'id entra nell'AAD di ogni segmento: un blob non può essere scambiato con quello di un altro allegato
+    private static byte[] attachmentAad(String attachmentId) {
+        return attachmentId.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Serializza, cifra e riscrive l'intero vault con l'header e la chiave correnti
+     * (nel layout LOG è una compattazione).
+     * Un vault v1/v2 viene migrato a v3 in questa occasione, senza rieseguire la KDF.
+     *
+     * Il payload può essere stato modificato direttamente: l'indice di ricerca
+     * viene scartato e ricostruito alla ricerca successiva.
+     *
+     * A differenza delle altre modifiche, una scrittura concorrente non viene riapplicata
+     * (la sessione non sa cosa è cambiato nel payload): il chiamante riceve l'eccezione.
+     *
+     * @throws VaultConflictException se un altro scrittore ha modificato il vault dopo l'ultima lettura
+     */
+    public void save() throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            index = null;
+            writeAll();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void writeAll() throws IOException {
+        ensureOpen();
+        touch();
+        if (header.getVersion() < VaultHeader.VERSION_WRAPPED_KEY) {
+            // il corpo viene comunque ricifrato: è il momento di passare a una chiave casuale.
+            // Non serve la password: in v1 la chiave di cifratura è proprio PBKDF2(password, encSalt,
+            // encIterations), cioè il segreto master di v2/v3; in v2 è la chiave "enc-key", che in v3 cifra la chiave casuale
+            int keyLen = header.getKeyLenBytes();
+            boolean legacy = header.getVersion() < VaultHeader.VERSION_SINGLE_KDF;
+            byte[] kek = legacy ? HKDF.expand(encKey, INFO_ENC_KEY, keyLen) : encKey.clone();
+            String verifier = legacy ? verifierOf(encKey) : header.getStoredAuthHash();
+            byte[] dataKey = newDataKey(keyLen);
+            VaultHeader migrated = wrappedKeyHeader(kek, verifier, header.getEncSalt(), header.getEncIterations(), dataKey);
+            Arrays.fill(kek, (byte) 0);
+            commit(withFormatOf(header, migrated), dataKey);
+        } else {
+            // il corpo viene ricifrato comunque: un AAD ancora calcolato sul JSON passa a quello binario
+            commit(header.withAadFormat(VaultHeader.AAD_FORMAT_TLV));
+        }
+    }
+
+    /**
+     * Cambia la master password: verifica quella vecchia, rigenera salt e verificatore e cifra
+     * la chiave del payload con la chiave della nuova password. Riscrive solo l'header: il payload
+     * non viene né decifrato né ricifrato. Un vault v1/v2 viene prima migrato a v3 (una riscrittura completa).
+     *
+     * @throws InvalidPasswordException se la vecchia password è errata
+     */
+    public void changePassword(char[] oldPassword, char[] newPassword)
+            throws IOException, InvalidPasswordException {
+        changePassword(oldPassword, newPassword, reading(() -> header).getEncIterations());
+    }
+
+    /**
+     * Come {@link #changePassword(char[], char[])}, cambiando anche le iterazioni PBKDF2.
+     * Con {@code oldPassword == newPassword} è un puro rekey (nuovo salt, nuove iterazioni).
+     *
+     * @param newEncIterations iterazioni PBKDF2 del nuovo header
+     */
+    public void changePassword(char[] oldPassword, char[] newPassword, int newEncIterations)
+            throws IOException, InvalidPasswordException {
+        ensureOpen();
+        if (newEncIterations < 1) {
+            throw new IllegalArgumentException("iterations must be positive");
+        }
+        // verifica la vecchia password (una sola KDF anche per v2/v3), fuori dal lock
+        Arrays.fill(deriveEncKey(reading(() -> header), oldPassword), (byte) 0);
+        rewrapKey(newPassword, newEncIterations);
+    }
+
+    /**
+     * Cifra la chiave del payload con la chiave derivata da {@code newPassword} (nuovo salt) e riscrive
+     * l'header; un vault v1/v2 viene prima migrato a v3. Nessuna verifica della password corrente.
+     */
+    private void rewrapKey(char[] newPassword, int newEncIterations) throws IOException {
+        byte[] newEncSalt = newSalt();
+        byte[] master = new PBKDF2(newEncIterations, header.getKeyLenBytes() * 8).deriveKey(newPassword, newEncSalt);
+        try {
+            retrying(() -> {
+                if (header.getVersion() < VaultHeader.VERSION_WRAPPED_KEY) {
+                    writeAll(); // migra a v3
+                }
+                VaultHeader wrapped = wrappedKeyHeader(master, newEncSalt, newEncIterations, encKey);
+                commitHeader(header.withPasswordFieldsOf(wrapped));
+                return null;
+            });
+        } finally {
+            Arrays.fill(master, (byte) 0);
+        }
+    }
+
+    /**
+     * Scrive il payload con un nuovo header/chiave e, solo se la scrittura riesce,
+     * li adotta come stato della sessione azzerando la chiave precedente.
+     * La sequence del nuovo header è quella corrente + 1.
+     */
+    private void commit(VaultHeader newHeader, byte[] newKey) throws IOException {
+        newHeader = newHeader.withSequence(VaultVersion.sequenceOf(header) + 1);
+        byte[] newAad = VaultHeaderCodec.aadOf(newHeader);
+        AesKey newAesKey = new AesKey(newKey);
+        try {
+            writeBody(newHeader, newAesKey, newAad);
+        } catch (IOException | RuntimeException e) {
+            // scrittura fallita: il file su disco è ancora quello vecchio
+            Arrays.fill(newKey, (byte) 0);
+            newAesKey.destroy();
+            throw e;
+        }
+        Arrays.fill(encKey, (byte) 0);
+        aesKey.destroy();
+        header = newHeader;
+        encKey = newKey;
+        aesKey = newAesKey;
+        aad = newAad;
+        codec = PayloadCodecs.forName(newHeader.getPayloadCodec());
+        compressor = Compressions.forName(newHeader.getCompression());
+    }
+
+    /**
+     * Come {@link #commit(VaultHeader, byte[])} con la chiave corrente (cambiano solo header e AAD).
+     */
+    private void commit(VaultHeader newHeader) throws IOException {
+        newHeader = newHeader.withSequence(VaultVersion.sequenceOf(header) + 1);
+        byte[] newAad = VaultHeaderCodec.aadOf(newHeader);
+        writeBody(newHeader, aesKey, newAad);
+        header = newHeader;
+        aad = newAad;
+        codec = PayloadCodecs.forName(newHeader.getPayloadCodec());
+        compressor = Compressions.forName(newHeader.getCompression());
+    }
+
+    /**
+     * Riscrive solo l'header, che deve differire da quello corrente solo in campi fuori dall'AAD
+     * (vedi {@link VaultHeader#AAD_FORMAT_TLV}): il corpo su disco resta valido così com'è.
+     */
+    private void commitHeader(VaultHeader newHeader) throws IOException {
+        newHeader = newHeader.withSequence(VaultVersion.sequenceOf(header) + 1);
+        if (!Arrays.equals(VaultHeaderCodec.aadOf(newHeader), aad)) {
+            throw new IllegalStateException("Il nuovo header cambierebbe l'AAD del corpo");
+        }
+        store.writeHeader(filename, version, newHeader);
+        version = VaultVersion.of(newHeader, version.getBodyLength());
+        header = newHeader;
+    }
+
+    /**
+     * Riporta su un header rigenerato i campi che descrivono il formato del corpo
+     * (layout, codec, compressione).
+     */
+    private static VaultHeader withFormatOf(VaultHeader from, VaultHeader to) {
+        return to.withLayout(from.getLayout())
+                .withPayloadCodec(from.getPayloadCodec())
+                .withCompression(from.getCompression());
+    }
+
+    /**
+     * Riscrive l'intero file: nel layout LOG un record per entry viva, altrimenti un unico blob
+     * (compresso prima della cifratura se l'header lo prevede). Senza compressione il plaintext
+     * del blob viene scritto e cifrato in un {@link SecretBuffer}, senza passare dallo heap.
+     * Il blob viene cifrato direttamente nel buffer dello store (vedi {@link BodyWriter}).
+     */
+    private void writeBody(VaultHeader h, SecretKey key, byte[] a) throws IOException {
+        PayloadCodec c = PayloadCodecs.forName(h.getPayloadCodec());
+        if (VaultLayout.fromHeader(h.getLayout()) == VaultLayout.LOG) {
+            byte[] body = RecordLog.compact(cipher, key, a, c, payload.getEntries());
+            storeWrite(h, body);
+            recordCount = payload.size();
+            tornTail = false;
+            return;
+        }
+
+        Compressor z = Compressions.forName(h.getCompression());
+        if (z == null) {
+            try (SecretBuffer plain = c.encodePayloadSecret(payload)) {
+                storeWrite(h, plain.contents(), key, a);
+            }
+            return;
+        }
+        // il compressore lavora su array: qui il plaintext passa dallo heap, azzerato dopo l'uso
+        byte[] plain = c.encodePayload(payload);
+        byte[] framed = Compressions.pack(z, plain);
+        Arrays.fill(plain, (byte) 0);
+        try {
+            storeWrite(h, ByteBuffer.wrap(framed), key, a);
+        } finally {
+            Arrays.fill(framed, (byte) 0);
+        }
+    }
+
+    /**
+     * Come {@link #storeWrite(VaultHeader, byte[])} cifrando {@code plain} sul posto nel buffer dello store.
+     */
+    private void storeWrite(VaultHeader h, ByteBuffer plain, SecretKey key, byte[] a) throws IOException {
+        int bodyLength = cipher.encryptedLength(plain.remaining());
+        store.write(filename, version, h, bodyLength, out -> cipher.encrypt(key, plain, a, out));
+        version = VaultVersion.of(h, bodyLength);
+    }
+
+    /**
+     * Scrittura condizionata alla versione su cui si basa la sessione (incondizionata solo alla creazione).
+     */
+    private void storeWrite(VaultHeader h, byte[] body) throws IOException {
+        if (version == null) {
+            store.write(filename, h, body);
+        } else {
+            store.write(filename, version, h, body);
+        }
+        version = VaultVersion.of(h, body.length);
+    }
+
+    private boolean isLog() {
+        return VaultLayout.fromHeader(header.getLayout()) == VaultLayout.LOG;
+    }
+
+    private void persistPut(VaultEntry entry) throws IOException {
+        touch();
+        if (!isLog()) {
+            writeAll();
+            return;
+        }
+        appendRecord(RecordLog.put(cipher, aesKey, aad, codec, recordCount, entry));
+    }
+
+    private void persistDelete(String entryId) throws IOException {
+        touch();
+        if (!isLog()) {
+            writeAll();
+            return;
+        }
+        appendRecord(RecordLog.delete(cipher, aesKey, aad, recordCount, entryId));
+    }
+
+    private void appendRecord(byte[] record) throws IOException {
+        if (tornTail) {
+            // c'è un record incompleto in coda: prima va riscritto il file pulito
+            writeAll();
+            return;
+        }
+        store.append(filename, version, record);
+        version = version.appended(record.length);
+        recordCount++;
+
+        long dead = recordCount - payload.size();
+        if (recordCount >= MIN_RECORDS_FOR_COMPACTION && dead >= compactionThreshold * recordCount) {
+            writeAll();
+        }
+    }
+
+    /**
+     * Decifra il corpo del file: nel layout LOG riesegue i record, altrimenti decifra l'unico blob.
+     */
+    private void load(ByteBuffer body) throws AEADBadTagException, IOException {
+        if (isLog()) {
+            RecordLog.Replay r = RecordLog.replay(cipher, aesKey, aad, codec, body);
+            payload = r.payload;
+            recordCount = r.records;
+            tornTail = r.torn;
+            discardedTailBytes = r.tornBytes;
+            if (r.torn) {
+                store.reportTornTail(filename, r.tornBytes);
+            }
+            return;
+        }
+
+        if (compressor == null) {
+            // plaintext fuori dallo heap, azzerato appena le entry sono decodificate
+            try (SecretBuffer plain = cipher.decryptSecret(aesKey, body, aad)) {
+                payload = codec.decodePayload(plain.contents());
+            }
+            return;
+        }
+        // il decompressore lavora su array: qui il plaintext resta su heap, azzerato dopo l'uso
+        byte[] plain = cipher.decrypt(aesKey, body, aad);
+        try {
+            byte[] framed = plain;
+            plain = Compressions.unpack(compressor, framed);
+            Arrays.fill(framed, (byte) 0);
+        } catch (IOException e) {
+            Arrays.fill(plain, (byte) 0);
+            throw e;
+        }
+        try {
+            payload = codec.decodePayload(plain, 0, plain.length);
+        } finally {
+            Arrays.fill(plain, (byte) 0);
+        }
+    }
+
+    /**
+     * Verifica la password contro l'header e ritorna la chiave AES del payload.
+     *  - v1: PBKDF2 di default sull'auth hash, poi un secondo PBKDF2 per la chiave;
+     *  - v2: un solo PBKDF2, diviso con HKDF in verificatore e chiave;
+     *  - v3: come v2, ma la chiave HKDF serve a decifrare la chiave del payload (wrappedKey).
+     */
+    private static byte[] deriveEncKey(VaultHeader header, char[] password) throws InvalidPasswordException {
+        PBKDF2 encKdf = new PBKDF2(header.getEncIterations(), header.getKeyLenBytes() * 8);
+
+        if (header.getVersion() < VaultHeader.VERSION_SINGLE_KDF) {
+            if (!new PBKDF2().validatePassword(header.getStoredAuthHash(), password)) {
+                throw new InvalidPasswordException("Password errata");
+            }
+            return encKdf.deriveKey(password, header.getEncSalt());
+        }
+
+        byte[] master = encKdf.deriveKey(password, header.getEncSalt());
+        byte[] verifier = HKDF.expand(master, INFO_VERIFIER, VERIFIER_LENGTH_BYTES);
+        try {
+            byte[] stored = Base64.getDecoder().decode(header.getStoredAuthHash());
+            // confronto a tempo costante
+            if (!MessageDigest.isEqual(stored, verifier)) {
+                throw new InvalidPasswordException("Password errata");
+            }
+            byte[] key = HKDF.expand(master, INFO_ENC_KEY, header.getKeyLenBytes());
+            if (header.getVersion() < VaultHeader.VERSION_WRAPPED_KEY) {
+                return key;
+            }
+            try {
+                return unwrapDataKey(key, header);
+            } catch (AEADBadTagException e) {
+                throw new InvalidPasswordException("Chiave cifrata non valida nell'header");
+            } finally {
+                Arrays.fill(key, (byte) 0);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new InvalidPasswordException("Verificatore non valido nell'header");
+        } finally {
+            Arrays.fill(master, (byte) 0);
+            Arrays.fill(verifier, (byte) 0);
+        }
+    }
+
+    /**
+     * Header v3 per la password da cui viene {@code master} (output del PBKDF2).
+     */
+    private static VaultHeader wrappedKeyHeader(byte[] master, byte[] encSalt, int encIterations, byte[] dataKey) {
+        byte[] kek = HKDF.expand(master, INFO_ENC_KEY, dataKey.length);
+        try {
+            return wrappedKeyHeader(kek, verifierOf(master), encSalt, encIterations, dataKey);
+        } finally {
+            Arrays.fill(kek, (byte) 0);
+        }
+    }
+
+    /**
+     * Header v3: {@code dataKey} cifrata con {@code kek}, la chiave "enc-key" della password.
+     * I campi del formato del corpo (layout, codec, compressione) li aggiunge il chiamante.
+     */
+    private static VaultHeader wrappedKeyHeader(byte[] kek, String storedAuthHash, byte[] encSalt,
+                                                int encIterations, byte[] dataKey) {
+        return new VaultHeader(
+                encSalt,
+                encIterations,
+                dataKey.length,
+                storedAuthHash,
+                VaultHeader.AAD_FORMAT_TLV
+        ).withVersion(VaultHeader.VERSION_WRAPPED_KEY)
+                .withWrappedKey(KEY_WRAP_CIPHER.encrypt(kek, dataKey, WRAPPED_KEY_AAD));
+    }
+
+    private static byte[] unwrapDataKey(byte[] kek, VaultHeader header) throws AEADBadTagException {
+        if (header.getWrappedKey() == null) {
+            throw new AEADBadTagException("wrappedKey mancante nell'header v3");
+        }
+        return KEY_WRAP_CIPHER.decrypt(kek, header.getWrappedKey(), WRAPPED_KEY_AAD);
+    }
+
+    private static String verifierOf(byte[] master) {
+        byte[] verifier = HKDF.expand(master, INFO_VERIFIER, VERIFIER_LENGTH_BYTES);
+        try {
+            return Base64.getEncoder().encodeToString(verifier);
+        } finally {
+            Arrays.fill(verifier, (byte) 0);
+        }
+    }
+
+    private static byte[] newDataKey(int keyLenBytes) {
+        byte[] key = new byte[keyLenBytes];
+        RNG.nextBytes(key);
+        return key;
+    }
+
+    /**
+     * Istante (System.nanoTime) dell'ultimo accesso, usato per l'eviction per inattività.
+     */
+    long getLastAccessNanos() {
+        return lastAccessNanos;
+    }
+
+    /**
+     * Byte scartati in coda al log (layout LOG) all'ultimo caricamento: più di 0 se l'ultimo record era
+     * incompleto o non autentico, ed è stato ignorato. Dopo un crash durante un append è normale (la modifica
+     * non era stata confermata); altrimenti può indicare un file troncato o alterato, cioè un rollback
+     * dell'ultima modifica. La prossima scrittura riscrive il file senza la coda.
+     */
+    public long getDiscardedTailBytes() {
+        return reading(() -> discardedTailBytes);
+    }
+
+    /**
+     * Se {@link #unlockAndUpgrade} non è riuscito a scrivere le nuove iterazioni PBKDF2, il motivo: il vault
+     * resta sotto il minimo della policy fino a un prossimo sblocco riuscito. Altrimenti (aggiornamento
+     * riuscito, non necessario o sessione ottenuta in altro modo) null.
+     */
+    public String getKdfUpgradeFailure() {
+        return reading(() -> kdfUpgradeFailure);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Azzera la chiave derivata e rilascia il payload. Idempotente.
+     */
+    @Override
+    public void close() {
+        // attende la fine delle letture e delle modifiche in corso
+        lock.writeLock().lock();
+        try {
+            if (closed) return;
+            closed = true;
+            Arrays.fill(encKey, (byte) 0);
+            aesKey.destroy();
+            Arrays.fill(aad, (byte) 0);
+            for (VaultEntry e : payload.getEntries()) {
+                e.clearPassword();
+            }
+            payload = null;
+            index = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // package-private: anche VaultSessionCache.get rinnova l'accesso
+    void touch() {
+        lastAccessNanos = System.nanoTime();
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Sessione chiusa: " + filename);
+        }
+    }
+
+    private static byte[] newSalt() {
+        byte[] salt = new byte[SALT_LENGTH_BYTES];
+        RNG.nextBytes(salt);
+        return salt;
+    }
+}
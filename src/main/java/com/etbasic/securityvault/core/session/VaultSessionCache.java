@@ -0,0 +1,163 @@
+package com.etbasic.securityvault.core.session;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache limitata di sessioni sbloccate, indicizzate per nome file.
+ *
+ * Una sessione viene rimossa (e la sua chiave azzerata) quando:
+ *  - resta inattiva più a lungo di {@code idleTimeout};
+ *  - la cache è piena e serve spazio (viene scartata la meno usata di recente, LRU);
+ *  - viene invalidata esplicitamente o la cache viene chiusa.
+ *
+ * Le sessioni scadute vengono rimosse a ogni accesso e, in background, da un thread daemon.
+ */
+public final class VaultSessionCache implements AutoCloseable {
+
+    private final int maxSessions;
+    private final long idleTimeoutNanos;
+
+    // accessOrder = true: l'iterazione parte dalla sessione usata meno di recente
+    private final LinkedHashMap<String, VaultSession> sessions = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final ScheduledExecutorService sweeper;
+
+    /**
+     * @param maxSessions numero massimo di vault sbloccati contemporaneamente
+     * @param idleTimeout inattività dopo la quale una sessione viene chiusa
+     */
+    public VaultSessionCache(int maxSessions, Duration idleTimeout) {
+        if (maxSessions <= 0) {
+            throw new IllegalArgumentException("maxSessions must be > 0");
+        }
+        if (idleTimeout == null || idleTimeout.isNegative() || idleTimeout.isZero()) {
+            throw new IllegalArgumentException("idleTimeout must be > 0");
+        }
+        this.maxSessions = maxSessions;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "vault-session-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long periodMillis = Math.max(1, idleTimeout.toMillis() / 2);
+        sweeper.scheduleAtFixedRate(this::evictIdle, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ritorna la sessione attiva per il file, oppure {@code null} se assente o scaduta.
+     */
+    public VaultSession get(String filename) {
+        List<VaultSession> closing = new ArrayList<>();
+        VaultSession s;
+        synchronized (this) {
+            removeIdle(closing);
+            s = sessions.get(filename);
+            if (s != null && s.isClosed()) {
+                sessions.remove(filename);
+                s = null;
+            } else if (s != null) {
+                // sotto il monitor: lo sweeper non può chiudere la sessione tra il controllo e l'uso del chiamante
+                s.touch();
+            }
+        }
+        closeAll(closing);
+        return s;
+    }
+
+    /**
+     * Inserisce (o sostituisce) la sessione. Se la cache è piena chiude la meno usata di recente.
+     */
+    public void put(VaultSession session) {
+        List<VaultSession> closing = new ArrayList<>();
+        synchronized (this) {
+            removeIdle(closing);
+            VaultSession previous = sessions.put(session.getFilename(), session);
+            if (previous != null && previous != session) {
+                closing.add(previous);
+            }
+            Iterator<VaultSession> it = sessions.values().iterator();
+            while (sessions.size() > maxSessions && it.hasNext()) {
+                VaultSession eldest = it.next();
+                it.remove();
+                closing.add(eldest);
+            }
+        }
+        closeAll(closing);
+    }
+
+    /**
+     * Chiude e rimuove la sessione del file indicato, se presente.
+     */
+    public void invalidate(String filename) {
+        VaultSession s;
+        synchronized (this) {
+            s = sessions.remove(filename);
+        }
+        if (s != null) {
+            s.close();
+        }
+    }
+
+    /**
+     * Chiude le sessioni inattive da più di {@code idleTimeout}.
+     *
+     * @return numero di sessioni rimosse
+     */
+    public int evictIdle() {
+        List<VaultSession> expired = new ArrayList<>();
+        synchronized (this) {
+            removeIdle(expired);
+        }
+        closeAll(expired);
+        return expired.size();
+    }
+
+    /**
+     * Toglie dalla mappa le sessioni scadute e le aggiunge a {@code expired}, senza chiuderle:
+     * close() attende il lock di scrittura della sessione (es. una KDF o un salvataggio in corso)
+     * e non va mai chiamata tenendo il monitor della cache, che bloccherebbe ogni get.
+     */
+    private void removeIdle(List<VaultSession> expired) {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<String, VaultSession>> it = sessions.entrySet().iterator();
+        while (it.hasNext()) {
+            VaultSession s = it.next().getValue();
+            if (s.isClosed() || now - s.getLastAccessNanos() >= idleTimeoutNanos) {
+                it.remove();
+                expired.add(s);
+            }
+        }
+    }
+
+    private static void closeAll(List<VaultSession> closing) {
+        closing.forEach(VaultSession::close);
+    }
+
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Ferma il thread di pulizia e chiude tutte le sessioni (azzerando le chiavi).
+     */
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+        List<VaultSession> closing;
+        synchronized (this) {
+            closing = new ArrayList<>(sessions.values());
+            sessions.clear();
+        }
+        closeAll(closing);
+    }
+}
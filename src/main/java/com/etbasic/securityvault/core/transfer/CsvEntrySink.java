@@ -0,0 +1,85 @@
+package com.etbasic.securityvault.core.transfer;
+
+import com.etbasic.securityvault.core.model.VaultEntry;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Scrittore CSV (RFC 4180, righe terminate da CRLF) con colonne id,title,username,password,notes.
+ */
+final class CsvEntrySink implements EntrySink {
+
+    private final Writer out;
+
+    CsvEntrySink(OutputStream out) throws IOException {
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        this.out.write("id,title,username,password,notes\r\n");
+    }
+
+    @Override
+    public void write(VaultEntry e) throws IOException {
+        field(e.getId());
+        out.write(',');
+        field(e.getTitle());
+        out.write(',');
+        field(e.getUsername());
+        out.write(',');
+        field(e.getPassword());
+        out.write(',');
+        field(e.getNotes());
+        out.write("\r\n");
+    }
+
+    private void field(String s) throws IOException {
+        if (s == null) {
+            return;
+        }
+        boolean quote = !s.isEmpty()
+                && (s.indexOf(',') >= 0 || s.indexOf('"') >= 0 || s.indexOf('\n') >= 0 || s.indexOf('\r') >= 0
+                || Character.isWhitespace(s.charAt(0)) || Character.isWhitespace(s.charAt(s.length() - 1)));
+        if (!quote) {
+            out.write(s);
+            return;
+        }
+        out.write('"');
+        out.write(s.replace("\"", "\"\""));
+        out.write('"');
+    }
+
+    /**
+     * Come {@link #field(String)} per la password, scritta carattere per carattere dal char[]
+     * dell'entry senza costruire una String.
+     */
+    private void field(char[] s) throws IOException {
+        if (s == null) {
+            return;
+        }
+        boolean quote = s.length > 0
+                && (Character.isWhitespace(s[0]) || Character.isWhitespace(s[s.length - 1]));
+        for (int i = 0; i < s.length && !quote; i++) {
+            quote = s[i] == ',' || s[i] == '"' || s[i] == '\n' || s[i] == '\r';
+        }
+        if (!quote) {
+            out.write(s);
+            return;
+        }
+        out.write('"');
+        for (char c : s) {
+            if (c == '"') {
+                out.write('"');
+            }
+            out.write(c);
+        }
+        out.write('"');
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
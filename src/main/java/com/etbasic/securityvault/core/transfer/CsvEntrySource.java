@@ -0,0 +1,167 @@
+package com.etbasic.securityvault.core.transfer;
+
+import com.etbasic.securityvault.core.model.VaultEntry;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Lettore CSV (RFC 4180: virgole, campi tra virgolette con "" per le virgolette, a capo nei campi).
+ *
+ * La prima riga è l'intestazione; oltre ai nomi dei campi di VaultEntry sono riconosciuti
+ * quelli degli export di Chrome/Firefox/Bitwarden (name, login, login_username, login_password, note, ...).
+ * Le colonne non riconosciute vengono ignorate.
+ */
+final class CsvEntrySource implements EntrySource {
+
+    private static final int ID = 0;
+    private static final int TITLE = 1;
+    private static final int USERNAME = 2;
+    private static final int PASSWORD = 3;
+    private static final int NOTES = 4;
+
+    private final Reader in;
+    // per ogni campo di VaultEntry, indice della colonna (-1 = assente)
+    private final int[] columns = {-1, -1, -1, -1, -1};
+    private long line = 1;
+
+    CsvEntrySource(InputStream in) throws IOException {
+        this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<String> header = readRecord();
+        if (header == null) {
+            throw new IOException("CSV vuoto: manca la riga di intestazione");
+        }
+        for (int i = 0; i < header.size(); i++) {
+            // i CSV salvati da Excel iniziano con il BOM UTF-8
+            String name = header.get(i).replace("\uFEFF", "").trim().toLowerCase(Locale.ROOT);
+            int field = fieldOf(name);
+            if (field >= 0 && columns[field] < 0) {
+                columns[field] = i;
+            }
+        }
+        if (columns[TITLE] < 0 && columns[USERNAME] < 0 && columns[PASSWORD] < 0) {
+            throw new IOException("Intestazione CSV senza colonne riconosciute: " + header);
+        }
+    }
+
+    private static int fieldOf(String name) {
+        switch (name) {
+            case "id":
+                return ID;
+            case "title":
+            case "name":
+                return TITLE;
+            case "username":
+            case "user":
+            case "login":
+            case "login_username":
+            case "email":
+                return USERNAME;
+            case "password":
+            case "login_password":
+                return PASSWORD;
+            case "notes":
+            case "note":
+            case "extra":
+                return NOTES;
+            default:
+                return -1;
+        }
+    }
+
+    @Override
+    public VaultEntry next() throws IOException {
+        List<String> rec;
+        do {
+            rec = readRecord();
+            if (rec == null) {
+                return null;
+            }
+        } while (rec.size() == 1 && rec.get(0).isEmpty()); // righe vuote
+
+        // il file importato è già in chiaro: la String della password vive solo fino al record successivo
+        String password = column(rec, PASSWORD);
+        return new VaultEntry(
+                column(rec, ID),
+                column(rec, TITLE),
+                column(rec, USERNAME),
+                (password != null) ? password.toCharArray() : null,
+                column(rec, NOTES)
+        );
+    }
+
+    // colonna assente o vuota -> null
+    private String column(List<String> rec, int field) {
+        int i = columns[field];
+        if (i < 0 || i >= rec.size() || rec.get(i).isEmpty()) {
+            return null;
+        }
+        return rec.get(i);
+    }
+
+    /**
+     * Legge un record (che può occupare più righe se un campo tra virgolette contiene a capo).
+     *
+     * @return i campi, o {@code null} a fine input
+     */
+    private List<String> readRecord() throws IOException {
+        int c = in.read();
+        if (c == -1) {
+            return null;
+        }
+        long startLine = line;
+        List<String> fields = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        boolean fieldStart = true;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("CSV: virgolette non chiuse nel record della riga " + startLine);
+                }
+                if (c == '"') {
+                    int n = in.read();
+                    if (n != '"') {
+                        // fine del campo tra virgolette: n va trattato fuori dalle virgolette
+                        quoted = false;
+                        c = n;
+                        continue;
+                    }
+                    sb.append('"');
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    sb.append((char) c);
+                }
+            } else if (c == '"' && fieldStart) {
+                quoted = true;
+                fieldStart = false;
+            } else if (c == ',') {
+                fields.add(sb.toString());
+                sb.setLength(0);
+                fieldStart = true;
+            } else if (c == '\n' || c == -1) {
+                fields.add(sb.toString());
+                line++;
+                return fields;
+            } else if (c != '\r') {
+                sb.append((char) c);
+                fieldStart = false;
+            }
+            c = in.read();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
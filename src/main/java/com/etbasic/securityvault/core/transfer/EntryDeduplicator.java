@@ -0,0 +1,65 @@
+package com.etbasic.securityvault.core.transfer;
+
+import com.etbasic.securityvault.core.model.VaultEntry;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Riconosce le entry duplicate durante un import: stesso titolo e username
+ * (senza distinguere maiuscole e spazi ai bordi) e stessa password.
+ * Confronta sia con le entry già nel vault sia con quelle importate poco prima.
+ *
+ * La chiave tiene un riferimento al char[] della password dell'entry, senza copiarlo in una String:
+ * va usato solo durante l'import, mentre le entry sono ancora vive.
+ */
+public class EntryDeduplicator {
+
+    private final Set<Key> seen = new HashSet<>();
+
+    public EntryDeduplicator(Iterable<VaultEntry> existing) {
+        for (VaultEntry e : existing) {
+            seen.add(new Key(e));
+        }
+    }
+
+    /**
+     * @return true se l'entry è nuova (e da ora in poi conta come vista), false se è un duplicato
+     */
+    public boolean add(VaultEntry e) {
+        return seen.add(new Key(e));
+    }
+
+    private static String normalize(String s) {
+        return (s == null) ? "" : s.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Key {
+        private final String title;
+        private final String username;
+        // null e password vuota contano come uguali
+        private final char[] password;
+
+        Key(VaultEntry e) {
+            this.title = normalize(e.getTitle());
+            this.username = normalize(e.getUsername());
+            this.password = (e.getPassword() != null) ? e.getPassword() : new char[0];
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return title.equals(k.title) && username.equals(k.username) && Arrays.equals(password, k.password);
+        }
+
+        @Override
+        public int hashCode() {
+            return (title.hashCode() * 31 + username.hashCode()) * 31 + Arrays.hashCode(password);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.etbasic.securityvault.core.transfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Formati di import/export delle entry.
+ *
+ *  - CSV: prima riga di intestazione; colonne riconosciute title, username, password, notes
+ *    (più alcuni sinonimi usati da altri password manager, vedi CsvEntrySource) ed eventualmente id.
+ *  - JSON: {"entries":[...]} come il payload del vault, oppure direttamente un array di entry.
+ *
+ * Gli allegati non vengono né esportati né importati: il loro contenuto non sta nel payload.
+ */
+public enum EntryFormat {
+    CSV,
+    JSON;
+
+    public EntrySource open(InputStream in) throws IOException {
+        return (this == CSV) ? new CsvEntrySource(in) : new JsonEntrySource(in);
+    }
+
+    public EntrySink create(OutputStream out) throws IOException {
+        return (this == CSV) ? new CsvEntrySink(out) : new JsonEntrySink(out);
+    }
+
+    /**
+     * Formato dall'estensione del file (.csv / .json).
+     *
+     * @throws IllegalArgumentException se l'estensione non è riconosciuta
+     */
+    public static EntryFormat fromFileName(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".csv")) {
+            return CSV;
+        }
+        if (lower.endsWith(".json")) {
+            return JSON;
+        }
+        throw new IllegalArgumentException("Formato non riconosciuto (usa .csv o .json): " + name);
+    }
+}
@@ -0,0 +1,15 @@
+package com.etbasic.securityvault.core.transfer;
+
+import com.etbasic.securityvault.core.model.VaultEntry;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destinazione di un export: le entry vengono scritte man mano, senza costruire il documento in memoria.
+ * {@code close()} chiude il documento (es. l'array JSON) ed è obbligatorio.
+ */
+public interface EntrySink extends Closeable {
+
+    void write(VaultEntry entry) throws IOException;
+}
@@ -0,0 +1,18 @@
+package com.etbasic.securityvault.core.transfer;
+
+import com.etbasic.securityvault.core.model.VaultEntry;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Entry lette una alla volta da un file di import: in memoria c'è solo l'entry corrente.
+ */
+public interface EntrySource extends Closeable {
+
+    /**
+     * @return la prossima entry, o {@code null} a fine input
+     * @throws IOException se l'input è malformato (il messaggio indica riga/posizione)
+     */
+    VaultEntry next() throws IOException;
+}
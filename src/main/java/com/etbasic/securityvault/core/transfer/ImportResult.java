@@ -0,0 +1,23 @@
+package com.etbasic.securityvault.core.transfer;
+
+/**
+ * Esito di un import: entry aggiunte al vault e duplicati scartati.
+ */
+public final class ImportResult {
+
+    private final int imported;
+    private final int duplicates;
+
+    public ImportResult(int imported, int duplicates) {
+        this.imported = imported;
+        this.duplicates = duplicates;
+    }
+
+    public int getImported() {
+        return imported;
+    }
+
+    public int getDuplicates() {
+        return duplicates;
+    }
+}
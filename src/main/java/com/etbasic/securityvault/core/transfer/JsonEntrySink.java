@@ -0,0 +1,57 @@
+package com.etbasic.securityvault.core.transfer;
+
+import com.etbasic.securityvault.core.model.VaultEntry;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Scrittore JSON in streaming (JsonGenerator), nello stesso formato del payload: {"entries":[...]}.
+ * Ogni entry viene scritta appena arriva; gli allegati sono esclusi.
+ */
+final class JsonEntrySink implements EntrySink {
+
+    private static final JsonFactory factory = new JsonFactory();
+
+    private final JsonGenerator gen;
+
+    JsonEntrySink(OutputStream out) throws IOException {
+        this.gen = factory.createGenerator(out, JsonEncoding.UTF8);
+        gen.useDefaultPrettyPrinter(); // l'export è pensato anche per essere letto
+        gen.writeStartObject();
+        gen.writeArrayFieldStart("entries");
+    }
+
+    @Override
+    public void write(VaultEntry e) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("id", e.getId());
+        gen.writeStringField("title", e.getTitle());
+        gen.writeStringField("username", e.getUsername());
+        gen.writeFieldName("password");
+        writePassword(e.getPassword());
+        gen.writeStringField("notes", e.getNotes());
+        gen.writeEndObject();
+    }
+
+    // scritta dal char[] dell'entry, senza passare da una String
+    private void writePassword(char[] password) throws IOException {
+        if (password == null) {
+            gen.writeNull();
+        } else {
+            gen.writeString(password, 0, password.length);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!gen.isClosed()) {
+            gen.writeEndArray();
+            gen.writeEndObject();
+            gen.close();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.etbasic.securityvault.core.transfer;
+
+import com.etbasic.securityvault.core.model.VaultEntry;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Lettore JSON in streaming (JsonParser): il documento non viene mai caricato tutto,
+ * solo un oggetto entry alla volta passa per il databind.
+ */
+final class JsonEntrySource implements EntrySource {
+
+    // gli export di altri strumenti hanno campi in più: si ignorano
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    private final JsonParser parser;
+    private boolean done;
+
+    JsonEntrySource(InputStream in) throws IOException {
+        this.parser = mapper.getFactory().createParser(in);
+        JsonToken t = parser.nextToken();
+        if (t == JsonToken.START_OBJECT) {
+            // {"entries":[...]}: si salta tutto il resto fino all'array
+            while (true) {
+                t = parser.nextToken();
+                if (t != JsonToken.FIELD_NAME) {
+                    throw new IOException("JSON senza array \"entries\"");
+                }
+                String name = parser.currentName();
+                t = parser.nextToken();
+                if ("entries".equals(name) && t == JsonToken.START_ARRAY) {
+                    break;
+                }
+                parser.skipChildren();
+            }
+        } else if (t != JsonToken.START_ARRAY) {
+            throw new IOException("JSON: atteso un array di entry o {\"entries\":[...]}");
+        }
+    }
+
+    @Override
+    public VaultEntry next() throws IOException {
+        if (done) {
+            return null;
+        }
+        JsonToken t = parser.nextToken();
+        if (t == JsonToken.END_ARRAY) {
+            done = true;
+            return null;
+        }
+        if (t != JsonToken.START_OBJECT) {
+            throw new IOException("JSON: atteso un oggetto entry in " + parser.currentLocation());
+        }
+        return mapper.readValue(parser, VaultEntry.class);
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}